@@ -1,7 +1,9 @@
 package com.jyoryo.entityjdbc;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 实体 DTO
@@ -25,6 +27,22 @@ public interface EntityDao<T> {
 	 */
 	List<T> getAll();
 	
+	/**
+	 * 通过多个主键获取对象
+	 * 
+	 * @param ids 主键，重复的主键只查询一次
+	 * @return 按主键首次出现的顺序排列，不存在的主键忽略
+	 */
+	List<T> getAll(Collection<? extends Serializable> ids);
+	
+	/**
+	 * 通过多个主键获取对象
+	 * 
+	 * @param ids 主键，重复的主键只查询一次
+	 * @return key为传入的主键，按主键首次出现的顺序排列，不存在的主键不包含在内
+	 */
+	Map<Serializable, T> getAllAsMap(Collection<? extends Serializable> ids);
+	
 	/**
 	 * 保存实体对象并返回主键值
 	 * 
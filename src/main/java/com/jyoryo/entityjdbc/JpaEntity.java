@@ -1,12 +1,18 @@
 package com.jyoryo.entityjdbc;
 
+import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 import javax.persistence.Column;
@@ -14,16 +20,21 @@ import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 
 import org.apache.commons.lang3.builder.ToStringStyle;
+import org.springframework.beans.BeanUtils;
 import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
 
+import com.jyoryo.entityjdbc.annotation.ShardKey;
 import com.jyoryo.entityjdbc.common.Arrays;
 import com.jyoryo.entityjdbc.common.BaseDo;
 import com.jyoryo.entityjdbc.common.Enums;
 import com.jyoryo.entityjdbc.common.Numbers;
 import com.jyoryo.entityjdbc.common.Reflects;
 import com.jyoryo.entityjdbc.common.Strings;
+import com.jyoryo.entityjdbc.domain.Snapshotable;
 import com.jyoryo.entityjdbc.metadata.ColumnMetaData;
 import com.jyoryo.entityjdbc.metadata.ColumnMetaType;
+import com.jyoryo.entityjdbc.metadata.EntitySql;
 import com.jyoryo.entityjdbc.utils.JpaUtils;
 
 /**
@@ -67,17 +78,30 @@ public class JpaEntity extends BaseDo {
 	 * 按数据库字段名映射列信息
 	 */
 	private Map<String, ColumnMetaData> columnFieldMap = new HashMap<>();
+	/**
+	 * 按字段声明顺序排列的所有列，下标与{@link ColumnMetaData#getIndex()}一致
+	 */
+	private ColumnMetaData[] columns;
 	/**
 	 * 主键列信息
 	 */
 	private ColumnMetaData idColumn;
+	/**
+	 * <code>@ShardKey</code>标记的分片键列信息
+	 */
+	private ColumnMetaData shardKeyColumn;
+	/**
+	 * 预生成的增删改查sql
+	 */
+	private transient volatile EntitySql entitySql;
 	
 	/**
 	 * 通过Entity类构造表信息
 	 * @param entityClass
 	 */
 	public JpaEntity(Class<?> entityClass) {
-		this.entityClass = entityClass;
+		// 延迟加载的代理类取实体类
+		this.entityClass = ClassUtils.getUserClass(entityClass);
 		// 执行初始操作
 		init();
 	}
@@ -95,18 +119,29 @@ public class JpaEntity extends BaseDo {
 		//获取字段内容
 		Field[] fields = JpaUtils.getFields(entityClass);
 		ColumnMetaType tmpColumnType = null;
+		List<ColumnMetaData> columnList = new ArrayList<>(fields.length);
 		for(Field field : fields) {
 			ColumnMetaData columnMetaData = getColumnMetaData(field, entityClass);
 			if(null == columnMetaData) {
 				continue ;
 			}
+			columnMetaData.setIndex(columnList.size());
+			columnList.add(columnMetaData);
 			fieldColumnMap.put(columnMetaData.getFieldName(), columnMetaData);
 			columnFieldMap.put(columnMetaData.getColumnName(), columnMetaData);
 			tmpColumnType = columnMetaData.getColumnType();
 			if(ColumnMetaType.ID == tmpColumnType) {
 				this.idColumn = columnMetaData;
 			}
+			if(field.isAnnotationPresent(ShardKey.class)) {
+				if(null != this.shardKeyColumn) {
+					throw new IllegalArgumentException(Strings.format("{}只能有一个@ShardKey字段！", entityClass));
+				}
+				this.shardKeyColumn = columnMetaData;
+			}
 		}
+		this.columns = columnList.toArray(new ColumnMetaData[columnList.size()]);
+		this.entitySql = new EntitySql(this);
 	}
 	
 	/**
@@ -185,6 +220,15 @@ public class JpaEntity extends BaseDo {
 		return idColumn;
 	}
 	
+	/**
+	 * 获取分片键列信息
+	 * <li>没有<code>@ShardKey</code>字段时为主键列</li>
+	 * @return   都不存在时返回null
+	 */
+	public ColumnMetaData getShardKeyColumn() {
+		return (null == shardKeyColumn) ? idColumn : shardKeyColumn;
+	}
+	
 	/**
 	 * 是否存在主键
 	 * @return
@@ -218,18 +262,101 @@ public class JpaEntity extends BaseDo {
 		return columnFieldMap;
 	}
 	
+	/**
+	 * 按字段声明顺序获取所有列
+	 * @return
+	 */
+	public ColumnMetaData[] getColumns() {
+		return columns.clone();
+	}
+	
+	/**
+	 * 获取列数
+	 * @return
+	 */
+	public int getColumnCount() {
+		return columns.length;
+	}
+	
+	/**
+	 * 获取预生成的增删改查sql
+	 * @return
+	 */
+	public EntitySql getEntitySql() {
+		EntitySql currentSql = this.entitySql;
+		if(null == currentSql) {
+			currentSql = new EntitySql(this);
+			this.entitySql = currentSql;
+		}
+		return currentSql;
+	}
+	
 	/**
 	 * 获取对象中@Id的属性的值
 	 * @param target
 	 * @return
 	 */
 	public Object getIdValue(Object target) {
-		if(null == idColumn || null == idColumn.getField()) {
+		if(null == target || null == idColumn || null == idColumn.getField()) {
 			return null;
 		}
 		return Reflects.readField(idColumn.getField(), target);
 	}
 	
+	/**
+	 * 将数据库生成的主键值按@Id属性的类型转换后写入对象
+	 * @param target
+	 * @param key   数据库生成的主键值
+	 * @return   转换后写入的主键值
+	 */
+	public Serializable writeGeneratedId(Object target, Number key) {
+		if(null == idColumn || null == idColumn.getField() || null == key) {
+			return key;
+		}
+		Serializable value = (Serializable)convertId(key);
+		Reflects.writeField(target, idColumn.getField(), value);
+		return value;
+	}
+	
+	/**
+	 * 将数字类型的主键值按@Id属性的类型转换，如：@Id属性为String时，1转换为"1"
+	 * @param id
+	 * @return   非数字或不存在@Id属性时返回原值
+	 */
+	public Object convertId(Object id) {
+		if(null == idColumn || null == idColumn.getField() || !(id instanceof Number)) {
+			return id;
+		}
+		//根据id类型进行转换
+		Number key = (Number)id;
+		Class<?> idType = idColumn.getType();
+		Object value = key;
+		if(idType == int.class || idType == Integer.class) {
+			value = key.intValue();
+		} else if(idType == long.class || idType == Long.class) {
+			value = key.longValue();
+		} else if(idType == short.class || idType == Short.class) {
+			value = key.shortValue();
+		} else if(idType == BigInteger.class && !(key instanceof BigInteger)) {
+			value = BigInteger.valueOf(key.longValue());
+		} else if(idType == BigDecimal.class && !(key instanceof BigDecimal)) {
+			value = new BigDecimal(key.toString());
+		} else if(idType == String.class) {
+			value = key.toString();
+		}
+		return value;
+	}
+	
+	/**
+	 * 主键值是否为空：null或数字0
+	 * <li>主键值为空时，由数据库生成主键</li>
+	 * @param target
+	 * @return
+	 */
+	public boolean isIdEmpty(Object target) {
+		return Numbers.isEmptyNumber(getIdValue(target));
+	}
+	
 	/**
 	 * 获取具体对象注解列及对应的值记录映射
 	 * @param target   具体对象
@@ -255,29 +382,118 @@ public class JpaEntity extends BaseDo {
 			if(excludeId && Strings.equalsIgnoreCase(idColumnName, columnName)) {
 				continue ;
 			}
-			ColumnMetaData columnMetaData = columnFieldMap.get(columnName);
-			Field field = columnMetaData.getField();
-			Object value = Reflects.readField(field, target);
+			Object value = columnValue(target, columnFieldMap.get(columnName));
 			if(null == value) {
 				continue ;
 			}
-			//字段为枚举类型
-			if(value instanceof Enum<?>) {
-				value = ((Enum<?>)value).ordinal();
+			parameters.put(columnName, value);
+		}
+		return parameters;
+	}
+	
+	/**
+	 * 获取对象指定列写入数据库的值
+	 * <li>枚举转换为序号</li>
+	 * <li>外键关联的实体转换为其主键值</li>
+	 * @param target
+	 * @param columnMetaData
+	 * @return
+	 */
+	public Object columnValue(Object target, ColumnMetaData columnMetaData) {
+		Object value = Reflects.readField(columnMetaData.getField(), target);
+		if(null == value) {
+			return null;
+		}
+		//字段为枚举类型
+		if(value instanceof Enum<?>) {
+			value = ((Enum<?>)value).ordinal();
+		}
+		// 字段为外键关联其他实体
+		else if(JpaUtils.isEntity(value.getClass())) {
+			value = JpaUtils.getIdValue(value);
+			//处理空数字和0
+			if(Numbers.isEmptyNumber(value)) {
+				value = null;
 			}
-			// 字段为外键关联其他实体
-			else if(JpaUtils.isEntity(value.getClass())) {
-				value = JpaUtils.getIdValue(value);
-				//处理空数字和0
-				if(Numbers.isEmptyNumber(value)) {
-					value = null;
-				}
+		}
+		return value;
+	}
+	
+	/**
+	 * 记录对象所有列当前的值
+	 * @param target
+	 * @return   下标与{@link ColumnMetaData#getIndex()}一致的列值
+	 */
+	public Object[] snapshot(Object target) {
+		Object[] values = new Object[columns.length];
+		for(int i = 0; i < columns.length; i ++) {
+			values[i] = columnValue(target, columns[i]);
+		}
+		return values;
+	}
+	
+	/**
+	 * 复制实体所有列对应的字段，返回新的实体对象
+	 * <li>日期类型的值复制为新对象，其他值(包括外键关联的实体)共用同一对象</li>
+	 * <li>实体已记录数据快照时，同时复制快照</li>
+	 * @param source
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T copy(T source) {
+		if(null == source) {
+			return null;
+		}
+		T target = (T)BeanUtils.instantiateClass(entityClass);
+		for(ColumnMetaData columnMetaData : columns) {
+			Object value = Reflects.readField(columnMetaData.getField(), source);
+			if(value instanceof Date) {
+				value = ((Date)value).clone();
+			}
+			Reflects.writeField(target, columnMetaData.getField(), value);
+		}
+		if(source instanceof Snapshotable && null != ((Snapshotable)source).snapshotValues()) {
+			((Snapshotable)target).snapshotValues(((Snapshotable)source).snapshotValues().clone());
+		}
+		return target;
+	}
+	
+	/**
+	 * 获取对象相对于快照发生变化的列及对应的值
+	 * <li>不包含主键列</li>
+	 * <li>值由非null变为null的列也会包含在内</li>
+	 * @param target
+	 * @param snapshot   {@link #snapshot(Object)}记录的列值
+	 * @return   按字段声明顺序排列；没有变化时返回空Map
+	 */
+	public Map<String, Object> dirtyColumnDataMapper(Object target, Object[] snapshot) {
+		Assert.isTrue(null != snapshot && snapshot.length == columns.length, "快照与实体列不一致！");
+		Map<String, Object> parameters = new LinkedHashMap<>();
+		for(ColumnMetaData columnMetaData : columns) {
+			if(ColumnMetaType.ID == columnMetaData.getColumnType()) {
+				continue ;
+			}
+			Object value = columnValue(target, columnMetaData);
+			if(!columnValueEquals(snapshot[columnMetaData.getIndex()], value)) {
+				parameters.put(columnMetaData.getColumnName(), value);
 			}
-			parameters.put(columnName, value);
 		}
 		return parameters;
 	}
 	
+	/**
+	 * 比较列值是否相同：日期按时间戳比较，BigDecimal忽略精度比较
+	 */
+	private static boolean columnValueEquals(Object oldValue, Object newValue) {
+		if(oldValue instanceof Date && newValue instanceof Date) {
+			return ((Date)oldValue).getTime() == ((Date)newValue).getTime();
+		}
+		if(oldValue instanceof BigDecimal && newValue instanceof BigDecimal) {
+			return 0 == ((BigDecimal)oldValue).compareTo((BigDecimal)newValue);
+		}
+		return Objects.equals(oldValue, newValue);
+	}
+	
 //	/**
 //	 * 获取具体对象注解列及对应的值记录映射
 //	 * @param target
@@ -0,0 +1,27 @@
+package com.jyoryo.entityjdbc.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记实体的分片键字段，用于ShardedJdbcDao按字段值选择分片
+ * <li>用于<code>@Column</code>、<code>@Id</code>或<code>@JoinColumn</code>字段，<code>@JoinColumn</code>字段取关联实体的主键</li>
+ * <li>实体没有该注解时，以主键作为分片键</li>
+ * 例如：
+ * <pre>
+ * <code>@Entity</code>
+ * public class Order extends IdSupport {
+ *    <code>@ShardKey</code>
+ *    <code>@Column(name = "user_id")</code>
+ *    private long userId;
+ * }
+ * </pre>
+ * @author jyoryo
+ *
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface ShardKey {
+}
@@ -5,12 +5,14 @@ import java.io.FileNotFoundException;
 import java.nio.file.Path;
 import java.nio.file.WatchEvent;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 import org.springframework.util.ResourceUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
@@ -25,8 +27,10 @@ import com.jyoryo.entityjdbc.common.io.watch.Watchs;
 import com.jyoryo.entityjdbc.common.io.watch.watchers.DelayWatcher;
 import com.jyoryo.entityjdbc.common.log.Logs;
 import com.jyoryo.entityjdbc.common.utils.Xmls;
+import com.jyoryo.entityjdbc.dao.AsyncJdbcDao;
 import com.jyoryo.entityjdbc.dao.JdbcDao;
 import com.jyoryo.entityjdbc.dao.JdbcEntityDao;
+import com.jyoryo.entityjdbc.dao.ShardedJdbcDao;
 import com.jyoryo.entityjdbc.exception.SqlBuilderException;
 import com.jyoryo.entityjdbc.support.Condition;
 
@@ -64,6 +68,10 @@ public abstract class AbstractSqlBuilder implements SqlBuilder {
 	 * 存储sql的容器
 	 */
 	private Map<String, String> sqlContainer = new HashMap<>();
+	/**
+	 * 存储sql模板属性的容器，只包含有属性的模板
+	 */
+	private Map<String, Map<String, String>> attributeContainer = new HashMap<>();
 	/**
 	 * sql模板文件路径监听器
 	 */
@@ -94,6 +102,29 @@ public abstract class AbstractSqlBuilder implements SqlBuilder {
         return sql;
     }
 
+    /**
+     * {@inheritDoc}
+     * <li>解析后的id为：前缀符 + 包名.类名.方法名</li>
+     */
+    @Override
+    public String resolveSqlId(String sqlOrId) {
+        sqlOrId = Strings.defaultIfBlank(sqlOrId, defaultSqlId());
+        if(!Strings.startsWithIgnoreCase(sqlOrId, String.valueOf(idPrefix))) {
+            return sqlOrId;
+        }
+        return idPrefix + parseTemplateId(sqlOrId);
+    }
+
+    @Override
+    public Map<String, String> attributes(String sqlOrId) {
+        sqlOrId = Strings.defaultIfBlank(sqlOrId, defaultSqlId());
+        if(!Strings.startsWithIgnoreCase(sqlOrId, String.valueOf(idPrefix))) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> attributes = attributeContainer.get(parseTemplateId(sqlOrId));
+        return (null == attributes) ? Collections.<String, String>emptyMap() : attributes;
+    }
+
     @Override
 	public void setIdPrefix(char idPrefix) {
 		this.idPrefix = idPrefix;
@@ -163,6 +194,7 @@ public abstract class AbstractSqlBuilder implements SqlBuilder {
 	 */
 	synchronized protected void load() {
 	    sqlContainer.clear();
+	    attributeContainer.clear();
 	    Collection<File> sqltFiles = Files.listFiles(sqltFile, new String[] {sqlFileExtension}, true);
         if(null == sqltFiles || sqltFiles.isEmpty()) {
             throw new FormatRuntimeException("Dir Path：{}, there was no sql template file！", sqltFile.getAbsolutePath());
@@ -203,6 +235,15 @@ public abstract class AbstractSqlBuilder implements SqlBuilder {
 					throw new FormatRuntimeException("Key:{}重复，请检查模板内容！", key);
 				}
 				sqlContainer.put(key, Strings.trim(methodNode.getTextContent()));
+				NamedNodeMap attributeNodes = methodNode.getAttributes();
+				if(null != attributeNodes && 0 < attributeNodes.getLength()) {
+				    Map<String, String> attributes = new HashMap<>();
+				    for(int k = 0; k < attributeNodes.getLength(); k ++) {
+				        Node attributeNode = attributeNodes.item(k);
+				        attributes.put(attributeNode.getNodeName(), attributeNode.getNodeValue());
+				    }
+				    attributeContainer.put(key, Collections.unmodifiableMap(attributes));
+				}
 			}
 		}
 	}
@@ -246,7 +287,7 @@ public abstract class AbstractSqlBuilder implements SqlBuilder {
 	    StringBuilder tmplBuilder = new StringBuilder();
 	    for(StackTraceElement ste : array) {
 	        className = ste.getClassName();
-	        if(Strings.equalsAnyIgnoreCase(className, AbstractSqlBuilder.class.getName(), JdbcDao.class.getName(), JdbcEntityDao.class.getName())) {
+	        if(Strings.equalsAnyIgnoreCase(className, AbstractSqlBuilder.class.getName(), JdbcDao.class.getName(), JdbcEntityDao.class.getName(), AsyncJdbcDao.class.getName(), ShardedJdbcDao.class.getName())) {
 	            continue ;
 	        }
 	        tmplBuilder.append(className);
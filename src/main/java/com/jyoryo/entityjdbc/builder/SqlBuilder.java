@@ -1,5 +1,8 @@
 package com.jyoryo.entityjdbc.builder;
 
+import java.util.Collections;
+import java.util.Map;
+
 import com.jyoryo.entityjdbc.support.Condition;
 
 /**
@@ -17,6 +20,26 @@ public interface SqlBuilder {
 	 */
 	String sql(String sqlOrId, Condition condition);
 	
+	/**
+	 * 将依赖调用位置的模板id解析为完整的模板id
+	 * <li>如<code>$$</code>、<code>$$$</code>等根据调用的类名、方法名确定的id，需要在调用线程中解析</li>
+	 * <li>在其他线程中执行sql前调用，默认原样返回</li>
+	 * @param sqlOrId   SQL语句或对应SQL模板中的id
+	 * @return
+	 */
+	default String resolveSqlId(String sqlOrId) {
+	    return sqlOrId;
+	}
+	
+	/**
+	 * 获取sql模板的属性，即模板文件中sql节点上的属性，如：&lt;queryUsers countStrategy="window"&gt;
+	 * @param sqlOrId   SQL语句或对应SQL模板中的id
+	 * @return   不是模板或没有属性时返回空Map
+	 */
+	default Map<String, String> attributes(String sqlOrId) {
+	    return Collections.emptyMap();
+	}
+	
 	/**
 	 * 设置标识sql ID的前缀符号
 	 * @param idPrefix
@@ -0,0 +1,98 @@
+package com.jyoryo.entityjdbc.dao;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.util.ClassUtils;
+
+import com.jyoryo.entityjdbc.JpaEntity;
+import com.jyoryo.entityjdbc.common.Reflects;
+import com.jyoryo.entityjdbc.common.Strings;
+import com.jyoryo.entityjdbc.metadata.ColumnMetaData;
+import com.jyoryo.entityjdbc.metadata.ColumnMetaType;
+import com.jyoryo.entityjdbc.support.FetchPlan;
+
+/**
+ * 按{@link FetchPlan}批量加载<code>@JoinColumn</code>关联的实体
+ * <li>收集所有实体关联字段中不重复的主键，每个关联类型以IN查询分批加载，再写回关联字段</li>
+ * <li>主键相同的关联字段写回同一个实体对象</li>
+ * <li>关联的实体不存在时，保留原有只有主键的关联对象</li>
+ * @author jyoryo
+ *
+ */
+final class AssociationLoader {
+    private AssociationLoader() {
+    }
+
+    /**
+     * 加载实体的关联字段
+     * @param jdbcDao
+     * @param targets   同一类型的实体，可以包含null
+     * @param fetchPlan
+     */
+    static void fetch(JdbcDao jdbcDao, Collection<?> targets, FetchPlan fetchPlan) {
+        if(null == targets || targets.isEmpty() || null == fetchPlan || fetchPlan.isEmpty()) {
+            return ;
+        }
+        Class<?> entityClass = null;
+        for(Object target : targets) {
+            if(null != target) {
+                entityClass = ClassUtils.getUserClass(target);
+                break;
+            }
+        }
+        if(null == entityClass) {
+            return ;
+        }
+        JpaEntity jpaEntity = jdbcDao.jpaEntity(entityClass);
+        for(String fieldName : fetchPlan.getFields()) {
+            ColumnMetaData columnMetaData = jpaEntity.getFieldColumnMap().get(fieldName);
+            if(null == columnMetaData || ColumnMetaType.JOIN_COLUMN != columnMetaData.getColumnType()) {
+                throw new IllegalArgumentException(Strings.format("{}不存在@JoinColumn字段：{}", entityClass, fieldName));
+            }
+            Collection<?> associations = fetchField(jdbcDao, targets, columnMetaData.getField());
+            fetch(jdbcDao, associations, fetchPlan.getChild(fieldName));
+        }
+    }
+
+    /**
+     * 加载一个关联字段
+     * @param jdbcDao
+     * @param targets
+     * @param field
+     * @return   加载的关联实体
+     */
+    private static Collection<?> fetchField(JdbcDao jdbcDao, Collection<?> targets, Field field) {
+        final Class<?> associationClass = field.getType();
+        final JpaEntity associationEntity = jdbcDao.jpaEntity(associationClass);
+        if(!associationEntity.existId()) {
+            throw new IllegalArgumentException(Strings.format("{}不存在主键，无法加载关联字段：{}", associationClass, field.getName()));
+        }
+        Map<Object, Object> ids = new LinkedHashMap<>();
+        for(Object target : targets) {
+            Object id = (null == target) ? null : associationEntity.getIdValue(Reflects.readField(field, target));
+            if(null != id) {
+                ids.put(EntityCache.key(id), id);
+            }
+        }
+        if(ids.isEmpty()) {
+            return new ArrayList<>(0);
+        }
+        Map<Object, ?> loaded = load(jdbcDao, associationEntity, associationClass, ids.values());
+        for(Object target : targets) {
+            Object id = (null == target) ? null : associationEntity.getIdValue(Reflects.readField(field, target));
+            Object association = (null == id) ? null : loaded.get(EntityCache.key(id));
+            if(null != association) {
+                Reflects.writeField(target, field, association);
+            }
+        }
+        return loaded.values();
+    }
+
+    private static <A> Map<Object, A> load(JdbcDao jdbcDao, JpaEntity jpaEntity, Class<A> entityClass, Collection<?> ids) {
+        return jdbcDao.loadByIds(jpaEntity, entityClass, ids, jdbcDao.getEntityCache(entityClass));
+    }
+}
@@ -0,0 +1,449 @@
+package com.jyoryo.entityjdbc.dao;
+
+import java.io.Closeable;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.jdbc.core.RowMapper;
+
+import com.jyoryo.entityjdbc.JpaEntity;
+import com.jyoryo.entityjdbc.common.Assert;
+import com.jyoryo.entityjdbc.common.Strings;
+import com.jyoryo.entityjdbc.common.log.Logs;
+import com.jyoryo.entityjdbc.common.thread.ExecutorBuilder;
+import com.jyoryo.entityjdbc.common.thread.NamedThreadFactory;
+import com.jyoryo.entityjdbc.support.BatchResult;
+import com.jyoryo.entityjdbc.support.Condition;
+import com.jyoryo.entityjdbc.support.Page;
+
+/**
+ * 异步执行{@link JdbcDao}的操作，返回CompletableFuture
+ * <p>用于同时执行多个互不依赖的查询，每个操作占用连接池中的一个连接。</p>
+ * <li>线程池可以是通过{@link ExecutorBuilder}创建的固定大小线程池，或者JVM支持时每个任务一个虚拟线程</li>
+ * <li>模板id(如<code>$$</code>、<code>$$$</code>)在调用线程中解析，与直接调用JdbcDao一致</li>
+ * <li>可以通过{@link #withTimeout(long, TimeUnit)}设置超时时间，超时后future以{@link TimeoutException}结束，并中断执行的线程</li>
+ * 例如：
+ * <pre>
+ * AsyncJdbcDao asyncDao = AsyncJdbcDao.create(jdbcDao, 16);
+ * CompletableFuture&lt;List&lt;User&gt;&gt; users = asyncDao.query("$$", User.class, condition);
+ * CompletableFuture&lt;Long&gt; count = asyncDao.withTimeout(2, TimeUnit.SECONDS).queryForObject("$countUser", Long.class, condition);
+ * CompletableFuture.allOf(users, count).join();
+ * </pre>
+ * @author jyoryo
+ *
+ */
+public class AsyncJdbcDao implements Closeable {
+    /**
+     * 虚拟线程执行器的工厂方法(Java 21+)
+     */
+    private static final String VIRTUAL_EXECUTOR_METHOD = "newVirtualThreadPerTaskExecutor";
+
+    private final JdbcDao jdbcDao;
+    private final ExecutorService executor;
+    /** 是否由当前对象创建线程池，关闭时需要关闭线程池 */
+    private final boolean ownExecutor;
+    /** 超时时间(毫秒)，小于等于0不设置超时 */
+    private final long timeoutMillis;
+
+    /**
+     * 使用指定的线程池
+     * <li>线程池由调用方负责关闭</li>
+     * @param jdbcDao
+     * @param executor
+     */
+    public AsyncJdbcDao(JdbcDao jdbcDao, ExecutorService executor) {
+        this(jdbcDao, executor, false, 0L);
+    }
+
+    private AsyncJdbcDao(JdbcDao jdbcDao, ExecutorService executor, boolean ownExecutor, long timeoutMillis) {
+        Assert.notNull(jdbcDao);
+        Assert.notNull(executor);
+        this.jdbcDao = jdbcDao;
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * 创建固定线程数的AsyncJdbcDao
+     * <li>线程数不应超过连接池的大小，超出的任务在队列中等待</li>
+     * <li>调用{@link #close()}关闭线程池</li>
+     * @param jdbcDao
+     * @param poolSize   线程数，小于等于0时为CPU可用核心数
+     * @return
+     */
+    public static AsyncJdbcDao create(JdbcDao jdbcDao, int poolSize) {
+        final int size = (poolSize <= 0) ? Runtime.getRuntime().availableProcessors() : poolSize;
+        ExecutorService executor = ExecutorBuilder.create()
+                .setCorePoolSize(size)
+                .setMaxPoolSize(size)
+                .setThreadFactory(new NamedThreadFactory("entityjdbc-async-", true))
+                .build();
+        return new AsyncJdbcDao(jdbcDao, executor, true, 0L);
+    }
+
+    /**
+     * 创建每个任务一个虚拟线程的AsyncJdbcDao
+     * <li>JVM不支持虚拟线程时，退化为{@link #create(JdbcDao, int)}，线程数为fallbackPoolSize</li>
+     * <li>虚拟线程不限制并发数，同时执行的操作数受连接池大小限制</li>
+     * @param jdbcDao
+     * @param fallbackPoolSize
+     * @return
+     */
+    public static AsyncJdbcDao createVirtual(JdbcDao jdbcDao, int fallbackPoolSize) {
+        ExecutorService executor = newVirtualThreadExecutor();
+        if(null == executor) {
+            Logs.warn("当前JVM不支持虚拟线程，使用固定线程数的线程池！");
+            return create(jdbcDao, fallbackPoolSize);
+        }
+        return new AsyncJdbcDao(jdbcDao, executor, true, 0L);
+    }
+
+    /**
+     * 当前JVM是否支持虚拟线程
+     * @return
+     */
+    public static boolean isVirtualThreadSupported() {
+        return null != virtualExecutorMethod();
+    }
+
+    /**
+     * 返回设置了超时时间的AsyncJdbcDao，与当前对象共用线程池
+     * @param timeout   小于等于0不设置超时
+     * @param unit
+     * @return
+     */
+    public AsyncJdbcDao withTimeout(long timeout, TimeUnit unit) {
+        return new AsyncJdbcDao(jdbcDao, executor, false, (timeout <= 0) ? 0L : unit.toMillis(timeout));
+    }
+
+    /**
+     * 获取执行操作的JdbcDao
+     * @return
+     */
+    public JdbcDao getJdbcDao() {
+        return jdbcDao;
+    }
+
+    /**
+     * 获取执行操作的线程池
+     * @return
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * 异步查询列表
+     * @param sqlOrId
+     * @param targetClass
+     * @param condition
+     * @return
+     */
+    public <T> CompletableFuture<List<T>> query(String sqlOrId, final Class<T> targetClass, final Condition condition) {
+        final String sql = jdbcDao.resolveSqlId(sqlOrId);
+        return submit(() -> jdbcDao.query(sql, targetClass, condition));
+    }
+
+    /**
+     * 异步查询列表
+     * @param sqlOrId
+     * @param targetClass
+     * @param args
+     * @return
+     */
+    public <T> CompletableFuture<List<T>> query(String sqlOrId, final Class<T> targetClass, final Object... args) {
+        final String sql = jdbcDao.resolveSqlId(sqlOrId);
+        return submit(() -> jdbcDao.query(sql, targetClass, args));
+    }
+
+    /**
+     * 异步查询列表
+     * @param sqlOrId
+     * @param rowMapper
+     * @param condition
+     * @return
+     */
+    public <T> CompletableFuture<List<T>> query(String sqlOrId, final RowMapper<T> rowMapper, final Condition condition) {
+        final String sql = jdbcDao.resolveSqlId(sqlOrId);
+        return submit(() -> jdbcDao.query(sql, rowMapper, condition));
+    }
+
+    /**
+     * 异步查询列表
+     * @param sqlOrId
+     * @param rowMapper
+     * @param args
+     * @return
+     */
+    public <T> CompletableFuture<List<T>> query(String sqlOrId, final RowMapper<T> rowMapper, final Object... args) {
+        final String sql = jdbcDao.resolveSqlId(sqlOrId);
+        return submit(() -> jdbcDao.query(sql, rowMapper, args));
+    }
+
+    /**
+     * 异步查询单个结果
+     * @param sqlOrId
+     * @param targetClass
+     * @param condition
+     * @return
+     */
+    public <T> CompletableFuture<T> queryForObject(String sqlOrId, final Class<T> targetClass, final Condition condition) {
+        final String sql = jdbcDao.resolveSqlId(sqlOrId);
+        return submit(() -> jdbcDao.queryForObject(sql, targetClass, condition));
+    }
+
+    /**
+     * 异步查询单个结果
+     * @param sqlOrId
+     * @param targetClass
+     * @param args
+     * @return
+     */
+    public <T> CompletableFuture<T> queryForObject(String sqlOrId, final Class<T> targetClass, final Object... args) {
+        final String sql = jdbcDao.resolveSqlId(sqlOrId);
+        return submit(() -> jdbcDao.queryForObject(sql, targetClass, args));
+    }
+
+    /**
+     * 异步查询单个结果
+     * @param sqlOrId
+     * @param rowMapper
+     * @param condition
+     * @return
+     */
+    public <T> CompletableFuture<T> queryForObject(String sqlOrId, final RowMapper<T> rowMapper, final Condition condition) {
+        final String sql = jdbcDao.resolveSqlId(sqlOrId);
+        return submit(() -> jdbcDao.queryForObject(sql, rowMapper, condition));
+    }
+
+    /**
+     * 异步查询单个结果
+     * @param sqlOrId
+     * @param rowMapper
+     * @param args
+     * @return
+     */
+    public <T> CompletableFuture<T> queryForObject(String sqlOrId, final RowMapper<T> rowMapper, final Object... args) {
+        final String sql = jdbcDao.resolveSqlId(sqlOrId);
+        return submit(() -> jdbcDao.queryForObject(sql, rowMapper, args));
+    }
+
+    /**
+     * 异步分页查询
+     * @param sqlOrId
+     * @param targetClass
+     * @param flowMode
+     * @param start
+     * @param limit
+     * @param condition
+     * @return
+     */
+    public <T> CompletableFuture<Page<T>> queryPage(String sqlOrId, final Class<T> targetClass, final boolean flowMode, final int start, final int limit, final Condition condition) {
+        final String sql = jdbcDao.resolveSqlId(sqlOrId);
+        return submit(() -> jdbcDao.queryPage(sql, targetClass, flowMode, start, limit, condition));
+    }
+
+    /**
+     * 异步分页查询
+     * @param sqlOrId
+     * @param targetClass
+     * @param flowMode
+     * @param start
+     * @param limit
+     * @param args
+     * @return
+     */
+    public <T> CompletableFuture<Page<T>> queryPage(String sqlOrId, final Class<T> targetClass, final boolean flowMode, final int start, final int limit, final Object... args) {
+        final String sql = jdbcDao.resolveSqlId(sqlOrId);
+        return submit(() -> jdbcDao.queryPage(sql, targetClass, flowMode, start, limit, args));
+    }
+
+    /**
+     * 异步分页查询
+     * @param sqlOrId
+     * @param rowMapper
+     * @param flowMode
+     * @param start
+     * @param limit
+     * @param condition
+     * @return
+     */
+    public <T> CompletableFuture<Page<T>> queryPage(String sqlOrId, final RowMapper<T> rowMapper, final boolean flowMode, final int start, final int limit, final Condition condition) {
+        final String sql = jdbcDao.resolveSqlId(sqlOrId);
+        return submit(() -> jdbcDao.queryPage(sql, rowMapper, flowMode, start, limit, condition));
+    }
+
+    /**
+     * 异步分页查询
+     * @param sqlOrId
+     * @param rowMapper
+     * @param flowMode
+     * @param start
+     * @param limit
+     * @param args
+     * @return
+     */
+    public <T> CompletableFuture<Page<T>> queryPage(String sqlOrId, final RowMapper<T> rowMapper, final boolean flowMode, final int start, final int limit, final Object... args) {
+        final String sql = jdbcDao.resolveSqlId(sqlOrId);
+        return submit(() -> jdbcDao.queryPage(sql, rowMapper, flowMode, start, limit, args));
+    }
+
+    /**
+     * 异步执行更新
+     * @param sqlOrId
+     * @param condition
+     * @return
+     */
+    public CompletableFuture<Integer> update(String sqlOrId, final Condition condition) {
+        final String sql = jdbcDao.resolveSqlId(sqlOrId);
+        return submit(() -> jdbcDao.update(sql, condition));
+    }
+
+    /**
+     * 异步执行更新
+     * @param sqlOrId
+     * @param args
+     * @return
+     */
+    public CompletableFuture<Integer> update(String sqlOrId, final Object... args) {
+        final String sql = jdbcDao.resolveSqlId(sqlOrId);
+        return submit(() -> jdbcDao.update(sql, args));
+    }
+
+    /**
+     * 异步更新实体
+     * @param jpaEntity
+     * @param target
+     * @param columns
+     * @return
+     */
+    public <T> CompletableFuture<Integer> update(final JpaEntity jpaEntity, final T target, final String... columns) {
+        return submit(() -> jdbcDao.update(jpaEntity, target, columns));
+    }
+
+    /**
+     * 异步保存实体
+     * @param jpaEntity
+     * @param target
+     * @return   保存后的主键
+     */
+    public <T> CompletableFuture<Serializable> save(final JpaEntity jpaEntity, final T target) {
+        return submit(() -> jdbcDao.save(jpaEntity, target));
+    }
+
+    /**
+     * 异步批量保存实体
+     * @param jpaEntity
+     * @param targets
+     * @return
+     */
+    public <T> CompletableFuture<int[]> batchSave(final JpaEntity jpaEntity, final T[] targets) {
+        return submit(() -> jdbcDao.batchSave(jpaEntity, targets));
+    }
+
+    /**
+     * 异步流式批量保存实体，在执行线程中读取targets
+     * @param jpaEntity
+     * @param targets
+     * @param chunkSize
+     * @return
+     */
+    public <T> CompletableFuture<BatchResult> batchSave(final JpaEntity jpaEntity, final Iterable<T> targets, final int chunkSize) {
+        return submit(() -> jdbcDao.batchSave(jpaEntity, targets, chunkSize));
+    }
+
+    /**
+     * 在线程池中执行任务
+     * <li>线程池拒绝任务时，返回以{@link RejectedExecutionException}结束的future</li>
+     * <li>超时后future以{@link TimeoutException}结束，并尝试中断执行的线程</li>
+     * @param task
+     * @return
+     */
+    private <R> CompletableFuture<R> submit(final Callable<R> task) {
+        final CompletableFuture<R> future = new CompletableFuture<>();
+        final Future<?> running;
+        try {
+            running = executor.submit(() -> {
+                if(future.isDone()) {
+                    return ;
+                }
+                try {
+                    future.complete(task.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        if(timeoutMillis > 0 && !future.isDone()) {
+            final long timeout = timeoutMillis;
+            final ScheduledFuture<?> timer = TimeoutHolder.SCHEDULER.schedule(() -> {
+                if(future.completeExceptionally(new TimeoutException(Strings.format("操作在{}毫秒内未完成！", timeout)))) {
+                    running.cancel(true);
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+            future.whenComplete((result, e) -> timer.cancel(false));
+        }
+        return future;
+    }
+
+    /**
+     * 关闭由当前对象创建的线程池，不等待执行中的任务
+     * <li>通过构造方法传入的线程池不会关闭</li>
+     */
+    @Override
+    public void close() {
+        if(ownExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 通过反射创建虚拟线程执行器
+     * @return   不支持时返回null
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        Method method = virtualExecutorMethod();
+        if(null == method) {
+            return null;
+        }
+        try {
+            return (ExecutorService)method.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            Logs.warn("创建虚拟线程执行器失败！", e);
+            return null;
+        }
+    }
+
+    private static Method virtualExecutorMethod() {
+        try {
+            return java.util.concurrent.Executors.class.getMethod(VIRTUAL_EXECUTOR_METHOD);
+        } catch (NoSuchMethodException | SecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 超时计时的调度线程，首次使用时创建
+     */
+    private static final class TimeoutHolder {
+        static final ScheduledThreadPoolExecutor SCHEDULER;
+        static {
+            SCHEDULER = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("entityjdbc-async-timeout-", true));
+            SCHEDULER.setRemoveOnCancelPolicy(true);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.jyoryo.entityjdbc.dao;
+
+import java.sql.Connection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.jyoryo.entityjdbc.common.log.Logs;
+
+/**
+ * 在另一个数据库连接上并发执行分页的COUNT
+ * <li>在线程池中获取连接；超时时间内未获取到连接(连接池或线程池繁忙)时放弃，由调用方顺序执行</li>
+ * <li>调用线程存在事务时不并发执行，保证COUNT与当前页数据在同一事务中</li>
+ * @author jyoryo
+ *
+ */
+final class ConcurrentCounter {
+    private static final int PENDING = 0;
+    private static final int ACQUIRED = 1;
+    private static final int ABANDONED = 2;
+
+    private final JdbcDao jdbcDao;
+    private final ExecutorService executor;
+    private final long acquireTimeoutMillis;
+
+    ConcurrentCounter(JdbcDao jdbcDao, ExecutorService executor, long acquireTimeoutMillis) {
+        this.jdbcDao = jdbcDao;
+        this.executor = executor;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+    }
+
+    /**
+     * 提交到线程池，在另一个连接上执行
+     * @param query
+     * @param callback
+     * @return   无法并发执行时返回null
+     */
+    <T, R> CompletableFuture<R> submit(final CountQuery<T> query, final CountQuery.QueryCallback<T, R> callback) {
+        if(TransactionSynchronizationManager.isActualTransactionActive()) {
+            return null;
+        }
+        final CompletableFuture<R> future = new CompletableFuture<>();
+        final AtomicInteger state = new AtomicInteger(PENDING);
+        final CountDownLatch acquired = new CountDownLatch(1);
+        final DataSource dataSource = jdbcDao.readDataSource();
+        try {
+            executor.execute(() -> {
+                if(ABANDONED == state.get()) {
+                    return ;
+                }
+                Connection con = null;
+                R result = null;
+                Throwable error = null;
+                try {
+                    con = DataSourceUtils.getConnection(dataSource);
+                    // 调用方已放弃，直接释放连接
+                    if(!state.compareAndSet(PENDING, ACQUIRED)) {
+                        return ;
+                    }
+                    acquired.countDown();
+                    result = callback.doWithQuery(query.onConnection(con));
+                } catch (Throwable e) {
+                    error = e;
+                } finally {
+                    acquired.countDown();
+                    // 先释放连接，再通知调用方
+                    DataSourceUtils.releaseConnection(con, dataSource);
+                }
+                if(null != error) {
+                    future.completeExceptionally(error);
+                } else {
+                    future.complete(result);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Logs.debug("并发COUNT被线程池拒绝，顺序执行！");
+            return null;
+        }
+        try {
+            acquired.await(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if(state.compareAndSet(PENDING, ABANDONED)) {
+            Logs.debug("{}毫秒内未获取到并发COUNT的连接，顺序执行！", acquireTimeoutMillis);
+            return null;
+        }
+        return future;
+    }
+}
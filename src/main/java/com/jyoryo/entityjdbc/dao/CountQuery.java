@@ -0,0 +1,243 @@
+package com.jyoryo.entityjdbc.dao;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.jyoryo.entityjdbc.common.Arrays;
+import com.jyoryo.entityjdbc.support.Condition;
+import com.jyoryo.entityjdbc.support.Dialect;
+
+/**
+ * 提供给{@link CountStrategy}的分页查询
+ * <li>包含未分页的sql、查询参数、RowMapper和分页范围</li>
+ * <li>执行的sql使用与原查询相同的参数</li>
+ * @author jyoryo
+ *
+ * @param <T>
+ */
+public final class CountQuery<T> {
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    /** 在另一个连接上并发执行，为null时不支持并发 */
+    private final ConcurrentCounter counter;
+    private final Dialect dialect;
+    private final String sql;
+    private final RowMapper<T> rowMapper;
+    private final int start;
+    private final int limit;
+    /** Condition或参数数组 */
+    private final Object arg;
+    /** 总记录数缓存，为null时不使用缓存 */
+    private final QueryCache countCache;
+    private Object countKey;
+    private String[] countTables;
+    /** 执行查询前读取的表版本号 */
+    private long[] countVersions;
+    /** 创建时的查询超时时间，单位秒，用于在另一个线程中执行 */
+    private final int queryTimeout;
+
+    CountQuery(NamedParameterJdbcTemplate jdbcTemplate, ConcurrentCounter counter, QueryCache countCache, Dialect dialect, String sql, RowMapper<T> rowMapper, int start, int limit, Object arg) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.counter = counter;
+        this.dialect = dialect;
+        this.sql = sql;
+        this.rowMapper = rowMapper;
+        this.start = start;
+        this.limit = limit;
+        this.arg = (null == arg) ? new Object[0] : arg;
+        // 超时时间可能按调用线程设置，在当前线程中获取
+        this.queryTimeout = (jdbcTemplate.getJdbcOperations() instanceof JdbcTemplate) ? ((JdbcTemplate)jdbcTemplate.getJdbcOperations()).getQueryTimeout() : 0;
+        // 事务中可能读到未提交的数据，不使用缓存
+        if(null != countCache && !TransactionSynchronizationManager.isActualTransactionActive()) {
+            this.countTables = countCache.tableNames(sql);
+        }
+        if(null != countTables && countTables.length > 0) {
+            this.countCache = countCache;
+            this.countKey = QueryCache.key(sql, this.arg);
+            this.countVersions = countCache.versions(countTables);
+        } else {
+            this.countCache = null;
+        }
+    }
+
+    /**
+     * 未分页的sql
+     * @return
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * 映射当前页数据的RowMapper
+     * @return
+     */
+    public RowMapper<T> getRowMapper() {
+        return rowMapper;
+    }
+
+    /**
+     * 分页查询起始的偏移量
+     * @return
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * 每页数量
+     * @return
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * 数据库方言
+     * @return
+     */
+    public Dialect getDialect() {
+        return dialect;
+    }
+
+    /**
+     * 获取缓存的总记录数
+     * <li>未开启总记录数缓存({@link JdbcDao#setCountCache(int, long)})、当前线程存在事务、缓存不存在或已失效时返回null</li>
+     * <li>使用缓存的总记录数时，应设置{@link com.jyoryo.entityjdbc.support.Page#setTotalCountStale(boolean)}</li>
+     * @return
+     */
+    public Integer getCachedTotalCount() {
+        if(null == countCache) {
+            return null;
+        }
+        QueryCache.Entry entry = countCache.lookup(countKey);
+        return (null == entry) ? null : (Integer)entry.getValue();
+    }
+
+    /**
+     * 缓存准确的总记录数，估算值不应缓存
+     * <li>未开启总记录数缓存或查询期间表已被写入时不缓存</li>
+     * @param totalCount
+     */
+    public void cacheTotalCount(int totalCount) {
+        if(null != countCache) {
+            countCache.put(countKey, countTables, countVersions, totalCount);
+        }
+    }
+
+    /**
+     * 为sql添加当前页的LIMIT
+     * @param sql
+     * @return
+     */
+    public String limitSql(String sql) {
+        if(start <= 0 && limit <= 0) {
+            return sql;
+        }
+        StringBuilder limitSqlBuilder = new StringBuilder(sql).append(" LIMIT ");
+        if(start > 0) {
+            limitSqlBuilder.append(start).append(",").append(limit);
+        } else {
+            limitSqlBuilder.append(limit);
+        }
+        return limitSqlBuilder.toString();
+    }
+
+    /**
+     * 以原查询的参数执行sql
+     * @param sql
+     * @param rowMapper
+     * @return
+     */
+    public <R> List<R> query(String sql, RowMapper<R> rowMapper) {
+        if(arg instanceof Condition) {
+            return jdbcTemplate.query(sql, (Condition)arg, rowMapper);
+        }
+        return jdbcTemplate.getJdbcOperations().query(sql, rowMapper, Arrays.wrap(arg));
+    }
+
+    /**
+     * 以原查询的参数执行sql，返回所有行
+     * @param sql
+     * @return
+     */
+    public List<Map<String, Object>> queryForList(String sql) {
+        if(arg instanceof Condition) {
+            return jdbcTemplate.queryForList(sql, (Condition)arg);
+        }
+        return jdbcTemplate.getJdbcOperations().queryForList(sql, Arrays.wrap(arg));
+    }
+
+    /**
+     * 以原查询的参数执行sql，返回单个值
+     * @param sql
+     * @param requiredType
+     * @return
+     */
+    public <R> R queryForObject(String sql, Class<R> requiredType) {
+        if(arg instanceof Condition) {
+            return jdbcTemplate.queryForObject(sql, (Condition)arg, requiredType);
+        }
+        return jdbcTemplate.getJdbcOperations().queryForObject(sql, requiredType, Arrays.wrap(arg));
+    }
+
+    /**
+     * 查询当前页数据：原sql添加LIMIT后执行
+     * @return
+     */
+    public List<T> queryItems() {
+        return query(limitSql(sql), rowMapper);
+    }
+
+    /**
+     * 在同一个数据库连接中执行多条语句，如SQL_CALC_FOUND_ROWS与FOUND_ROWS()
+     * @param callback   参数为绑定到同一个连接的CountQuery
+     * @return
+     */
+    public <R> R inSameConnection(final QueryCallback<T, R> callback) {
+        return jdbcTemplate.getJdbcOperations().execute((ConnectionCallback<R>)con -> callback.doWithQuery(onConnection(con)));
+    }
+
+    /**
+     * 在另一个数据库连接上并发执行，如在查询当前页数据的同时执行COUNT
+     * <li>未开启并发({@link JdbcDao#setConcurrentCount(java.util.concurrent.ExecutorService, long)})时返回null</li>
+     * <li>当前线程存在事务，或在超时时间内未获取到另一个连接时返回null</li>
+     * <li>返回null时，由调用方在当前线程中顺序执行</li>
+     * @param callback   参数为绑定到另一个连接的CountQuery
+     * @return
+     */
+    public <R> CompletableFuture<R> submitConcurrently(QueryCallback<T, R> callback) {
+        return (null == counter) ? null : counter.submit(this, callback);
+    }
+
+    /**
+     * 返回绑定到指定连接的CountQuery，不会关闭连接
+     * <li>使用创建时的查询超时时间</li>
+     * @param con
+     * @return
+     */
+    CountQuery<T> onConnection(Connection con) {
+        DataSource dataSource = new SingleConnectionDataSource(con, true);
+        final int queryTimeout = this.queryTimeout;
+        return new CountQuery<>(new NamedParameterJdbcTemplate(new QueryTimeoutJdbcTemplate(dataSource, () -> queryTimeout)), null, null, dialect, sql, rowMapper, start, limit, arg);
+    }
+
+    /**
+     * 以CountQuery执行的操作
+     * @param <T>
+     * @param <R>
+     */
+    public interface QueryCallback<T, R> {
+        R doWithQuery(CountQuery<T> query);
+    }
+}
@@ -0,0 +1,222 @@
+package com.jyoryo.entityjdbc.dao;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SingleColumnRowMapper;
+
+import com.jyoryo.entityjdbc.common.Strings;
+import com.jyoryo.entityjdbc.common.collection.CollectionUtil;
+import com.jyoryo.entityjdbc.exception.DaoException;
+import com.jyoryo.entityjdbc.support.Dialect;
+import com.jyoryo.entityjdbc.support.Page;
+import com.jyoryo.entityjdbc.utils.Jdbcs;
+
+/**
+ * 内置的总记录数策略
+ * @author jyoryo
+ *
+ */
+public enum CountStrategies implements CountStrategy {
+    /**
+     * 派生COUNT：SELECT COUNT(*) FROM (sql) count_t
+     * <li>当前页未满时可以直接得出总记录数，不再执行COUNT</li>
+     * <li>开启并发COUNT时，COUNT与当前页数据在两个连接上同时执行</li>
+     * <li>开启总记录数缓存时，优先使用缓存的总记录数，见{@link Page#isTotalCountStale()}</li>
+     * <li>默认策略</li>
+     */
+    DERIVED {
+        @Override
+        public <T> void query(CountQuery<T> query, Page<T> page) {
+            final Integer cachedTotal = query.getCachedTotalCount();
+            CompletableFuture<Integer> concurrentCount = (null == cachedTotal) ? query.submitConcurrently(CountStrategies::derivedCount) : null;
+            List<T> items = CollectionUtil.emptyListIfNull(query.queryItems());
+            page.setItems(items);
+            final int size = items.size();
+            // 当前页未满，且当前页有数据或为第一页
+            if(query.getLimit() > 0 && size < query.getLimit() && (size > 0 || query.getStart() <= 0)) {
+                final int total = Math.max(query.getStart(), 0) + size;
+                if(null == cachedTotal || cachedTotal != total) {
+                    query.cacheTotalCount(total);
+                }
+                page.setTotalCount(total);
+                return ;
+            }
+            if(null != cachedTotal) {
+                page.setTotalCount(cachedTotal);
+                page.setTotalCountStale(true);
+                return ;
+            }
+            final int total = (null == concurrentCount) ? derivedCount(query) : join(concurrentCount);
+            query.cacheTotalCount(total);
+            page.setTotalCount(total);
+        }
+    },
+    /**
+     * 窗口函数：在当前页查询的最外层查询列中附加COUNT(*) OVER()列，一次查询获得数据和总记录数
+     * <li>不包装原sql，原sql的ORDER BY与LIMIT在同一层，分页顺序确定</li>
+     * <li>需要数据库支持窗口函数，如MySQL 8、H2 1.4.198+</li>
+     * <li>当前页没有数据时，执行派生COUNT</li>
+     * <li>Map结果中不包含附加的列</li>
+     * <li>单列结果(SingleColumnRowMapper)无法附加列，最外层包含DISTINCT、UNION等时附加的列不等于总记录数，使用派生COUNT</li>
+     */
+    WINDOW {
+        @Override
+        public <T> void query(CountQuery<T> query, Page<T> page) {
+            final RowMapper<T> rowMapper = query.getRowMapper();
+            final String windowSql = windowSql(query.getSql());
+            if(rowMapper instanceof SingleColumnRowMapper || null == windowSql) {
+                DERIVED.query(query, page);
+                return ;
+            }
+            final long[] total = {-1L};
+            List<T> items = CollectionUtil.emptyListIfNull(query.query(query.limitSql(windowSql), (rs, rowNum) -> {
+                if(0 == rowNum) {
+                    total[0] = rs.getLong(TOTAL_COLUMN);
+                }
+                return removeTotalColumn(rowMapper.mapRow(rs, rowNum));
+            }));
+            page.setItems(items);
+            page.setTotalCount((total[0] >= 0) ? (int)total[0] : derivedCount(query));
+        }
+    },
+    /**
+     * 估算：取MySQL EXPLAIN中估算的行数，总记录数为估算值，见{@link Page#isTotalCountEstimated()}
+     * <li>适用于只需要大致页数的大表查询，结果可能与实际相差较大</li>
+     * <li>非MySQL数据库使用派生COUNT</li>
+     */
+    EXPLAIN {
+        @Override
+        public <T> void query(CountQuery<T> query, Page<T> page) {
+            if(Dialect.MYSQL != query.getDialect()) {
+                DERIVED.query(query, page);
+                return ;
+            }
+            CompletableFuture<Long> concurrentEstimate = query.submitConcurrently(CountStrategies::explainRows);
+            page.setItems(CollectionUtil.emptyListIfNull(query.queryItems()));
+            long estimate = (null == concurrentEstimate) ? explainRows(query) : join(concurrentEstimate);
+            // 估算值不小于当前页已确定的记录数
+            estimate = Math.max(estimate, (long)Math.max(query.getStart(), 0) + page.getItems().size());
+            page.setTotalCount((int)Math.min(estimate, Integer.MAX_VALUE));
+            page.setTotalCountEstimated(true);
+        }
+    },
+    /**
+     * MySQL的SQL_CALC_FOUND_ROWS与FOUND_ROWS()，两条语句在同一个连接中执行
+     * <li>MySQL 8.0.17起已不推荐使用，仅用于兼容</li>
+     */
+    FOUND_ROWS {
+        @Override
+        public <T> void query(CountQuery<T> query, Page<T> page) {
+            final String foundRowsSql = query.limitSql("SELECT SQL_CALC_FOUND_ROWS " + Jdbcs.removeFirstSelect(query.getSql()));
+            query.inSameConnection(sameQuery -> {
+                page.setItems(CollectionUtil.emptyListIfNull(sameQuery.query(foundRowsSql, sameQuery.getRowMapper())));
+                page.setTotalCount(sameQuery.queryForObject("SELECT FOUND_ROWS()", Integer.class));
+                return null;
+            });
+        }
+    };
+
+    /**
+     * 窗口函数策略中，总记录数列的别名
+     */
+    private static final String TOTAL_COLUMN = "entityjdbc_total_count";
+
+    /**
+     * 最外层包含时，不能通过COUNT(*) OVER()得到总记录数的关键字
+     */
+    private static final String[] NON_WINDOW_KEYWORDS = {"DISTINCT", "UNION", "INTERSECT", "EXCEPT", "MINUS"};
+
+    /**
+     * 在sql最外层的查询列之后附加COUNT(*) OVER()列
+     * @param sql
+     * @return   没有最外层的FROM，或最外层包含DISTINCT、UNION等时返回null
+     */
+    private static String windowSql(String sql) {
+        final int from = Jdbcs.indexOfTopLevelKeyword(sql, "FROM");
+        if(-1 == from) {
+            return null;
+        }
+        for(String keyword : NON_WINDOW_KEYWORDS) {
+            if(-1 != Jdbcs.indexOfTopLevelKeyword(sql, keyword)) {
+                return null;
+            }
+        }
+        return Strings.format("{}, COUNT(*) OVER() AS {} {}", Strings.trim(sql.substring(0, from)), TOTAL_COLUMN, sql.substring(from));
+    }
+
+    /**
+     * 从Map结果中移除附加的总记录数列
+     * @param item
+     * @return
+     */
+    private static <T> T removeTotalColumn(T item) {
+        if(item instanceof Map) {
+            ((Map<?, ?>)item).keySet().removeIf(key -> key instanceof String && TOTAL_COLUMN.equalsIgnoreCase((String)key));
+        }
+        return item;
+    }
+
+    /**
+     * 执行派生COUNT
+     * @param query
+     * @return
+     */
+    private static int derivedCount(CountQuery<?> query) {
+        Long total = query.queryForObject(Strings.format("SELECT COUNT(*) FROM ({}) count_t", query.getSql()), Long.class);
+        return (null == total) ? 0 : (int)Math.min(total, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 读取MySQL EXPLAIN中估算的最大行数
+     * @param query
+     * @return
+     */
+    private static long explainRows(CountQuery<?> query) {
+        long estimate = 0L;
+        for(Map<String, Object> row : query.queryForList("EXPLAIN " + query.getSql())) {
+            Object rows = row.get("rows");
+            if(rows instanceof Number) {
+                estimate = Math.max(estimate, ((Number)rows).longValue());
+            }
+        }
+        return estimate;
+    }
+
+    /**
+     * 等待并发执行的结果，异常原样抛出
+     * @param future
+     * @return
+     */
+    private static <R> R join(CompletableFuture<R> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if(cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new DaoException(cause);
+        }
+    }
+
+    /**
+     * 按名称获取内置策略，忽略大小写
+     * @param name
+     * @return   不存在时返回null
+     */
+    public static CountStrategies of(String name) {
+        for(CountStrategies strategy : values()) {
+            if(strategy.name().equalsIgnoreCase(Strings.trim(name))) {
+                return strategy;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,22 @@
+package com.jyoryo.entityjdbc.dao;
+
+import com.jyoryo.entityjdbc.support.Page;
+
+/**
+ * 分页查询获取总记录数的策略
+ * <p>策略负责查询当前页的数据并设置总记录数，内置的策略见{@link CountStrategies}。</p>
+ * <li>通过{@link JdbcDao#setCountStrategy(CountStrategy)}设置默认策略</li>
+ * <li>通过queryPage的CountStrategy参数为单次查询指定策略</li>
+ * <li>通过sql模板的<code>countStrategy</code>属性为模板指定策略，如：&lt;queryUsers countStrategy="window"&gt;</li>
+ * <li>自定义策略通过{@link JdbcDao#registerCountStrategy(String, CountStrategy)}注册后，可在模板中按名称使用</li>
+ * @author jyoryo
+ *
+ */
+public interface CountStrategy {
+    /**
+     * 查询当前页数据，设置到page中，并通过{@link Page#setTotalCount(int)}设置总记录数
+     * @param query   当前分页查询
+     * @param page   非流式分页
+     */
+    <T> void query(CountQuery<T> query, Page<T> page);
+}
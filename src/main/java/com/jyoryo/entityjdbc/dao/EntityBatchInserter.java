@@ -0,0 +1,336 @@
+package com.jyoryo.entityjdbc.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import com.jyoryo.entityjdbc.JpaEntity;
+import com.jyoryo.entityjdbc.common.Chars;
+import com.jyoryo.entityjdbc.common.Strings;
+import com.jyoryo.entityjdbc.common.log.Logs;
+import com.jyoryo.entityjdbc.metadata.ColumnMetaData;
+import com.jyoryo.entityjdbc.support.Dialect;
+import com.jyoryo.entityjdbc.utils.Jdbcs;
+
+/**
+ * 实体批量插入
+ * <li>按实体写入的列集合分组，相同列集合的实体共用同一条INSERT语句</li>
+ * <li>多行VALUES模式：<code>INSERT INTO t (c1,c2) VALUES (?,?),(?,?),...</code>，每条语句的行数和估算的包大小受限制</li>
+ * <li>实体含有主键且主键值为空时，由数据库生成主键，并通过getGeneratedKeys将主键写回实体</li>
+ * @author jyoryo
+ *
+ */
+final class EntityBatchInserter {
+    /**
+     * 非字符、非二进制参数估算的字节数
+     */
+    private static final int DEFAULT_VALUE_SIZE = 32;
+
+    private EntityBatchInserter() {
+    }
+
+    /**
+     * 以多行VALUES的方式批量插入实体
+     * @param jdbcOperations
+     * @param jpaEntity
+     * @param targets
+     * @param rowsPerStatement   每条INSERT语句最多包含的行数
+     * @param maxPacketSize   每条INSERT语句估算的最大字节数，对应MySQL的max_allowed_packet
+     * @param maxPlaceholders   每条INSERT语句最多包含的占位符个数(行数 × 列数)
+     * @return   与targets顺序对应的影响行数；无法确定单行结果时为{@link Statement#SUCCESS_NO_INFO}
+     */
+    static <T> int[] multiValuesInsert(JdbcOperations jdbcOperations, JpaEntity jpaEntity, List<T> targets, int rowsPerStatement, int maxPacketSize, int maxPlaceholders) {
+        final int[] retValues = new int[targets.size()];
+        for(RowGroup group : groupByColumns(jpaEntity, targets, false)) {
+            final String prefix = insertPrefix(jpaEntity.getTableName(), group.columns);
+            final String rowPlaceholders = Jdbcs.inPlaceholders(group.columns.length);
+            final int size = group.rows.size();
+            // 至少包含一行
+            final int maxRows = Math.max(Math.min(rowsPerStatement, maxPlaceholders / Math.max(group.columns.length, 1)), 1);
+            int from = 0;
+            while(from < size) {
+                long packetSize = prefix.length();
+                int to = from;
+                while(to < size && (to - from) < maxRows) {
+                    long rowSize = estimateSize(group.rows.get(to)) + rowPlaceholders.length() + 1;
+                    // 至少包含一行
+                    if(to > from && packetSize + rowSize > maxPacketSize) {
+                        break ;
+                    }
+                    packetSize += rowSize;
+                    to ++;
+                }
+                final int start = from, end = to;
+                final String sql = multiValuesSql(prefix, rowPlaceholders, end - start);
+                int affected = jdbcOperations.execute(new ConnectionCallback<Integer>() {
+                    @Override
+                    public Integer doInConnection(Connection con) throws SQLException {
+                        PreparedStatement ps = prepareStatement(con, sql, jpaEntity, group);
+                        try {
+                            int parameterIndex = 1;
+                            for(int i = start; i < end; i ++) {
+                                parameterIndex = setValues(ps, group.rows.get(i), parameterIndex);
+                            }
+                            int rows = ps.executeUpdate();
+                            if(group.generatedKey) {
+                                writeGeneratedKeys(ps, jpaEntity, targets, group, start, end);
+                            }
+                            return rows;
+                        } finally {
+                            JdbcUtils.closeStatement(ps);
+                        }
+                    }
+                });
+                final int rowValue = (affected == end - start) ? 1 : Statement.SUCCESS_NO_INFO;
+                for(int i = start; i < end; i ++) {
+                    retValues[group.indexes.get(i)] = rowValue;
+                }
+                from = to;
+            }
+        }
+        return retValues;
+    }
+
+    /**
+     * 以JDBC批处理的方式批量插入实体，每个实体对应批处理中的一条记录
+     * @param jdbcOperations
+     * @param jpaEntity
+     * @param targets
+     * @return   与targets顺序对应的影响行数
+     */
+    static <T> int[] batchInsert(JdbcOperations jdbcOperations, JpaEntity jpaEntity, List<T> targets) {
+        return batchExecute(jdbcOperations, jpaEntity, targets, null);
+    }
+
+    /**
+     * 以JDBC批处理的方式批量插入或更新实体
+     * <li>主键值为空的实体执行插入，并写回数据库生成的主键</li>
+     * <li>主键值不为空的实体执行方言对应的插入或更新：MySQL为INSERT ... ON DUPLICATE KEY UPDATE，H2为MERGE</li>
+     * @param jdbcOperations
+     * @param jpaEntity
+     * @param targets
+     * @param dialect
+     * @return   与targets顺序对应的影响行数
+     */
+    static <T> int[] batchUpsert(JdbcOperations jdbcOperations, JpaEntity jpaEntity, List<T> targets, Dialect dialect) {
+        if(!dialect.supportsUpsert()) {
+            throw new UnsupportedOperationException(Strings.format("数据库方言{}不支持插入或更新操作！", dialect));
+        }
+        return batchExecute(jdbcOperations, jpaEntity, targets, dialect);
+    }
+
+    /**
+     * 按列集合分组，以JDBC批处理执行
+     * @param jdbcOperations
+     * @param jpaEntity
+     * @param targets
+     * @param upsertDialect   不为null时，主键值不为空的实体执行插入或更新
+     * @return
+     */
+    private static <T> int[] batchExecute(JdbcOperations jdbcOperations, JpaEntity jpaEntity, List<T> targets, Dialect upsertDialect) {
+        final int[] retValues = new int[targets.size()];
+        for(RowGroup group : groupByColumns(jpaEntity, targets, null != upsertDialect)) {
+            final String sql = (null == upsertDialect || group.generatedKey || !jpaEntity.existId())
+                    ? insertPrefix(jpaEntity.getTableName(), group.columns) + Jdbcs.inPlaceholders(group.columns.length)
+                    : upsertDialect.upsertSql(jpaEntity.getTableName(), group.columns, jpaEntity.getIdColumnName());
+            int[] batchValues = jdbcOperations.execute(new ConnectionCallback<int[]>() {
+                @Override
+                public int[] doInConnection(Connection con) throws SQLException {
+                    PreparedStatement ps = prepareStatement(con, sql, jpaEntity, group);
+                    try {
+                        for(Object[] row : group.rows) {
+                            setValues(ps, row, 1);
+                            ps.addBatch();
+                        }
+                        int[] values = ps.executeBatch();
+                        if(group.generatedKey) {
+                            writeGeneratedKeys(ps, jpaEntity, targets, group, 0, group.rows.size());
+                        }
+                        return values;
+                    } finally {
+                        JdbcUtils.closeStatement(ps);
+                    }
+                }
+            });
+            for(int i = 0; i < batchValues.length && i < group.indexes.size(); i ++) {
+                retValues[group.indexes.get(i)] = batchValues[i];
+            }
+        }
+        return retValues;
+    }
+
+    private static PreparedStatement prepareStatement(Connection con, String sql, JpaEntity jpaEntity, RowGroup group) throws SQLException {
+        if(group.generatedKey) {
+            return con.prepareStatement(sql, new String[] {jpaEntity.getIdColumnName()});
+        }
+        return con.prepareStatement(sql);
+    }
+
+    private static int setValues(PreparedStatement ps, Object[] row, int parameterIndex) throws SQLException {
+        for(Object value : row) {
+            StatementCreatorUtils.setParameterValue(ps, parameterIndex ++, SqlTypeValue.TYPE_UNKNOWN, value);
+        }
+        return parameterIndex;
+    }
+
+    /**
+     * 读取数据库生成的主键，按顺序写回实体
+     * @param ps
+     * @param jpaEntity
+     * @param targets
+     * @param group
+     * @param from   group中起始位置(包含)
+     * @param to   group中结束位置(不包含)
+     * @throws SQLException
+     */
+    private static <T> void writeGeneratedKeys(PreparedStatement ps, JpaEntity jpaEntity, List<T> targets, RowGroup group, int from, int to) throws SQLException {
+        ResultSet rs = ps.getGeneratedKeys();
+        try {
+            int i = from;
+            while(i < to && null != rs && rs.next()) {
+                Object key = rs.getObject(1);
+                if(key instanceof Number) {
+                    jpaEntity.writeGeneratedId(targets.get(group.indexes.get(i)), (Number)key);
+                }
+                i ++;
+            }
+            if(i < to) {
+                Logs.warn("表{}批量插入{}条记录，仅返回{}个生成的主键！", jpaEntity.getTableName(), to - from, i - from);
+            }
+        } finally {
+            JdbcUtils.closeResultSet(rs);
+        }
+    }
+
+    /**
+     * 按实体写入的列集合分组，保持实体原有的先后顺序
+     * <li>插入时写入实体的所有列，值为null的列写入NULL，与{@link JdbcDao#save(JpaEntity, Object)}一致；由数据库生成的主键列不写入</li>
+     * <li>插入或更新主键值不为空的实体时，只写入非null的列，避免覆盖已存在记录的值</li>
+     * <li>列值缓冲、写入列标记在各实体间复用，每个实体只创建写入的值数组</li>
+     * @param jpaEntity
+     * @param targets
+     * @param upsert   是否为插入或更新
+     * @return
+     */
+    static <T> List<RowGroup> groupByColumns(JpaEntity jpaEntity, List<T> targets, boolean upsert) {
+        Map<BitSet, RowGroup> groups = new LinkedHashMap<>();
+        final int length = targets.size();
+        final boolean existId = jpaEntity.existId();
+        // 按列名排序的所有列
+        final String[] columnNames = jpaEntity.getColumnFieldMap().keySet().toArray(new String[0]);
+        java.util.Arrays.sort(columnNames);
+        final ColumnMetaData[] columns = new ColumnMetaData[columnNames.length];
+        int idIndex = -1;
+        for(int j = 0; j < columnNames.length; j ++) {
+            columns[j] = jpaEntity.getColumnFieldMap().get(columnNames[j]);
+            if(columnNames[j].equals(jpaEntity.getIdColumnName())) {
+                idIndex = j;
+            }
+        }
+        final Object[] values = new Object[columns.length];
+        final BitSet present = new BitSet(columns.length);
+        for(int i = 0; i < length; i ++) {
+            T target = targets.get(i);
+            // 主键值为空，由数据库生成
+            final boolean generatedKey = existId && jpaEntity.isIdEmpty(target);
+            final boolean writeNull = !upsert || generatedKey;
+            present.clear();
+            for(int j = 0; j < columns.length; j ++) {
+                values[j] = jpaEntity.columnValue(target, columns[j]);
+                if(writeNull || null != values[j]) {
+                    present.set(j);
+                }
+            }
+            if(generatedKey && idIndex >= 0) {
+                present.clear(idIndex);
+            }
+            RowGroup group = groups.get(present);
+            if(null == group) {
+                String[] groupColumns = new String[present.cardinality()];
+                for(int j = present.nextSetBit(0), k = 0; j >= 0; j = present.nextSetBit(j + 1)) {
+                    groupColumns[k ++] = columnNames[j];
+                }
+                group = new RowGroup(groupColumns, generatedKey);
+                groups.put((BitSet)present.clone(), group);
+            }
+            Object[] row = new Object[group.columns.length];
+            for(int j = present.nextSetBit(0), k = 0; j >= 0; j = present.nextSetBit(j + 1)) {
+                row[k ++] = values[j];
+            }
+            group.indexes.add(i);
+            group.rows.add(row);
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    private static String insertPrefix(String tableName, String[] columns) {
+        return new StringBuilder("INSERT INTO ").append(tableName)
+                .append(" (").append(String.join(String.valueOf(Chars.COMMA), columns)).append(") VALUES ")
+                .toString();
+    }
+
+    private static String multiValuesSql(String prefix, String rowPlaceholders, int rows) {
+        StringBuilder builder = new StringBuilder(prefix.length() + rows * (rowPlaceholders.length() + 1)).append(prefix);
+        for(int i = 0; i < rows; i ++) {
+            if(i > 0) {
+                builder.append(Chars.COMMA);
+            }
+            builder.append(rowPlaceholders);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 估算一行参数在SQL语句中占用的字节数
+     * <li>字符按转义后最坏情况估算</li>
+     * @param row
+     * @return
+     */
+    private static long estimateSize(Object[] row) {
+        long size = 0;
+        for(Object value : row) {
+            if(null == value) {
+                size += 4;
+            } else if(value instanceof CharSequence) {
+                size += ((CharSequence)value).length() * 3L + 2;
+            } else if(value instanceof byte[]) {
+                size += ((byte[])value).length * 2L + 3;
+            } else {
+                size += DEFAULT_VALUE_SIZE;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 写入相同列集合的一组实体数据
+     */
+    static final class RowGroup {
+        /** 排序后的列名 */
+        final String[] columns;
+        /** 是否由数据库生成主键 */
+        final boolean generatedKey;
+        /** 实体在原始列表中的位置 */
+        final List<Integer> indexes = new ArrayList<>();
+        /** 与columns顺序对应的值 */
+        final List<Object[]> rows = new ArrayList<>();
+
+        RowGroup(String[] columns, boolean generatedKey) {
+            this.columns = columns;
+            this.generatedKey = generatedKey;
+        }
+    }
+}
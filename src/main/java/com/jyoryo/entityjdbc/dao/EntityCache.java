@@ -0,0 +1,184 @@
+package com.jyoryo.entityjdbc.dao;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.jyoryo.entityjdbc.common.Assert;
+import com.jyoryo.entityjdbc.common.cache.Cache;
+import com.jyoryo.entityjdbc.common.cache.LFUCache;
+import com.jyoryo.entityjdbc.common.cache.LRUCache;
+
+/**
+ * 按主键缓存的实体
+ * <li>由{@link JdbcEntityDao}使用：get时先从缓存中获取，通过该DAO写入实体后按主键移除</li>
+ * <li>整数类型的主键统一按long比较，如：1与1L为同一个key</li>
+ * <li>读取期间有实体被移除时，读取的结果不放入缓存，避免缓存写入前的旧数据</li>
+ * @author jyoryo
+ *
+ * @param <T>
+ */
+public final class EntityCache<T> {
+    /**
+     * 淘汰策略
+     */
+    public enum Eviction {
+        /** 最近最久未使用 */
+        LRU,
+        /** 最少使用 */
+        LFU
+    }
+
+    private final Cache<Object, T> cache;
+    /**
+     * 移除次数，用于判断读取期间是否有实体被移除
+     */
+    private final AtomicLong evictions = new AtomicLong();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * @param cache   存储实体的Cache
+     */
+    public EntityCache(Cache<Object, T> cache) {
+        Assert.notNull(cache);
+        this.cache = cache;
+    }
+
+    /**
+     * 创建实体缓存
+     * @param maxSize   最大缓存数量
+     * @param timeoutMillis   失效时长，单位毫秒，0表示不失效
+     * @param eviction   淘汰策略，为null时为LRU
+     * @return
+     */
+    public static <T> EntityCache<T> create(int maxSize, long timeoutMillis, Eviction eviction) {
+        if(maxSize <= 0) {
+            throw new IllegalArgumentException("缓存数量必须大于0！");
+        }
+        timeoutMillis = Math.max(timeoutMillis, 0L);
+        Cache<Object, T> cache = (Eviction.LFU == eviction) ? new LFUCache<Object, T>(maxSize, timeoutMillis) : new LRUCache<Object, T>(maxSize, timeoutMillis);
+        return new EntityCache<>(cache);
+    }
+
+    /**
+     * 获取缓存的实体
+     * @param id
+     * @return   不存在或已失效时返回null
+     */
+    public T get(Object id) {
+        T target = (null == id) ? null : cache.get(key(id));
+        if(null == target) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return target;
+    }
+
+    /**
+     * 当前的移除次数，在读取数据库前获取，传给{@link #put(Object, Object, long)}
+     * @return
+     */
+    public long stamp() {
+        return evictions.get();
+    }
+
+    /**
+     * 放入缓存；stamp之后有实体被移除时不放入，放入期间有实体被移除时随即移除
+     * @param id
+     * @param target
+     * @param stamp   读取数据库前获取的{@link #stamp()}
+     */
+    public void put(Object id, T target, long stamp) {
+        if(null == id || null == target || stamp != evictions.get()) {
+            return ;
+        }
+        final Object key = key(id);
+        cache.put(key, target);
+        // 检查与放入之间有实体被移除时，移除刚放入的实体；之后开始的移除会在计数后移除该key
+        if(stamp != evictions.get()) {
+            cache.remove(key);
+        }
+    }
+
+    /**
+     * 移除主键对应的实体
+     * @param id
+     */
+    public void evict(Object id) {
+        evictions.incrementAndGet();
+        if(null != id) {
+            cache.remove(key(id));
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        evictions.incrementAndGet();
+        cache.clear();
+    }
+
+    /**
+     * 当前缓存数量
+     * @return
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * 命中数
+     * @return
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * 丢失数
+     * @return
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * 命中率，没有访问时为0
+     * @return
+     */
+    public double getHitRatio() {
+        final long hits = getHitCount(), total = hits + getMissCount();
+        return (0 == total) ? 0D : (double)hits / total;
+    }
+
+    /**
+     * 重置命中数、丢失数
+     */
+    public void resetStatistics() {
+        hitCount.reset();
+        missCount.reset();
+    }
+
+    /**
+     * 主键转换为缓存key：整数类型转换为Long
+     * @param id
+     * @return
+     */
+    static Object key(Object id) {
+        if(id instanceof Integer || id instanceof Long || id instanceof Short || id instanceof Byte) {
+            return ((Number)id).longValue();
+        }
+        if(id instanceof BigInteger && ((BigInteger)id).bitLength() < Long.SIZE) {
+            return ((BigInteger)id).longValue();
+        }
+        if(id instanceof BigDecimal) {
+            BigDecimal decimal = ((BigDecimal)id).stripTrailingZeros();
+            return (decimal.scale() <= 0 && decimal.precision() - decimal.scale() < 19) ? (Object)decimal.longValue() : decimal;
+        }
+        return id;
+    }
+}
@@ -1,28 +1,64 @@
 package com.jyoryo.entityjdbc.dao;
 
 import java.io.Serializable;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import javax.sql.DataSource;
 
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
+import org.springframework.jdbc.core.PreparedStatementSetter;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SqlParameter;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
+import org.springframework.jdbc.support.SQLExceptionTranslator;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.jyoryo.entityjdbc.JpaEntity;
 import com.jyoryo.entityjdbc.builder.SqlBuilder;
 import com.jyoryo.entityjdbc.common.Arrays;
-import com.jyoryo.entityjdbc.common.Chars;
-import com.jyoryo.entityjdbc.common.Reflects;
+import com.jyoryo.entityjdbc.common.Assert;
 import com.jyoryo.entityjdbc.common.Strings;
 import com.jyoryo.entityjdbc.common.collection.CollectionUtil;
+import com.jyoryo.entityjdbc.domain.Snapshotable;
+import com.jyoryo.entityjdbc.exception.PageException;
+import com.jyoryo.entityjdbc.exception.QueryTimeoutException;
+import com.jyoryo.entityjdbc.mapper.JpaEntityRowMapper;
 import com.jyoryo.entityjdbc.metadata.ColumnMetaData;
+import com.jyoryo.entityjdbc.support.BatchResult;
 import com.jyoryo.entityjdbc.support.Condition;
+import com.jyoryo.entityjdbc.support.Dialect;
+import com.jyoryo.entityjdbc.support.FetchPlan;
+import com.jyoryo.entityjdbc.support.KeysetSort;
+import com.jyoryo.entityjdbc.support.KeysetToken;
 import com.jyoryo.entityjdbc.support.Page;
 import com.jyoryo.entityjdbc.utils.Jdbcs;
+import com.jyoryo.entityjdbc.utils.JpaUtils;
 
 /**
  * JdbcDao
@@ -38,9 +74,53 @@ import com.jyoryo.entityjdbc.utils.Jdbcs;
  */
 public final class JdbcDao {
     /**
-     * MySQL 获取记录行数的sql
+     * sql模板中指定总记录数策略的属性名
      */
-    private final static String COUNT_SQL = "SELECT FOUND_ROWS()";
+    public final static String COUNT_STRATEGY_ATTRIBUTE = "countStrategy";
+    /**
+     * sql模板中开启结果缓存的属性名，如：&lt;list cache="true"&gt;
+     */
+    public final static String RESULT_CACHE_ATTRIBUTE = "cache";
+    /**
+     * sql模板中指定查询超时时间(秒)的属性名，如：&lt;report timeout="30"&gt;
+     */
+    public final static String QUERY_TIMEOUT_ATTRIBUTE = "timeout";
+    /**
+     * 并发COUNT默认等待获取另一个连接的毫秒数
+     */
+    public final static long DEFAULT_COUNT_ACQUIRE_TIMEOUT = 50L;
+    /**
+     * 多行VALUES插入时，每条INSERT语句默认的最大行数
+     */
+    public final static int DEFAULT_MULTI_VALUES_ROWS = 500;
+    /**
+     * 流式批量保存时，每批次默认的实体数
+     */
+    public final static int DEFAULT_BATCH_CHUNK_SIZE = 1000;
+    /**
+     * 多行VALUES插入时，每条INSERT语句默认的最大字节数(MySQL max_allowed_packet默认值4M)
+     */
+    public final static int DEFAULT_MAX_PACKET_SIZE = 4 * 1024 * 1024;
+    /**
+     * IN (...)查询条件中，每条sql默认的最大参数个数
+     */
+    public final static int DEFAULT_IN_CLAUSE_SIZE = 1000;
+    /**
+     * 每条sql默认允许的最大占位符个数(MySQL预编译语句的限制为65535)
+     */
+    public final static int DEFAULT_MAX_PLACEHOLDERS = 65535;
+    /**
+     * 逐行读取结果时，每次从数据库读取的默认行数
+     */
+    public final static int DEFAULT_STREAM_FETCH_SIZE = 1000;
+    /**
+     * MySQL逐行流式读取结果的fetchSize，结果集关闭前连接不能执行其他语句
+     */
+    public final static int STREAMING_FETCH_SIZE = Integer.MIN_VALUE;
+    /**
+     * 写入后，当前线程的查询在主库执行的默认时长，单位毫秒
+     */
+    public final static long DEFAULT_READ_YOUR_WRITES_MILLIS = 1000L;
     
 	// datasource
 	private DataSource dataSource;
@@ -53,322 +133,1764 @@ public final class JdbcDao {
 	 * 该属性对象是：Spring JdbcTemplate
 	 */
 	private JdbcOperations classicJdbcTemplate;
+	/**
+	 * 从库数据源，为null时所有查询在主库执行
+	 */
+	private DataSource replicaDataSource;
+	/**
+	 * 从库的NamedParameterJdbcTemplate
+	 */
+	private NamedParameterJdbcTemplate replicaJdbcTemplate;
+	/**
+	 * 写入后，当前线程的查询在主库执行的时长，单位毫秒
+	 */
+	private long readYourWritesMillis = DEFAULT_READ_YOUR_WRITES_MILLIS;
+	/**
+	 * 当前线程最后一次写入的时间(System.nanoTime)
+	 */
+	private final ThreadLocal<Long> lastWriteNanos = new ThreadLocal<>();
+	/**
+	 * 默认的查询超时时间，单位秒，0表示不设置
+	 */
+	private volatile int queryTimeout;
+	/**
+	 * 当前线程按次设置的查询超时时间，见{@link #withQueryTimeout(int, Supplier)}
+	 */
+	private final ThreadLocal<Integer> callQueryTimeout = new ThreadLocal<>();
 	/**
 	 * 构建sql语句的builder
 	 */
 	private SqlBuilder sqlBuilder;
+	/**
+	 * 已编译INSERT语句的缓存
+	 */
+	private JdbcInsertCache insertCache;
+	/**
+	 * 批量保存是否使用多行VALUES插入：INSERT ... VALUES (...),(...),...
+	 */
+	private boolean multiValuesInsert = false;
+	/**
+	 * 多行VALUES插入时，每条INSERT语句的最大行数
+	 */
+	private int multiValuesRows = DEFAULT_MULTI_VALUES_ROWS;
+	/**
+	 * 多行VALUES插入时，每条INSERT语句估算的最大字节数
+	 */
+	private int maxPacketSize = DEFAULT_MAX_PACKET_SIZE;
+	/**
+	 * IN (...)查询条件中，每条sql的最大参数个数
+	 */
+	private int inClauseSize = DEFAULT_IN_CLAUSE_SIZE;
+	/**
+	 * 每条sql允许的最大占位符个数，取决于数据库驱动
+	 */
+	private int maxPlaceholders = DEFAULT_MAX_PLACEHOLDERS;
+	/**
+	 * 数据库方言，未设置时通过数据源元数据获取
+	 */
+	private volatile Dialect dialect;
+	/**
+	 * 是否开启脏数据跟踪
+	 */
+	private boolean dirtyTracking = false;
+	/**
+	 * <code>@JoinColumn</code>字段的延迟加载代理，为null时不延迟加载
+	 */
+	private volatile LazyAssociations lazyAssociations;
+	/**
+	 * 逐行读取结果时，每次从数据库读取的行数，为0时根据数据库方言确定
+	 */
+	private int streamFetchSize = 0;
+	/**
+	 * 非流式分页默认的总记录数策略
+	 */
+	private CountStrategy countStrategy = CountStrategies.DERIVED;
+	/**
+	 * 按名称注册的自定义总记录数策略，用于sql模板的countStrategy属性
+	 */
+	private final Map<String, CountStrategy> countStrategies = new ConcurrentHashMap<>();
+	/**
+	 * 在另一个连接上并发执行COUNT，为null时不并发
+	 */
+	private ConcurrentCounter concurrentCounter;
+	/**
+	 * 非流式分页的总记录数缓存，为null时不缓存
+	 */
+	private QueryCache countCache;
+	/**
+	 * query、queryForObject的结果缓存，为null时不缓存
+	 */
+	private QueryCache resultCache;
+	/**
+	 * 合并相同的并发查询，为null时不合并
+	 */
+	private SingleFlight singleFlight;
+	/**
+	 * 实体类对应的JpaEntity
+	 */
+	private final Map<Class<?>, JpaEntity> jpaEntities = new ConcurrentHashMap<>();
+	/**
+	 * 实体类对应的按主键缓存，加载关联实体时使用
+	 */
+	private final Map<Class<?>, EntityCache<?>> entityCaches = new ConcurrentHashMap<>();
 	
 	public JdbcDao() {
 		super();
 	}
 	public JdbcDao(DataSource dataSource) {
-		this.dataSource = dataSource;
-		this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
-		this.classicJdbcTemplate = this.jdbcTemplate.getJdbcOperations();
+		setDataSource(dataSource);
 	}
 
 	public void setDataSource(DataSource dataSource) {
 		this.dataSource = dataSource;
-		this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+		this.jdbcTemplate = new NamedParameterJdbcTemplate(new QueryTimeoutJdbcTemplate(dataSource, this::currentQueryTimeout));
 		this.classicJdbcTemplate = this.jdbcTemplate.getJdbcOperations();
+		this.insertCache = new JdbcInsertCache((JdbcTemplate)this.classicJdbcTemplate);
+	}
+	
+	/**
+	 * 设置从库，实现读写分离
+	 * @param replicas   从库数据源，为空时取消读写分离
+	 * @param balance   负载策略，为null时为轮询
+	 */
+	public void setReplicas(List<? extends DataSource> replicas, ReplicaDataSource.Balance balance) {
+	    setReplicaDataSource((null == replicas || replicas.isEmpty()) ? null : new ReplicaDataSource(replicas, balance));
+	}
+	
+	/**
+	 * 设置从库数据源，实现读写分离
+	 * <li>事务外的查询在从库执行，如：query、queryForObject、queryPage、queryForStream、get、getAll、关联实体加载</li>
+	 * <li>写入、当前线程存在事务或已绑定主库连接时的查询在主库执行</li>
+	 * <li>当前线程写入后，{@link #setReadYourWritesMillis(long)}时长内的查询在主库执行，以读取到自己的写入；存在事务时从事务结束时开始计时</li>
+	 * <li>其他线程在复制延迟期间可能读取到旧数据，并放入查询缓存、实体缓存；缓存的失效时长应考虑复制延迟</li>
+	 * @param replicaDataSource   为null时所有查询在主库执行；多个从库见{@link ReplicaDataSource}
+	 */
+	public void setReplicaDataSource(DataSource replicaDataSource) {
+	    this.replicaJdbcTemplate = (null == replicaDataSource) ? null : new NamedParameterJdbcTemplate(new QueryTimeoutJdbcTemplate(replicaDataSource, this::currentQueryTimeout));
+	    this.replicaDataSource = replicaDataSource;
+	}
+	
+	/**
+	 * 从库数据源
+	 * @return   未设置时返回null
+	 */
+	public DataSource getReplicaDataSource() {
+	    return replicaDataSource;
+	}
+	
+	/**
+	 * 设置写入后，当前线程的查询在主库执行的时长
+	 * @param readYourWritesMillis   单位毫秒，0表示写入后立即可以从从库查询
+	 */
+	public void setReadYourWritesMillis(long readYourWritesMillis) {
+	    this.readYourWritesMillis = Math.max(readYourWritesMillis, 0L);
+	}
+	
+	/**
+	 * 写入后，当前线程的查询在主库执行的时长，单位毫秒
+	 * @return
+	 */
+	public long getReadYourWritesMillis() {
+	    return readYourWritesMillis;
+	}
+	
+	/**
+	 * 设置默认的查询超时时间，超时后由数据库驱动取消语句，并抛出{@link QueryTimeoutException}
+	 * <li>用于所有语句：查询、分页、COUNT、逐行读取、插入、更新、删除</li>
+	 * <li>sql模板可通过timeout属性设置该模板的超时时间，如：&lt;report timeout="30"&gt;</li>
+	 * <li>按次设置见{@link #withQueryTimeout(int, Supplier)}，优先级：按次设置 &gt; 模板属性 &gt; 默认</li>
+	 * <li>存在事务超时时，以事务的剩余时间为准</li>
+	 * @param queryTimeout   单位秒，0表示不设置
+	 */
+	public void setQueryTimeout(int queryTimeout) {
+	    if(queryTimeout < 0) {
+	        throw new IllegalArgumentException(Strings.format("查询超时时间不能小于0：{}", queryTimeout));
+	    }
+	    this.queryTimeout = queryTimeout;
+	}
+	
+	/**
+	 * 默认的查询超时时间，单位秒，0表示不设置
+	 * @return
+	 */
+	public int getQueryTimeout() {
+	    return queryTimeout;
+	}
+	
+	/**
+	 * 在当前线程中以指定的查询超时时间执行操作，如：
+	 * <pre>
+	 * List&lt;Report&gt; list = jdbcDao.withQueryTimeout(60, () -&gt; jdbcDao.query("$report", Report.class, condition));
+	 * </pre>
+	 * <li>操作中执行的所有语句使用该超时时间，忽略模板的timeout属性；嵌套调用时使用内层的超时时间</li>
+	 * <li>返回的Stream在调用时已执行查询，使用该超时时间</li>
+	 * @param queryTimeout   单位秒，0表示不设置
+	 * @param action
+	 * @return
+	 */
+	public <R> R withQueryTimeout(int queryTimeout, Supplier<R> action) {
+	    if(queryTimeout < 0) {
+	        throw new IllegalArgumentException(Strings.format("查询超时时间不能小于0：{}", queryTimeout));
+	    }
+	    Assert.notNull(action);
+	    final Integer previous = callQueryTimeout.get();
+	    callQueryTimeout.set(queryTimeout);
+	    try {
+	        return action.get();
+	    } finally {
+	        if(null == previous) {
+	            callQueryTimeout.remove();
+	        } else {
+	            callQueryTimeout.set(previous);
+	        }
+	    }
+	}
+	
+	/**
+	 * 当前线程执行语句使用的查询超时时间：按次设置的，未设置时为默认的
+	 * @return
+	 */
+	int currentQueryTimeout() {
+	    final Integer callQueryTimeout = this.callQueryTimeout.get();
+	    return (null == callQueryTimeout) ? queryTimeout : callQueryTimeout;
+	}
+	
+	/**
+	 * 以sql模板timeout属性设置的查询超时时间执行操作
+	 * <li>模板未设置timeout属性，或当前线程已按次设置超时时间时，直接执行</li>
+	 * @param sqlOrId   已解析的sql或模板id
+	 * @param action
+	 * @return
+	 */
+	private <R> R withTemplateQueryTimeout(String sqlOrId, Supplier<R> action) {
+	    final Integer templateQueryTimeout = templateQueryTimeout(sqlOrId);
+	    return (null == templateQueryTimeout) ? action.get() : withQueryTimeout(templateQueryTimeout, action);
+	}
+	
+	/**
+	 * 执行sql模板使用的查询超时时间：按次设置的 &gt; 模板timeout属性 &gt; 默认的
+	 * @param sqlOrId   已解析的sql或模板id
+	 * @return
+	 */
+	private int queryTimeout(String sqlOrId) {
+	    final Integer templateQueryTimeout = templateQueryTimeout(sqlOrId);
+	    return (null == templateQueryTimeout) ? currentQueryTimeout() : templateQueryTimeout;
+	}
+	
+	/**
+	 * 获取sql模板timeout属性设置的查询超时时间
+	 * @param sqlOrId   已解析的sql或模板id
+	 * @return   模板未设置，或当前线程已按次设置超时时间时返回null
+	 */
+	private Integer templateQueryTimeout(String sqlOrId) {
+	    if(null == sqlBuilder || null != callQueryTimeout.get()) {
+	        return null;
+	    }
+	    final String timeout = Strings.trim(sqlBuilder.attributes(sqlOrId).get(QUERY_TIMEOUT_ATTRIBUTE));
+	    if(Strings.isBlank(timeout)) {
+	        return null;
+	    }
+	    int seconds = -1;
+	    try {
+	        seconds = Integer.parseInt(timeout);
+	    } catch (NumberFormatException e) {
+	        // 非整数，按非法值处理
+	    }
+	    if(seconds < 0) {
+	        throw new IllegalArgumentException(Strings.format("sql模板{}的查询超时时间{}不是非负整数！", sqlOrId, timeout));
+	    }
+	    return seconds;
+	}
+	
+	/**
+	 * 执行查询的NamedParameterJdbcTemplate
+	 * <li>设置了从库，当前线程不存在事务、未绑定主库连接，且不在写入后的主库读取时长内时，返回从库的</li>
+	 * @return
+	 */
+	NamedParameterJdbcTemplate readJdbcTemplate() {
+	    final NamedParameterJdbcTemplate replicaJdbcTemplate = this.replicaJdbcTemplate;
+	    return (null != replicaJdbcTemplate && isReplicaReadable()) ? replicaJdbcTemplate : jdbcTemplate;
+	}
+	
+	/**
+	 * 执行查询的JdbcOperations，见{@link #readJdbcTemplate()}
+	 * @return
+	 */
+	JdbcOperations readClassicJdbcTemplate() {
+	    return readJdbcTemplate().getJdbcOperations();
+	}
+	
+	/**
+	 * 执行查询的数据源，见{@link #readJdbcTemplate()}
+	 * @return
+	 */
+	DataSource readDataSource() {
+	    final DataSource replicaDataSource = this.replicaDataSource;
+	    return (null != replicaDataSource && isReplicaReadable()) ? replicaDataSource : dataSource;
+	}
+	
+	/**
+	 * 当前线程的查询是否可以不在主库执行：不存在事务、未绑定主库连接，且不在写入后的主库读取时长内
+	 * <li>同样用于判断能否合并相同的并发查询</li>
+	 * @return
+	 */
+	private boolean isReplicaReadable() {
+	    if(TransactionSynchronizationManager.isActualTransactionActive() || TransactionSynchronizationManager.hasResource(dataSource)) {
+	        return false;
+	    }
+	    final Long lastWrite = lastWriteNanos.get();
+	    if(null == lastWrite) {
+	        return true;
+	    }
+	    if(System.nanoTime() - lastWrite < readYourWritesMillis * 1000000L) {
+	        return false;
+	    }
+	    lastWriteNanos.remove();
+	    return true;
+	}
+	
+	/**
+	 * 写入后调用：开始当前线程写入后的主库读取时长；存在事务时，事务结束后重新开始
+	 */
+	private void markWritten() {
+	    if(null == replicaDataSource || 0L == readYourWritesMillis) {
+	        return ;
+	    }
+	    lastWriteNanos.set(System.nanoTime());
+	    if(TransactionSynchronizationManager.isSynchronizationActive()) {
+	        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+	            @Override
+	            public void afterCompletion(int status) {
+	                lastWriteNanos.set(System.nanoTime());
+	            }
+	        });
+	    }
 	}
 	
 	public void setSqlBuilder(SqlBuilder sqlBuilder) {
         this.sqlBuilder = sqlBuilder;
     }
-    /**
-	 * 获取当前连接的数据源
-	 * @return
+	
+	/**
+	 * 设置批量保存是否使用多行VALUES插入
+	 * <li>开启后，写入列相同的实体合并为一条：INSERT ... VALUES (...),(...),...</li>
+	 * <li>默认不开启，每个实体对应JDBC批处理中的一条记录</li>
+	 * @param multiValuesInsert
 	 */
-	public DataSource getDataSource() {
-		return dataSource;
+	public void setMultiValuesInsert(boolean multiValuesInsert) {
+	    this.multiValuesInsert = multiValuesInsert;
 	}
+	
 	/**
-	 * 获取jdbcTemplate
-	 * <li>该属性对象是：Spring NamedParameterJdbcTemplate</li>
-	 * @return
+	 * 设置多行VALUES插入时，每条INSERT语句的最大行数
+	 * @param multiValuesRows
 	 */
-	public NamedParameterJdbcTemplate getJdbcTemplate() {
-		return jdbcTemplate;
+	public void setMultiValuesRows(int multiValuesRows) {
+	    this.multiValuesRows = (multiValuesRows <= 0) ? DEFAULT_MULTI_VALUES_ROWS : multiValuesRows;
 	}
+	
 	/**
-	 * 获取Spring JdbcTemplate
-	 * <li>该属性对象是：Spring JdbcTemplate</li>
+	 * 设置多行VALUES插入时，每条INSERT语句估算的最大字节数
+	 * <li>应小于数据库允许的最大包，如MySQL的max_allowed_packet</li>
+	 * @param maxPacketSize
+	 */
+	public void setMaxPacketSize(int maxPacketSize) {
+	    this.maxPacketSize = (maxPacketSize <= 0) ? DEFAULT_MAX_PACKET_SIZE : maxPacketSize;
+	}
+	
+	/**
+	 * 设置IN (...)查询条件中，每条sql的最大参数个数
+	 * <li>按主键批量删除、批量获取时，超出的部分分多条sql执行</li>
+	 * @param inClauseSize
+	 */
+	public void setInClauseSize(int inClauseSize) {
+	    this.inClauseSize = (inClauseSize <= 0) ? DEFAULT_IN_CLAUSE_SIZE : inClauseSize;
+	}
+	
+	/**
+	 * 设置每条sql允许的最大占位符个数
+	 * <li>IN (...)的参数个数、多行VALUES插入每条语句的行数 × 列数不会超过该值</li>
+	 * @param maxPlaceholders
+	 */
+	public void setMaxPlaceholders(int maxPlaceholders) {
+	    this.maxPlaceholders = (maxPlaceholders <= 0) ? DEFAULT_MAX_PLACEHOLDERS : maxPlaceholders;
+	}
+	
+	/**
+	 * 设置数据库方言
+	 * <li>不设置，则首次使用时通过数据源的元数据获取</li>
+	 * @param dialect
+	 */
+	public void setDialect(Dialect dialect) {
+	    this.dialect = dialect;
+	}
+	
+	/**
+	 * 获取数据库方言
 	 * @return
 	 */
-	public JdbcOperations getClassicJdbcTemplate() {
-		return classicJdbcTemplate;
+	public Dialect getDialect() {
+	    Dialect currentDialect = this.dialect;
+	    if(null == currentDialect) {
+	        currentDialect = Dialect.of(dataSource);
+	        this.dialect = currentDialect;
+	    }
+	    return currentDialect;
 	}
 	
 	/**
-	 * 获取SpringJdbcInsert
-	 * @param tableName
-	 * @param idColumnNames
+	 * 设置逐行读取结果(queryForStream、forEachRow)时，每次从数据库读取的行数
+	 * <li>MySQL逐行流式读取设置为{@link #STREAMING_FETCH_SIZE}</li>
+	 * <li>不设置或设置为0时，MySQL为{@link #STREAMING_FETCH_SIZE}，其他数据库为{@link #DEFAULT_STREAM_FETCH_SIZE}</li>
+	 * @param streamFetchSize
+	 */
+	public void setStreamFetchSize(int streamFetchSize) {
+	    this.streamFetchSize = streamFetchSize;
+	}
+	
+	/**
+	 * 获取逐行读取结果时，每次从数据库读取的行数
 	 * @return
 	 */
-	private SimpleJdbcInsert getInsert(String tableName, String... idColumnNames) {
-	    SimpleJdbcInsert jdbcInsert = new SimpleJdbcInsert(dataSource).withTableName(tableName);
-	    // 存在id列表
-		if(null != idColumnNames && idColumnNames.length > 0) {
-			jdbcInsert.usingGeneratedKeyColumns(idColumnNames);
-		}
-		return jdbcInsert;
+	public int getStreamFetchSize() {
+	    if(0 != streamFetchSize) {
+	        return streamFetchSize;
+	    }
+	    return (Dialect.MYSQL == getDialect()) ? STREAMING_FETCH_SIZE : DEFAULT_STREAM_FETCH_SIZE;
 	}
 	
 	/**
-	 * 通过SQL语句或SQL模板id和条件，返回对应的SQL语句
-	 * @param sqlOrId   为空，则默认为三个前缀符。如：$$$
-	 * @param condition
+	 * 设置非流式分页默认的总记录数策略
+	 * <li>默认为{@link CountStrategies#DERIVED}</li>
+	 * @param countStrategy
+	 */
+	public void setCountStrategy(CountStrategy countStrategy) {
+	    this.countStrategy = (null == countStrategy) ? CountStrategies.DERIVED : countStrategy;
+	}
+	
+	/**
+	 * 获取非流式分页默认的总记录数策略
 	 * @return
 	 */
-	protected String generateSql(String sqlOrId, Condition condition) {
-	    return sqlBuilder.sql(sqlOrId, condition);
+	public CountStrategy getCountStrategy() {
+	    return countStrategy;
 	}
 	
 	/**
-	 * 保存目标对象
-	 * 
-	 * @param target
-	 * @throws Exception 
-	 * @throws IllegalArgumentException 
+	 * 开启并发COUNT：分页查询时，在另一个连接上与当前页数据同时执行COUNT
+	 * <li>适用于{@link CountStrategies#DERIVED}、{@link CountStrategies#EXPLAIN}</li>
+	 * <li>COUNT在executor中获取连接，acquireTimeoutMillis内未获取到(连接池或线程池繁忙)时，在当前线程中顺序执行</li>
+	 * <li>当前线程存在事务时顺序执行</li>
+	 * <li>每次分页查询同时占用两个连接，连接池应留有余量；executor由调用方负责关闭</li>
+	 * @param executor   为null时关闭并发COUNT
+	 * @param acquireTimeoutMillis   等待获取另一个连接的时间，小于等于0时为{@link #DEFAULT_COUNT_ACQUIRE_TIMEOUT}
 	 */
-	public <T> Serializable save(JpaEntity jpaEntity, T target) {
-		//是否包含主键
-		if(!jpaEntity.existId()) {
-			saveNotReturnKey(jpaEntity, target);
-			return null;
-		}
-		return saveReturnKey(jpaEntity, target);
+	public void setConcurrentCount(ExecutorService executor, long acquireTimeoutMillis) {
+	    this.concurrentCounter = (null == executor) ? null
+	            : new ConcurrentCounter(this, executor, (acquireTimeoutMillis <= 0) ? DEFAULT_COUNT_ACQUIRE_TIMEOUT : acquireTimeoutMillis);
 	}
 	
 	/**
-	 * 保存实体对象并返回主键值
-	 * <li>该方法用于含有主键的情况，如果对应类无主键，会抛出异常</li>
-	 * @param jpaEntity
-	 * @param target
+	 * 开启并发COUNT，等待获取另一个连接的时间为{@link #DEFAULT_COUNT_ACQUIRE_TIMEOUT}
+	 * @param executor   为null时关闭并发COUNT
+	 */
+	public void setConcurrentCount(ExecutorService executor) {
+	    setConcurrentCount(executor, DEFAULT_COUNT_ACQUIRE_TIMEOUT);
+	}
+	
+	/**
+	 * 开启总记录数缓存：以LRU淘汰，超过失效时长后重新COUNT
+	 * <li>key为规范化的sql与绑定的参数值；通过JdbcDao写入(保存、更新、删除)相关表后缓存失效</li>
+	 * <li>使用缓存的总记录数时，{@link Page#isTotalCountStale()}为true</li>
+	 * <li>当前线程存在事务时不使用缓存</li>
+	 * @param maxSize   最大缓存数量，小于等于0时关闭缓存
+	 * @param timeoutMillis   失效时长，单位毫秒，0表示只在写入时失效
+	 */
+	public void setCountCache(int maxSize, long timeoutMillis) {
+	    setCountCache((maxSize <= 0) ? null : QueryCache.lru(maxSize, timeoutMillis));
+	}
+	
+	/**
+	 * 设置总记录数缓存
+	 * @param countCache   为null时关闭缓存
+	 */
+	public void setCountCache(QueryCache countCache) {
+	    this.countCache = countCache;
+	}
+	
+	/**
+	 * 获取总记录数缓存，可用于查看命中率
+	 * @return   未开启时返回null
+	 */
+	public QueryCache getCountCache() {
+	    return countCache;
+	}
+	
+	/**
+	 * 开启查询结果缓存：以LRU淘汰，超过失效时长后重新查询
+	 * <li>通过{@link #queryCached(String, Class, Condition)}、{@link #queryForObjectCached(String, Class, Condition)}等方法按次使用，
+	 * 或在sql模板中设置属性cache="true"，该模板的query、queryForObject都使用缓存</li>
+	 * <li>key为生成的sql、绑定的参数值与结果类型；按RowMapper查询时为RowMapper实例，只有使用相同实例的查询共用缓存；通过JdbcDao写入相关表后缓存失效</li>
+	 * <li>缓存中保存结果的副本，每次命中返回新的列表，其中的实体也是副本({@link JpaEntity#copy(Object)})，调用方修改列表和实体不影响缓存和其他调用方</li>
+	 * <li>实体以外的对象(如Map)由所有调用方共享，不应修改</li>
+	 * <li>当前线程存在事务时不使用缓存</li>
+	 * @param maxSize   最大缓存数量，小于等于0时关闭缓存
+	 * @param timeoutMillis   失效时长，单位毫秒，0表示只在写入时失效
+	 */
+	public void setResultCache(int maxSize, long timeoutMillis) {
+	    setResultCache((maxSize <= 0) ? null : QueryCache.lru(maxSize, timeoutMillis));
+	}
+	
+	/**
+	 * 设置查询结果缓存，可使用其他{@link com.jyoryo.entityjdbc.common.cache.Cache}实现，如：new QueryCache(new LFUCache&lt;&gt;(1000, 60000))
+	 * @param resultCache   为null时关闭缓存
+	 */
+	public void setResultCache(QueryCache resultCache) {
+	    this.resultCache = resultCache;
+	}
+	
+	/**
+	 * 获取查询结果缓存，可用于查看命中数、丢失数
+	 * @return   未开启时返回null
+	 */
+	public QueryCache getResultCache() {
+	    return resultCache;
+	}
+	
+	/**
+	 * 开启合并相同的并发查询：多个线程同时执行相同的query、queryForObject时，只执行一次，结果交给所有调用方
+	 * <li>key为生成的sql、绑定的参数值与结果类型；按RowMapper查询时只合并使用相同RowMapper实例的查询</li>
+	 * <li>等待超过waitMillis时，由调用方自己执行查询；合并数、执行数等见{@link #getSingleFlight()}</li>
+	 * <li>执行查询的调用方得到查询结果本身；等待的调用方得到新的列表，其中的实体是执行结果的副本({@link JpaEntity#copy(Object)})，可各自修改</li>
+	 * <li>实体以外的对象(如Map)由所有调用方共享，不应修改</li>
+	 * <li>加入时查询可能已开始执行；当前线程存在事务、已绑定主库连接，或在写入后的主库读取时长内时不合并</li>
+	 * <li>开启结果缓存时，合并未命中缓存的查询</li>
+	 * @param waitMillis   等待相同查询结果的最长时间，单位毫秒，小于等于0时关闭
+	 */
+	public void setSingleFlight(long waitMillis) {
+	    setSingleFlight((waitMillis <= 0) ? null : new SingleFlight(waitMillis));
+	}
+	
+	/**
+	 * 设置合并相同的并发查询，见{@link #setSingleFlight(long)}
+	 * @param singleFlight   为null时关闭
+	 */
+	public void setSingleFlight(SingleFlight singleFlight) {
+	    this.singleFlight = singleFlight;
+	}
+	
+	/**
+	 * 获取合并相同的并发查询，可用于查看合并数
+	 * @return   未开启时返回null
+	 */
+	public SingleFlight getSingleFlight() {
+	    return singleFlight;
+	}
+	
+	/**
+	 * 使涉及这些表的缓存失效
+	 * <li>通过JdbcDao的写入会自动调用；不经过JdbcDao写入表后，可手动调用</li>
+	 * @param tableNames
+	 */
+	public void invalidateCache(String... tableNames) {
+	    if(!Arrays.isEmpty(tableNames)) {
+	        invalidateCache(java.util.Arrays.asList(tableNames));
+	    }
+	}
+	
+	/**
+	 * 写入表后，使涉及这些表的缓存失效
+	 * <li>当前线程存在事务时，事务结束(提交或回滚)后再次失效，避免其他线程在提交前缓存了旧数据</li>
+	 * <li>同时开始当前线程写入后的主库读取时长，见{@link #setReadYourWritesMillis(long)}</li>
+	 * @param tableNames
+	 */
+	private void invalidateCache(final Collection<String> tableNames) {
+	    markWritten();
+	    final QueryCache countCache = this.countCache, resultCache = this.resultCache;
+	    if((null == countCache && null == resultCache) || tableNames.isEmpty()) {
+	        return ;
+	    }
+	    invalidateCache(countCache, resultCache, tableNames);
+	    if(TransactionSynchronizationManager.isSynchronizationActive()) {
+	        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+	            @Override
+	            public void afterCompletion(int status) {
+	                invalidateCache(countCache, resultCache, tableNames);
+	            }
+	        });
+	    }
+	}
+	
+	private static void invalidateCache(QueryCache countCache, QueryCache resultCache, Collection<String> tableNames) {
+	    if(null != countCache) {
+	        countCache.invalidate(tableNames);
+	    }
+	    if(null != resultCache) {
+	        resultCache.invalidate(tableNames);
+	    }
+	}
+	
+	/**
+	 * 执行写入的sql后，使sql涉及的表的缓存失效
+	 * @param sql
+	 */
+	private void invalidateCacheBySql(String sql) {
+	    if(null != countCache || null != resultCache) {
+	        invalidateCache(Jdbcs.tableNames(sql));
+	    } else {
+	        markWritten();
+	    }
+	}
+	
+	/**
+	 * 获取sql使用的结果缓存
+	 * @param sqlOrId   已解析的sql或模板id
+	 * @param cached   是否按次使用缓存
+	 * @return   不使用缓存时返回null
+	 */
+	private QueryCache resultCache(String sqlOrId, boolean cached) {
+	    final QueryCache resultCache = this.resultCache;
+	    if(null == resultCache || TransactionSynchronizationManager.isActualTransactionActive()) {
+	        return null;
+	    }
+	    if(cached || (null != sqlBuilder && Boolean.parseBoolean(Strings.trim(sqlBuilder.attributes(sqlOrId).get(RESULT_CACHE_ATTRIBUTE))))) {
+	        return resultCache;
+	    }
+	    return null;
+	}
+	
+	/**
+	 * 注册自定义总记录数策略，sql模板可通过countStrategy属性按名称使用
+	 * <li>名称忽略大小写，与内置策略同名时优先使用注册的策略</li>
+	 * @param name
+	 * @param countStrategy
+	 */
+	public void registerCountStrategy(String name, CountStrategy countStrategy) {
+	    Assert.notNull(name);
+	    Assert.notNull(countStrategy);
+	    countStrategies.put(name.toLowerCase(), countStrategy);
+	}
+	
+	/**
+	 * 获取sql对应的总记录数策略：模板的countStrategy属性，未设置时为默认策略
+	 * @param sqlOrId
+	 * @return
+	 */
+	private CountStrategy countStrategy(String sqlOrId) {
+	    if(null == sqlBuilder) {
+	        return countStrategy;
+	    }
+	    String name = sqlBuilder.attributes(sqlOrId).get(COUNT_STRATEGY_ATTRIBUTE);
+	    if(Strings.isBlank(name)) {
+	        return countStrategy;
+	    }
+	    CountStrategy strategy = countStrategies.get(name.trim().toLowerCase());
+	    if(null == strategy) {
+	        strategy = CountStrategies.of(name);
+	    }
+	    if(null == strategy) {
+	        throw new IllegalArgumentException(Strings.format("sql模板{}的总记录数策略{}不存在！", sqlOrId, name));
+	    }
+	    return strategy;
+	}
+	
+	/**
+	 * 设置是否开启脏数据跟踪
+	 * <li>开启后，查询实现{@link Snapshotable}的实体时记录加载时的列值</li>
+	 * <li>未指定更新列时，只更新与快照相比发生变化的列；没有变化则不执行UPDATE</li>
+	 * <li>默认不开启，更新所有非null的列</li>
+	 * @param dirtyTracking
+	 */
+	public void setDirtyTracking(boolean dirtyTracking) {
+	    this.dirtyTracking = dirtyTracking;
+	}
+	
+	/**
+	 * 是否开启脏数据跟踪
+	 * @return
+	 */
+	public boolean isDirtyTracking() {
+	    return dirtyTracking;
+	}
+	
+	/**
+	 * 设置是否延迟加载<code>@JoinColumn</code>字段
+	 * <li>开启后，查询实体时关联字段为关联实体类的代理，只设置了主键；首次调用主键getter以外的方法时，通过当前JdbcDao加载关联实体</li>
+	 * <li>加载时先从关联实体类已注册的缓存中获取，见{@link #registerEntityCache(Class, EntityCache)}</li>
+	 * <li>直接访问代理的字段只能读取到主键，需要时通过{@link #unproxy(Object)}获取加载后的实体</li>
+	 * <li>默认不开启，关联字段为只有主键的对象</li>
+	 * @param lazyAssociations
+	 */
+	public void setLazyAssociations(boolean lazyAssociations) {
+	    this.lazyAssociations = lazyAssociations ? new LazyAssociations(this) : null;
+	}
+	
+	/**
+	 * 是否延迟加载<code>@JoinColumn</code>字段
+	 * @return
+	 */
+	public boolean isLazyAssociations() {
+	    return null != lazyAssociations;
+	}
+	
+	/**
+	 * 是否为延迟加载的关联实体代理
+	 * @param target
+	 * @return
+	 */
+	public static boolean isProxy(Object target) {
+	    return LazyAssociations.isProxy(target);
+	}
+	
+	/**
+	 * 获取延迟加载代理对应的实体，未加载时立即加载
+	 * @param target
+	 * @return   不是代理时返回target本身
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T unproxy(T target) {
+	    return (T)LazyAssociations.unproxy(target);
+	}
+	
+	/**
+	 * 将延迟加载代理替换为加载后的实体
+	 * <li>代理只有主键字段有值，写入时须读取加载后实体的字段</li>
+	 * @param targets
+	 * @return   不包含代理且为List时返回targets本身
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> List<T> unproxyAll(Collection<T> targets) {
+	    boolean proxied = false;
+	    for(T target : targets) {
+	        if(LazyAssociations.isProxy(target)) {
+	            proxied = true;
+	            break;
+	        }
+	    }
+	    if(!proxied) {
+	        return (targets instanceof List) ? (List<T>)targets : new ArrayList<>(targets);
+	    }
+	    List<T> unproxied = new ArrayList<>(targets.size());
+	    for(T target : targets) {
+	        unproxied.add(unproxy(target));
+	    }
+	    return unproxied;
+	}
+	
+	/**
+	 * 根据结果类型获取RowMapper
+	 * <li>开启脏数据跟踪时，实体记录加载时的数据快照</li>
+	 * <li>开启延迟加载时，实体的<code>@JoinColumn</code>字段为延迟加载代理</li>
+	 * @param targetClass
+	 * @return
+	 */
+	public <T> RowMapper<T> getRowMapper(Class<T> targetClass) {
+	    final LazyAssociations lazyAssociations = this.lazyAssociations;
+	    if((dirtyTracking || null != lazyAssociations) && JpaUtils.isEntity(targetClass)) {
+	        return new JpaEntityRowMapper<T>(targetClass, dirtyTracking, lazyAssociations);
+	    }
+	    return Jdbcs.getRowMapperByClass(targetClass);
+	}
+	
+	/**
+	 * 获取实体类对应的JpaEntity，已解析的实体类从缓存中获取
+	 * @param entityClass
+	 * @return
+	 */
+	JpaEntity jpaEntity(Class<?> entityClass) {
+	    return jpaEntities.computeIfAbsent(entityClass, JpaEntity::new);
+	}
+	
+	/**
+	 * 注册实体类的按主键缓存，加载关联实体时先从缓存中获取
+	 * <li>{@link JdbcEntityDao#setEntityCache(EntityCache)}会自动注册</li>
+	 * @param entityClass
+	 * @param entityCache   为null时取消注册
+	 */
+	public <T> void registerEntityCache(Class<T> entityClass, EntityCache<T> entityCache) {
+	    Assert.notNull(entityClass);
+	    if(null == entityCache) {
+	        entityCaches.remove(entityClass);
+	    } else {
+	        entityCaches.put(entityClass, entityCache);
+	    }
+	}
+	
+	/**
+	 * 获取实体类已注册的按主键缓存
+	 * @param entityClass
+	 * @return   未注册时返回null
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> EntityCache<T> getEntityCache(Class<T> entityClass) {
+	    return (EntityCache<T>)entityCaches.get(entityClass);
+	}
+	
+	/**
+	 * 按主键批量加载实体
+	 * <li>开启实体缓存时先从缓存中获取，其余主键按{@link #setInClauseSize(int)}分批查询：SELECT ... WHERE id IN (...)</li>
+	 * <li>当前线程不存在事务时，查询到的实体放入缓存</li>
+	 * @param jpaEntity
+	 * @param targetClass
+	 * @param ids   主键，null和重复的主键忽略；数字类型的主键按@Id属性的类型转换({@link JpaEntity#convertId(Object)})
+	 * @param entityCache   可以为null
+	 * @return   key为{@link EntityCache}中比较用的主键值，不存在的主键不包含在内
+	 */
+	<T> Map<Object, T> loadByIds(JpaEntity jpaEntity, Class<T> targetClass, Collection<?> ids, EntityCache<T> entityCache) {
+	    Map<Object, T> loaded = new LinkedHashMap<>();
+	    Map<Object, Object> missingIds = new LinkedHashMap<>();
+	    for(Object id : ids) {
+	        if(null == id) {
+	            continue ;
+	        }
+	        id = jpaEntity.convertId(id);
+	        final Object key = EntityCache.key(id);
+	        if(loaded.containsKey(key) || missingIds.containsKey(key)) {
+	            continue ;
+	        }
+	        T target = (null == entityCache) ? null : entityCache.get(id);
+	        if(null == target) {
+	            missingIds.put(key, id);
+	        } else {
+	            loaded.put(key, jpaEntity.copy(target));
+	        }
+	    }
+	    if(missingIds.isEmpty()) {
+	        return loaded;
+	    }
+	    final long stamp = (null == entityCache) ? 0L : entityCache.stamp();
+	    final boolean cacheable = null != entityCache && !TransactionSynchronizationManager.isActualTransactionActive();
+	    final String sqlPrefix = jpaEntity.getEntitySql().getSelectByIdsPrefix();
+	    final List<Object> idList = new ArrayList<>(missingIds.values());
+	    final int size = idList.size(), chunkSize = inClauseChunkSize();
+	    for(int i = 0; i < size; i += chunkSize) {
+	        List<Object> chunk = idList.subList(i, Math.min(i + chunkSize, size));
+	        for(T target : readClassicJdbcTemplate().query(sqlPrefix + Jdbcs.inPlaceholders(chunk.size()), getRowMapper(targetClass), chunk.toArray())) {
+	            Object id = jpaEntity.getIdValue(target);
+	            loaded.put(EntityCache.key(id), target);
+	            if(cacheable) {
+	                entityCache.put(id, jpaEntity.copy(target), stamp);
+	            }
+	        }
+	    }
+	    return loaded;
+	}
+	
+	/**
+	 * 按加载计划批量加载实体的<code>@JoinColumn</code>关联字段
+	 * <li>每个关联类型只执行一次IN查询(按{@link #setInClauseSize(int)}分批)，避免逐个加载的N+1查询</li>
+	 * <li>关联实体类已注册按主键缓存时，先从缓存中获取，见{@link #registerEntityCache(Class, EntityCache)}</li>
+	 * @param targets   同一类型的实体
+	 * @param fetchPlan
+	 * @return   传入的targets
+	 */
+	public <T, C extends Collection<T>> C fetch(C targets, FetchPlan fetchPlan) {
+	    AssociationLoader.fetch(this, targets, fetchPlan);
+	    return targets;
+	}
+	
+	/**
+	 * IN (...)每条sql实际使用的最大参数个数
+	 * @return
+	 */
+	int inClauseChunkSize() {
+	    return Math.min(inClauseSize, maxPlaceholders);
+	}
+    /**
+	 * 获取当前连接的数据源
+	 * @return
+	 */
+	public DataSource getDataSource() {
+		return dataSource;
+	}
+	/**
+	 * 获取jdbcTemplate
+	 * <li>该属性对象是：Spring NamedParameterJdbcTemplate</li>
+	 * @return
+	 */
+	public NamedParameterJdbcTemplate getJdbcTemplate() {
+		return jdbcTemplate;
+	}
+	/**
+	 * 获取Spring JdbcTemplate
+	 * <li>该属性对象是：Spring JdbcTemplate</li>
+	 * @return
+	 */
+	public JdbcOperations getClassicJdbcTemplate() {
+		return classicJdbcTemplate;
+	}
+	
+	/**
+	 * 获取已编译INSERT语句的缓存
+	 * <li>可用于查看命中数、丢失数；表结构变动后可调用{@link JdbcInsertCache#clear()}清空</li>
+	 * @return
+	 */
+	public JdbcInsertCache getInsertCache() {
+	    return insertCache;
+	}
+	
+	/**
+	 * 获取SpringJdbcInsert
+	 * <li>写入表的所有列(自增主键列除外)，参数中不存在或值为null的列写入NULL</li>
+	 * <li>按表名从缓存中获取，避免每次保存都读取表的元数据并重新编译</li>
+	 * @param tableName
+	 * @param idColumnNames
+	 * @return
+	 */
+	private SimpleJdbcInsert getInsert(String tableName, String... idColumnNames) {
+	    return insertCache.get(tableName, null, idColumnNames);
+	}
+	
+	/**
+	 * 通过SQL语句或SQL模板id和条件，返回对应的SQL语句
+	 * @param sqlOrId   为空，则默认为三个前缀符。如：$$$
+	 * @param condition
+	 * @return
+	 */
+	protected String generateSql(String sqlOrId, Condition condition) {
+	    return sqlBuilder.sql(sqlOrId, condition);
+	}
+	
+	/**
+	 * 在当前线程中解析依赖调用位置的模板id，见{@link SqlBuilder#resolveSqlId(String)}
+	 * @param sqlOrId
+	 * @return
+	 */
+	public String resolveSqlId(String sqlOrId) {
+	    return (null == sqlBuilder) ? sqlOrId : sqlBuilder.resolveSqlId(sqlOrId);
+	}
+	
+	/**
+	 * 保存目标对象
+	 * <li>值为null的属性写入NULL，不使用列的默认值</li>
+	 * 
+	 * @param target
+	 * @throws Exception 
+	 * @throws IllegalArgumentException 
+	 */
+	public <T> Serializable save(JpaEntity jpaEntity, T target) {
+		//是否包含主键
+		if(!jpaEntity.existId()) {
+			saveNotReturnKey(jpaEntity, target);
+			return null;
+		}
+		return saveReturnKey(jpaEntity, target);
+	}
+	
+	/**
+	 * 保存实体对象并返回主键值
+	 * <li>该方法用于含有主键的情况，如果对应类无主键，会抛出异常</li>
+	 * @param jpaEntity
+	 * @param target
+	 * @return
+	 */
+	public <T> Serializable saveReturnKey(JpaEntity jpaEntity, T target) {
+		target = unproxy(target);
+		ColumnMetaData idColumn = jpaEntity.getIdColumn();
+		if(!jpaEntity.existId()) {
+			throw new UnsupportedOperationException(Strings.format("类{}未设置主键，不支持该操作！", target.getClass()));
+		}
+		final String tableName = jpaEntity.getTableName();
+		//获取对象数据库字段及对应值，主键由数据库生成，不写入
+		Map<String, Object> parameters = jpaEntity.columnDataMapper(target, true);
+		
+		Number key = getInsert(tableName, idColumn.getColumnName()).executeAndReturnKey(parameters);
+		invalidateCache(tableName);
+		//根据id类型进行转换
+		return jpaEntity.writeGeneratedId(target, key);
+	}
+	
+	/**
+	 * 保存实体对象但不返回主键值，该方法用于不含有主键的情况
+	 * @param target
+	 * @return   返回影响数据的行数
+	 */
+	public <T> int saveNotReturnKey(JpaEntity jpaEntity, T target) {
+		target = unproxy(target);
+		final String tableName = jpaEntity.getTableName();
+		//获取对象数据库字段及对应值
+		Map<String, Object> parameters = jpaEntity.columnDataMapper(target, false);
+		int rows = getInsert(tableName).execute(parameters);
+		invalidateCache(tableName);
+		return rows;
+	}
+	
+	/**
+	 * 批量保存实体对象
+	 * <li>开启多行VALUES插入时，见{@link #setMultiValuesInsert(boolean)}</li>
+	 * <li>写入实体的所有列，值为null的属性写入NULL，不使用列的默认值</li>
+	 * <li>实体含有主键且主键值为空时，批量获取数据库生成的主键并写回实体</li>
+	 * @param jpaEntity
+	 * @param targets
+	 * @return
+	 */
+	public <T> int [] batchSave(JpaEntity jpaEntity, T[] targets) {
+	    if(Arrays.isEmpty(targets)) {
+	        return new int[0];
+	    }
+	    return batchSave(jpaEntity, java.util.Arrays.asList(targets));
+	}
+	
+	/**
+	 * 批量保存实体对象，可以设置每次处理的数量
+	 * @param jpaEntity
+	 * @param targets
+	 * @param buffer
+	 * @return
+	 */
+	public <T> int [] batchSave(JpaEntity jpaEntity, T[] targets, int buffer) {
+	    if(Arrays.isEmpty(targets)) {
+	        return new int[0];
+	    }
+	    final int length = targets.length;
+	    if(0 >= buffer || buffer >= length) {
+	        return batchSave(jpaEntity, targets);
+	    }
+	    final List<T> targetList = java.util.Arrays.asList(targets);
+	    int[] retValues = new int[length];
+	    for(int i = 0; i < length; i += buffer) {
+	        int[] batchValues = batchSave(jpaEntity, targetList.subList(i, Math.min(i + buffer, length)));
+	        System.arraycopy(batchValues, 0, retValues, i, batchValues.length);
+	    }
+	    return retValues;
+	}
+	
+	/**
+	 * 流式批量保存实体对象，按chunkSize逐批从迭代器中读取实体并保存
+	 * <li>只保留当前批次的实体，返回汇总结果而不是每条记录的结果，内存占用与数据总量无关</li>
+	 * @param jpaEntity
+	 * @param targets
+	 * @param chunkSize   每批次保存的数量，小于等于0时为{@link #DEFAULT_BATCH_CHUNK_SIZE}
+	 * @return
+	 */
+	public <T> BatchResult batchSave(JpaEntity jpaEntity, Iterator<T> targets, int chunkSize) {
+	    BatchResult result = new BatchResult();
+	    if(null == targets) {
+	        return result;
+	    }
+	    chunkSize = (0 >= chunkSize) ? DEFAULT_BATCH_CHUNK_SIZE : chunkSize;
+	    // 复用批次缓冲
+	    final List<T> chunk = new ArrayList<>(chunkSize);
+	    while(targets.hasNext()) {
+	        chunk.add(targets.next());
+	        if(chunk.size() >= chunkSize) {
+	            result.addBatch(batchSave(jpaEntity, chunk));
+	            chunk.clear();
+	        }
+	    }
+	    if(!chunk.isEmpty()) {
+	        result.addBatch(batchSave(jpaEntity, chunk));
+	    }
+	    return result;
+	}
+	
+	/**
+	 * 流式批量保存实体对象，按chunkSize逐批保存
+	 * @param jpaEntity
+	 * @param targets
+	 * @param chunkSize   每批次保存的数量
+	 * @return
+	 */
+	public <T> BatchResult batchSave(JpaEntity jpaEntity, Iterable<T> targets, int chunkSize) {
+	    return batchSave(jpaEntity, (null == targets) ? null : targets.iterator(), chunkSize);
+	}
+	
+	/**
+	 * 流式批量保存实体对象，按chunkSize逐批保存
+	 * <li>不会关闭传入的Stream</li>
+	 * @param jpaEntity
+	 * @param targets
+	 * @param chunkSize   每批次保存的数量
+	 * @return
+	 */
+	public <T> BatchResult batchSave(JpaEntity jpaEntity, Stream<T> targets, int chunkSize) {
+	    return batchSave(jpaEntity, (null == targets) ? null : targets.iterator(), chunkSize);
+	}
+	
+	/**
+	 * 保存一批实体对象
+	 * @param jpaEntity
+	 * @param targets
+	 * @return   与targets顺序对应的影响行数
+	 */
+	<T> int [] batchSave(JpaEntity jpaEntity, List<T> targets) {
+	    targets = unproxyAll(targets);
+	    int[] retValues;
+	    if(multiValuesInsert) {
+	        retValues = EntityBatchInserter.multiValuesInsert(classicJdbcTemplate, jpaEntity, targets, multiValuesRows, maxPacketSize, maxPlaceholders);
+	    } else {
+	        retValues = EntityBatchInserter.batchInsert(classicJdbcTemplate, jpaEntity, targets);
+	    }
+	    invalidateCache(jpaEntity.getTableName());
+	    return retValues;
+	}
+	
+	/**
+	 * 当前数据库是否支持单条语句的插入或更新
+	 * @return
+	 */
+	public boolean supportsUpsert() {
+	    return getDialect().supportsUpsert();
+	}
+	
+	/**
+	 * 以单条语句插入或更新实体
+	 * <li>主键值为空时执行插入，值为null的属性写入NULL，并写回数据库生成的主键</li>
+	 * <li>主键值不为空时，MySQL执行INSERT ... ON DUPLICATE KEY UPDATE，H2执行MERGE，只写入非null的列</li>
+	 * <li>其他数据库不支持，抛出UnsupportedOperationException，可通过{@link #supportsUpsert()}判断</li>
+	 * @param jpaEntity
+	 * @param target
+	 * @return   影响的行数，MySQL更新已存在的记录时返回2
+	 */
+	public <T> int upsert(JpaEntity jpaEntity, T target) {
+	    return batchUpsert(jpaEntity, Collections.singletonList(target))[0];
+	}
+	
+	/**
+	 * 批量插入或更新实体
+	 * <li>按写入的列集合分组，以JDBC批处理执行，规则同{@link #upsert(JpaEntity, Object)}</li>
+	 * @param jpaEntity
+	 * @param targets
+	 * @return   与targets迭代顺序对应的影响行数
+	 */
+	public <T> int[] batchUpsert(JpaEntity jpaEntity, Collection<T> targets) {
+	    if(CollectionUtil.isEmpty(targets)) {
+	        return new int[0];
+	    }
+	    if(!jpaEntity.existId()) {
+	        throw new UnsupportedOperationException(Strings.format("{}不存在主键，无法执行该操作！", jpaEntity.getTableName()));
+	    }
+	    List<T> targetList = unproxyAll(targets);
+	    int[] retValues = EntityBatchInserter.batchUpsert(classicJdbcTemplate, jpaEntity, targetList, getDialect());
+	    invalidateCache(jpaEntity.getTableName());
+	    return retValues;
+	}
+	
+	/**
+	 * 调用插入、更新或删除的SQL语句
+	 * @param sqlOrId   SQL语句或对应SQL模板中的id
+	 * @param condition   动态条件
+	 * @return
+	 */
+	public int update(String sqlOrId, Condition condition) {
+	    final String id = resolveSqlId(sqlOrId);
+	    final String sql = generateSql(id, condition);
+	    int rows = withTemplateQueryTimeout(id, () -> jdbcTemplate.update(sql, condition));
+	    invalidateCacheBySql(sql);
+	    return rows;
+	}
+	
+	/**
+	 * 调用插入、更新或删除的SQL语句
+	 * @param sqlOrId   SQL语句或对应SQL模板中的id
+	 * @param args
+	 * @return
+	 */
+	public int update(String sqlOrId, Object... args) {
+		final String id = resolveSqlId(sqlOrId);
+		final String sql = generateSql(id, null);
+		int rows = withTemplateQueryTimeout(id, () -> classicJdbcTemplate.update(sql, args));
+		invalidateCacheBySql(sql);
+		return rows;
+	}
+	
+	/**
+	 * 更新实体
+	 * <li>实体含有加载时的数据快照且未指定更新列时，只更新发生变化的列，见{@link #setDirtyTracking(boolean)}</li>
+	 * @param jpaEntity
+	 * @param target
+	 * @param columns
+	 * @return   没有需要更新的列时返回0
+	 */
+	public <T> int update(JpaEntity jpaEntity, T target, String... columns) {
+		target = unproxy(target);
+		ColumnMetaData idColumn = jpaEntity.getIdColumn();
+		if(!jpaEntity.existId()) {
+			throw new UnsupportedOperationException(Strings.format("类{}未设置主键，不支持该操作！", target.getClass()));
+		}
+		final String idColumnName = idColumn.getColumnName();
+		//获取对象数据库字段及对应值
+		Map<String, Object> parameters = updateColumnDataMapper(jpaEntity, target, columns);
+		if(parameters.isEmpty()) {
+			return 0;
+		}
+		final String sql = jpaEntity.getEntitySql().updateSql(parameters.keySet());
+		// 添加主键
+		parameters.put(idColumnName, jpaEntity.getIdValue(target));
+		int rows = jdbcTemplate.update(sql, parameters);
+		invalidateCache(jpaEntity.getTableName());
+		refreshSnapshot(jpaEntity, target);
+		return rows;
+	}
+	
+	/**
+	 * 获取实体需要更新的列及对应的值
+	 * @param jpaEntity
+	 * @param target
+	 * @param columns   指定更新的列，为空时：有数据快照则取发生变化的列，否则取所有非null的列
+	 * @return
+	 */
+	private <T> Map<String, Object> updateColumnDataMapper(JpaEntity jpaEntity, T target, String... columns) {
+		if(Arrays.isEmpty(columns) && target instanceof Snapshotable) {
+			Object[] snapshotValues = ((Snapshotable)target).snapshotValues();
+			if(null != snapshotValues && snapshotValues.length == jpaEntity.getColumnCount()) {
+				return jpaEntity.dirtyColumnDataMapper(target, snapshotValues);
+			}
+		}
+		return jpaEntity.columnDataMapper(target, true, columns);
+	}
+	
+	/**
+	 * 更新成功后，将已记录快照的实体的快照刷新为当前值
+	 * @param jpaEntity
+	 * @param target
+	 */
+	private static void refreshSnapshot(JpaEntity jpaEntity, Object target) {
+		if(target instanceof Snapshotable && null != ((Snapshotable)target).snapshotValues()) {
+			((Snapshotable)target).snapshotValues(jpaEntity.snapshot(target));
+		}
+	}
+	
+	/**
+	 * 批量更新实体
+	 * <li>按每个实体需要更新的列集合分组，每组共用一条UPDATE语句，以JDBC批处理执行</li>
+	 * @param jpaEntity
+	 * @param targets
+	 * @param columns   只需要更新的字段，如果没有设置的话就更新所有非null的字段
+	 * @return   与targets迭代顺序对应的影响行数
+	 */
+	public <T> int[] batchUpdate(JpaEntity jpaEntity, Collection<T> targets, String... columns) {
+		if(CollectionUtil.isEmpty(targets)) {
+			return new int[0];
+		}
+		if(!jpaEntity.existId()) {
+			throw new UnsupportedOperationException(Strings.format("类{}未设置主键，不支持该操作！", jpaEntity.getTableName()));
+		}
+		targets = unproxyAll(targets);
+		final String idColumnName = jpaEntity.getIdColumnName();
+		// 按更新的列集合分组，key为排序后的列名
+		Map<String, UpdateGroup> groups = new LinkedHashMap<>();
+		int index = 0;
+		for(T target : targets) {
+			Map<String, Object> parameters = updateColumnDataMapper(jpaEntity, target, columns);
+			if(!parameters.isEmpty()) {
+				String sql = jpaEntity.getEntitySql().updateSql(parameters.keySet());
+				UpdateGroup group = groups.get(sql);
+				if(null == group) {
+					group = new UpdateGroup(sql);
+					groups.put(sql, group);
+				}
+				parameters.put(idColumnName, jpaEntity.getIdValue(target));
+				group.indexes.add(index);
+				group.batchArgs.add(new MapSqlParameterSource(parameters));
+			}
+			index ++;
+		}
+		int[] retValues = new int[targets.size()];
+		for(UpdateGroup group : groups.values()) {
+			int[] batchValues = jdbcTemplate.batchUpdate(group.sql, group.batchArgs.toArray(new SqlParameterSource[group.batchArgs.size()]));
+			for(int i = 0; i < batchValues.length; i ++) {
+				retValues[group.indexes.get(i)] = batchValues[i];
+			}
+		}
+		if(!groups.isEmpty()) {
+			invalidateCache(jpaEntity.getTableName());
+		}
+		for(T target : targets) {
+			refreshSnapshot(jpaEntity, target);
+		}
+		return retValues;
+	}
+	
+	/**
+	 * 按主键批量删除
+	 * <li>重复的主键只删除一次；按{@link #setInClauseSize(int)}分批执行：DELETE FROM table WHERE id IN (...)</li>
+	 * @param jpaEntity
+	 * @param ids
+	 * @return   删除的总行数
+	 */
+	public int deleteByIds(JpaEntity jpaEntity, Collection<?> ids) {
+		if(!jpaEntity.existId()) {
+			throw new UnsupportedOperationException(Strings.format("{}不存在主键，无法执行该操作！", jpaEntity.getTableName()));
+		}
+		if(CollectionUtil.isEmpty(ids)) {
+			return 0;
+		}
+		List<Object> distinctIds = distinctIds(ids);
+		final String sqlPrefix = jpaEntity.getEntitySql().getDeleteByIdsPrefix();
+		final int size = distinctIds.size(), chunkSize = inClauseChunkSize();
+		int rows = 0;
+		for(int i = 0; i < size; i += chunkSize) {
+			List<Object> chunk = distinctIds.subList(i, Math.min(i + chunkSize, size));
+			rows += classicJdbcTemplate.update(sqlPrefix + Jdbcs.inPlaceholders(chunk.size()), chunk.toArray());
+		}
+		invalidateCache(jpaEntity.getTableName());
+		return rows;
+	}
+	
+	/**
+	 * 去除null和重复的主键，保持原有顺序
+	 * @param ids
+	 * @return
+	 */
+	static List<Object> distinctIds(Collection<?> ids) {
+		Set<Object> distinctIds = new LinkedHashSet<>(ids);
+		distinctIds.remove(null);
+		return new ArrayList<>(distinctIds);
+	}
+	
+	/**
+	 * 通过sqlOrId、结果类型、动态条件，获取单个结果
+	 * @param sqlOrId   SQL语句或对应SQL模板中的id
+	 * @param targetClass   目标类的类型
+	 * @param condition   动态条件
+	 * @return
+	 */
+	public <T> T queryForObject(String sqlOrId, Class<T> targetClass, Condition condition) {
+	    return _queryForObject(sqlOrId, getRowMapper(targetClass), targetClass, false, condition);
+	}
+	
+	/**
+	 * 通过sqlOrId、结果类型、参数，获取单个结果
+	 * @param sqlOrId   SQL语句或对应SQL模板中的id
+	 * @param targetClass   目标类的类型
+	 * @param args   参数
+	 * @return
+	 */
+	public <T> T queryForObject(String sqlOrId, Class<T> targetClass, Object... args) {
+	    return _queryForObject(sqlOrId, getRowMapper(targetClass), targetClass, false, args);
+	}
+	
+	/**
+	 * 通过sqlOrId、RowMapper、动态参数，获取单个结果
+	 * @param sqlOrId   SQL语句或对应SQL模板中的id
+	 * @param rowMapper
+	 * @param condition
+	 * @return
+	 */
+	public <T> T queryForObject(String sqlOrId, RowMapper<T> rowMapper, Condition condition) {
+	    return _queryForObject(sqlOrId, rowMapper, rowMapper, false, condition);
+	}
+	
+	/**
+	 * 通过sqlOrId、RowMapper、参数，获取单个结果
+	 * @param sqlOrId   SQL语句或对应SQL模板中的id
+	 * @param rowMapper
+	 * @param args
+	 * @return 返回单个对象，如果查找不到数据则返回null
+	 */
+	public <T> T queryForObject(String sqlOrId, RowMapper<T> rowMapper, Object... args) {
+	    return _queryForObject(sqlOrId, rowMapper, rowMapper, false, args);
+	}
+	
+	/**
+	 * 通过sqlOrId、结果类型、动态条件，获取单个结果，并使用结果缓存
+	 * <li>未开启结果缓存({@link #setResultCache(int, long)})时与{@link #queryForObject(String, Class, Condition)}相同</li>
+	 * <li>查询不到数据的结果(null)同样缓存</li>
+	 * @param sqlOrId   SQL语句或对应SQL模板中的id
+	 * @param targetClass   目标类的类型
+	 * @param condition   动态条件
+	 * @return
+	 */
+	public <T> T queryForObjectCached(String sqlOrId, Class<T> targetClass, Condition condition) {
+	    return _queryForObject(sqlOrId, getRowMapper(targetClass), targetClass, true, condition);
+	}
+	
+	/**
+	 * 通过sqlOrId、结果类型、参数，获取单个结果，并使用结果缓存
+	 * <li>未开启结果缓存({@link #setResultCache(int, long)})时与{@link #queryForObject(String, Class, Object...)}相同</li>
+	 * @param sqlOrId   SQL语句或对应SQL模板中的id
+	 * @param targetClass   目标类的类型
+	 * @param args   参数
+	 * @return
+	 */
+	public <T> T queryForObjectCached(String sqlOrId, Class<T> targetClass, Object... args) {
+	    return _queryForObject(sqlOrId, getRowMapper(targetClass), targetClass, true, args);
+	}
+	
+	/**
+	 * 获取单个结果
+	 * @param sqlOrId
+	 * @param rowMapper
+	 * @param mapperKey   结果缓存key中区分映射方式的部分：结果类型，或按RowMapper查询时的RowMapper实例(相同类的实例映射方式可能不同)
+	 * @param cached   是否按次使用结果缓存
+	 * @param arg   Condition或参数数组
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T _queryForObject(String sqlOrId, final RowMapper<T> rowMapper, Object mapperKey, boolean cached, final Object arg) {
+	    final String id = resolveSqlId(sqlOrId);
+	    final QueryCache resultCache = resultCache(id, cached);
+	    final String sql = generateSql(id, (arg instanceof Condition) ? (Condition)arg : null);
+	    final Supplier<?> loader = () -> coalesced(sql, mapperKey, false, arg, () -> withTemplateQueryTimeout(id, () -> _queryForObject(sql, rowMapper, arg)));
+	    return (T)((null == resultCache) ? loader.get() : cachedResult(resultCache, sql, mapperKey, false, arg, loader));
+	}
+	
+	private <T> T _queryForObject(String sql, RowMapper<T> rowMapper, Object arg) {
+	    try {
+	        final NamedParameterJdbcTemplate jdbcTemplate = readJdbcTemplate();
+	        if(arg instanceof Condition) {
+	            return jdbcTemplate.queryForObject(sql, (Condition)arg, rowMapper);
+	        }
+	        return jdbcTemplate.getJdbcOperations().queryForObject(sql, rowMapper, (Object[])arg);
+	    } catch(EmptyResultDataAccessException e) {
+	        return null;
+	    }
+	}
+	
+	/**
+	 * 执行查询，开启了合并并发查询({@link #setSingleFlight(long)})时，合并相同的查询
+	 * @param sql   生成的sql
+	 * @param mapperKey
+	 * @param list   是否为结果列表
+	 * @param arg
+	 * @param loader   执行查询
+	 * @return
+	 */
+	private Object coalesced(String sql, Object mapperKey, boolean list, Object arg, Supplier<?> loader) {
+	    final SingleFlight singleFlight = this.singleFlight;
+	    if(null == singleFlight || !isReplicaReadable()) {
+	        return loader.get();
+	    }
+	    return singleFlight.execute(resultKey(sql, mapperKey, list, arg), loader, this::copyResult);
+	}
+	
+	/**
+	 * 结果缓存、合并查询的key：映射方式、结果形式(单个结果或列表)、sql与参数值
+	 * @param sql   生成的sql
+	 * @param mapperKey
+	 * @param list   是否为结果列表，相同sql的query与queryForObject结果不同
+	 * @param arg
+	 * @return
+	 */
+	private static Object resultKey(String sql, Object mapperKey, boolean list, Object arg) {
+	    return java.util.Arrays.asList(mapperKey, list, QueryCache.key(sql, arg));
+	}
+	
+	/**
+	 * 复制查询结果，用于放入、取出结果缓存或交给等待合并查询的调用方，避免多个调用方修改同一列表、实体
+	 * @param result   单个结果或结果列表
+	 * @return   列表复制为新的列表；实体复制为副本，其他对象返回原值
+	 */
+	private Object copyResult(Object result) {
+	    if(!(result instanceof List)) {
+	        return copyEntity(result);
+	    }
+	    final List<?> items = (List<?>)result;
+	    final List<Object> copies = new ArrayList<>(items.size());
+	    for(Object item : items) {
+	        copies.add(copyEntity(item));
+	    }
+	    return copies;
+	}
+	
+	private Object copyEntity(Object item) {
+	    if(null == item || !JpaUtils.isEntity(item.getClass())) {
+	        return item;
+	    }
+	    return jpaEntity(item.getClass()).copy(item);
+	}
+	
+	/**
+	 * 从结果缓存中获取，不存在时查询并放入缓存
+	 * <li>缓存和返回的实体都是副本，执行查询的调用方得到查询结果本身</li>
+	 * @param resultCache
+	 * @param sql   生成的sql
+	 * @param mapperKey
+	 * @param list   是否为结果列表
+	 * @param arg
+	 * @param loader   执行查询
+	 * @return
+	 */
+	private Object cachedResult(QueryCache resultCache, String sql, Object mapperKey, boolean list, Object arg, Supplier<?> loader) {
+	    final Object key = resultKey(sql, mapperKey, list, arg);
+	    QueryCache.Entry entry = resultCache.lookup(key);
+	    if(null != entry) {
+	        return copyResult(entry.getValue());
+	    }
+	    final String[] tableNames = resultCache.tableNames(sql);
+	    final long[] versions = resultCache.versions(tableNames);
+	    Object value = loader.get();
+	    // 缓存结果的副本，调用方修改返回的列表、实体不影响缓存
+	    resultCache.put(key, tableNames, versions, copyResult(value));
+	    return value;
+	}
+	
+	/**
+     * 通过sqlOrId、结果类型、动态条件，获取结果列表
+     * @param sqlOrId   SQL语句或对应SQL模板中的id
+     * @param targetClass   目标类的类型
+     * @param condition
+     * @return
+     */
+    public <T> List<T> query(String sqlOrId, Class<T> targetClass, Condition condition) {
+        return _query(sqlOrId, getRowMapper(targetClass), targetClass, false, condition);
+    }
+    
+	/**
+	 * 通过sqlOrId、结果类型、参数，获取结果列表
+	 * @param sqlOrId   SQL语句或对应SQL模板中的id
+	 * @param targetClass
+	 * @param args
+	 * @return
+	 */
+	public <T> List<T> query(String sqlOrId, Class<T> targetClass, Object... args) {
+	    return _query(sqlOrId, getRowMapper(targetClass), targetClass, false, args);
+	}
+	
+	/**
+	 * 通过sqlOrId、结果类型、动态条件，获取结果列表
+	 * @param sqlOrId
+	 * @param rowMapper
+	 * @param condition
 	 * @return
 	 */
-	public <T> Serializable saveReturnKey(JpaEntity jpaEntity, T target) {
-		ColumnMetaData idColumn = jpaEntity.getIdColumn();
-		if(!jpaEntity.existId()) {
-			throw new UnsupportedOperationException(Strings.format("类{}未设置主键，不支持该操作！", target.getClass()));
-		}
-		final String tableName = jpaEntity.getTableName();
-		//获取对象数据库字段及对应值
-		Map<String, Object> parameters = jpaEntity.columnDataMapper(target, false);
-		
-		Number key = getInsert(tableName, idColumn.getColumnName()).executeAndReturnKey(parameters);
-		//根据id类型进行转换
-		Class<?> idType = idColumn.getType();
-		if(idType == int.class || idType == Integer.class) {
-			key = key.intValue();
-		} else if(idType == long.class || idType == Long.class) {
-			key = key.longValue();
-		}
-		Reflects.writeField(target, idColumn.getField(), key);
-		return key;
-	}
+	public <T> List<T> query(String sqlOrId, RowMapper<T> rowMapper, Condition condition) {
+        return _query(sqlOrId, rowMapper, rowMapper, false, condition);
+    }
 	
 	/**
-	 * 保存实体对象但不返回主键值，该方法用于不含有主键的情况
-	 * @param target
-	 * @return   返回影响数据的行数
+	 * 通过sqlOrId、结果类型、参数，获取结果列表
+	 * @param sqlOrId   SQL语句或对应SQL模板中的id
+	 * @param rowMapper
+	 * @param args
+	 * @return
 	 */
-	public <T> int saveNotReturnKey(JpaEntity jpaEntity, T target) {
-		final String tableName = jpaEntity.getTableName();
-		//获取对象数据库字段及对应值
-		Map<String, Object> parameters = jpaEntity.columnDataMapper(target, false);
-		return getInsert(tableName).execute(parameters);
+	public <T> List<T> query(String sqlOrId, RowMapper<T> rowMapper, Object... args) {
+	    return _query(sqlOrId, rowMapper, rowMapper, false, args);
 	}
 	
 	/**
-	 * 批量保存实体对象
-	 * @param jpaEntity
-	 * @param targets
+	 * 通过sqlOrId、结果类型、动态条件，获取结果列表，并按加载计划批量加载关联实体
+	 * <li>关联字段加载到调用方自己的结果上：合并并发查询({@link #setSingleFlight(long)})时，不影响得到同一查询结果的其他调用方</li>
+	 * @param sqlOrId   SQL语句或对应SQL模板中的id
+	 * @param targetClass   实体类型
+	 * @param fetchPlan   需要加载的<code>@JoinColumn</code>字段，见{@link #fetch(Collection, FetchPlan)}
+	 * @param condition
 	 * @return
 	 */
-	public <T> int [] batchSave(JpaEntity jpaEntity, T[] targets) {
-	    if(Arrays.isEmpty(targets)) {
-	        return new int[0];
-	    }
-	    int length = targets.length;
-	    Condition[] batchParameters = new Condition[length];
-	    for(int i = 0; i < length; i ++) {
-	        batchParameters[i] = new Condition().addValues(jpaEntity.columnDataMapper(targets[i], false));
-	    }
-	    final String tableName = jpaEntity.getTableName();
-	    return getInsert(tableName).executeBatch(batchParameters);
+	public <T> List<T> query(String sqlOrId, Class<T> targetClass, FetchPlan fetchPlan, Condition condition) {
+	    return fetch(_query(sqlOrId, getRowMapper(targetClass), targetClass, false, condition), fetchPlan);
 	}
 	
 	/**
-	 * 批量保存实体对象，可以设置每次处理的数量
-	 * @param jpaEntity
-	 * @param targets
-	 * @param buffer
+	 * 通过sqlOrId、结果类型、参数，获取结果列表，并按加载计划批量加载关联实体
+	 * <li>关联字段加载到调用方自己的结果上：合并并发查询({@link #setSingleFlight(long)})时，不影响得到同一查询结果的其他调用方</li>
+	 * @param sqlOrId   SQL语句或对应SQL模板中的id
+	 * @param targetClass   实体类型
+	 * @param fetchPlan   需要加载的<code>@JoinColumn</code>字段，见{@link #fetch(Collection, FetchPlan)}
+	 * @param args
 	 * @return
 	 */
-	public <T> int [] batchSave(JpaEntity jpaEntity, T[] targets, int buffer) {
-	    if(Arrays.isEmpty(targets)) {
-	        return new int[0];
-	    }
-	    final int length = targets.length;
-	    if(0 >= buffer || buffer >= length) {
-	        return batchSave(jpaEntity, targets);
-	    }
-	    int[] retValues = new int[length];
-	    for(int i = 0; i < length; i += buffer) {
-	        T[] array = Arrays.subarray(targets, i, i + buffer);
-	        int[] batchValues = batchSave(jpaEntity, array);
-	        System.arraycopy(batchValues, 0, retValues, i, batchValues.length);
-	    }
-	    return retValues;
+	public <T> List<T> query(String sqlOrId, Class<T> targetClass, FetchPlan fetchPlan, Object... args) {
+	    return fetch(_query(sqlOrId, getRowMapper(targetClass), targetClass, false, args), fetchPlan);
 	}
 	
 	/**
-	 * 调用插入、更新或删除的SQL语句
+	 * 通过sqlOrId、结果类型、动态条件，获取结果列表，并使用结果缓存
+	 * <li>未开启结果缓存({@link #setResultCache(int, long)})时与{@link #query(String, Class, Condition)}相同</li>
+	 * <li>命中缓存时返回缓存结果的副本，见{@link #setResultCache(int, long)}</li>
 	 * @param sqlOrId   SQL语句或对应SQL模板中的id
-	 * @param condition   动态条件
+	 * @param targetClass   目标类的类型
+	 * @param condition
 	 * @return
 	 */
-	public int update(String sqlOrId, Condition condition) {
-	    return jdbcTemplate.update(generateSql(sqlOrId, condition), condition);
+	public <T> List<T> queryCached(String sqlOrId, Class<T> targetClass, Condition condition) {
+	    return _query(sqlOrId, getRowMapper(targetClass), targetClass, true, condition);
 	}
 	
 	/**
-	 * 调用插入、更新或删除的SQL语句
+	 * 通过sqlOrId、结果类型、参数，获取结果列表，并使用结果缓存
+	 * <li>未开启结果缓存({@link #setResultCache(int, long)})时与{@link #query(String, Class, Object...)}相同</li>
+	 * <li>命中缓存时返回缓存结果的副本，见{@link #setResultCache(int, long)}</li>
 	 * @param sqlOrId   SQL语句或对应SQL模板中的id
+	 * @param targetClass   目标类的类型
 	 * @param args
 	 * @return
 	 */
-	public int update(String sqlOrId, Object... args) {
-		return classicJdbcTemplate.update(generateSql(sqlOrId, null), args);
+	public <T> List<T> queryCached(String sqlOrId, Class<T> targetClass, Object... args) {
+	    return _query(sqlOrId, getRowMapper(targetClass), targetClass, true, args);
 	}
 	
 	/**
-	 * 更新实体
-	 * @param jpaEntity
-	 * @param target
-	 * @param columns
+	 * 获取结果列表
+	 * @param sqlOrId
+	 * @param rowMapper
+	 * @param mapperKey   结果缓存key中区分映射方式的部分：结果类型，或按RowMapper查询时的RowMapper实例(相同类的实例映射方式可能不同)
+	 * @param cached   是否按次使用结果缓存
+	 * @param arg   Condition或参数数组
 	 * @return
 	 */
-	public <T> int update(JpaEntity jpaEntity, T target, String... columns) {
-		ColumnMetaData idColumn = jpaEntity.getIdColumn();
-		if(!jpaEntity.existId()) {
-			throw new UnsupportedOperationException(Strings.format("类{}未设置主键，不支持该操作！", target.getClass()));
-		}
-		final String tableName = jpaEntity.getTableName(),
-				idColumnName = idColumn.getColumnName();
-		//获取对象数据库字段及对应值
-		Map<String, Object> parameters = jpaEntity.columnDataMapper(target, true, columns);
-		StringBuilder sqlBuilder = new StringBuilder()
-				.append("UPDATE ")
-				.append(tableName)
-				.append(" SET ");
-		for(String column : parameters.keySet()) {
-			sqlBuilder.append(column).append("=:").append(column).append(Chars.COMMA);
-		}
-		sqlBuilder.deleteCharAt(sqlBuilder.length() - 1);
-		sqlBuilder.append(" WHERE ")	.append(idColumnName).append("=:").append(idColumnName);
-		// 添加主键
-		parameters.put(idColumnName, jpaEntity.getIdValue(target));
-		return jdbcTemplate.update(sqlBuilder.toString(), parameters);
+	@SuppressWarnings("unchecked")
+	private <T> List<T> _query(String sqlOrId, final RowMapper<T> rowMapper, Object mapperKey, boolean cached, final Object arg) {
+	    final String id = resolveSqlId(sqlOrId);
+	    final QueryCache resultCache = resultCache(id, cached);
+	    final String sql = generateSql(id, (arg instanceof Condition) ? (Condition)arg : null);
+	    if(null == resultCache && null == singleFlight) {
+	        return withTemplateQueryTimeout(id, () -> _query(sql, rowMapper, arg));
+	    }
+	    final Supplier<?> loader = () -> coalesced(sql, mapperKey, true, arg, () -> withTemplateQueryTimeout(id, () -> _query(sql, rowMapper, arg)));
+	    return (List<T>)((null == resultCache) ? loader.get() : cachedResult(resultCache, sql, mapperKey, true, arg, loader));
+	}
+	
+	private <T> List<T> _query(String sql, RowMapper<T> rowMapper, Object arg) {
+	    final NamedParameterJdbcTemplate jdbcTemplate = readJdbcTemplate();
+	    if(arg instanceof Condition) {
+	        return jdbcTemplate.query(sql, (Condition)arg, rowMapper);
+	    }
+	    return jdbcTemplate.getJdbcOperations().query(sql, rowMapper, (Object[])arg);
 	}
 	
 	/**
-	 * 通过sqlOrId、结果类型、动态条件，获取单个结果
+	 * 通过sqlOrId、结果类型、动态条件，逐行读取结果
+	 * <li>返回的Stream须关闭(如try-with-resources)，关闭时释放数据库连接；读取完所有行时也会释放</li>
+	 * <li>每次从数据库读取的行数见{@link #setStreamFetchSize(int)}</li>
 	 * @param sqlOrId   SQL语句或对应SQL模板中的id
 	 * @param targetClass   目标类的类型
 	 * @param condition   动态条件
 	 * @return
 	 */
-	public <T> T queryForObject(String sqlOrId, Class<T> targetClass, Condition condition) {
-	    return queryForObject(sqlOrId, Jdbcs.getRowMapperByClass(targetClass), condition);
+	public <T> Stream<T> queryForStream(String sqlOrId, Class<T> targetClass, Condition condition) {
+	    return queryForStream(sqlOrId, getRowMapper(targetClass), getStreamFetchSize(), condition);
 	}
 	
 	/**
-	 * 通过sqlOrId、结果类型、参数，获取单个结果
+	 * 通过sqlOrId、结果类型、参数，逐行读取结果
+	 * <li>返回的Stream须关闭(如try-with-resources)，关闭时释放数据库连接；读取完所有行时也会释放</li>
 	 * @param sqlOrId   SQL语句或对应SQL模板中的id
 	 * @param targetClass   目标类的类型
-	 * @param args   参数
+	 * @param args
 	 * @return
 	 */
-	public <T> T queryForObject(String sqlOrId, Class<T> targetClass, Object... args) {
-	    return queryForObject(sqlOrId, Jdbcs.getRowMapperByClass(targetClass), args);
+	public <T> Stream<T> queryForStream(String sqlOrId, Class<T> targetClass, Object... args) {
+	    return queryForStream(sqlOrId, getRowMapper(targetClass), getStreamFetchSize(), args);
 	}
 	
 	/**
-	 * 通过sqlOrId、RowMapper、动态参数，获取单个结果
+	 * 通过sqlOrId、RowMapper、动态条件，逐行读取结果
 	 * @param sqlOrId   SQL语句或对应SQL模板中的id
 	 * @param rowMapper
-	 * @param condition
-	 * @return
+	 * @param condition   动态条件
+	 * @return   须关闭，以释放数据库连接
 	 */
-	public <T> T queryForObject(String sqlOrId, RowMapper<T> rowMapper, Condition condition) {
-	    try {
-	        return jdbcTemplate.queryForObject(generateSql(sqlOrId, condition), condition, rowMapper);
-	    } catch(EmptyResultDataAccessException e) {
-	        return null;
-	    }
-	    
+	public <T> Stream<T> queryForStream(String sqlOrId, RowMapper<T> rowMapper, Condition condition) {
+	    return queryForStream(sqlOrId, rowMapper, getStreamFetchSize(), condition);
 	}
 	
 	/**
-	 * 通过sqlOrId、RowMapper、参数，获取单个结果
+	 * 通过sqlOrId、RowMapper、参数，逐行读取结果
 	 * @param sqlOrId   SQL语句或对应SQL模板中的id
 	 * @param rowMapper
 	 * @param args
-	 * @return 返回单个对象，如果查找不到数据则返回null
+	 * @return   须关闭，以释放数据库连接
 	 */
-	public <T> T queryForObject(String sqlOrId, RowMapper<T> rowMapper, Object... args) {
-	    try {
-	        return classicJdbcTemplate.queryForObject(generateSql(sqlOrId, null), rowMapper, args);
-	    } catch (EmptyResultDataAccessException e) {
-	        return null;
-        }
+	public <T> Stream<T> queryForStream(String sqlOrId, RowMapper<T> rowMapper, Object... args) {
+	    return queryForStream(sqlOrId, rowMapper, getStreamFetchSize(), args);
 	}
 	
 	/**
-     * 通过sqlOrId、结果类型、动态条件，获取结果列表
-     * @param sqlOrId   SQL语句或对应SQL模板中的id
-     * @param targetClass   目标类的类型
-     * @param condition
-     * @return
-     */
-    public <T> List<T> query(String sqlOrId, Class<T> targetClass, Condition condition) {
-        return query(sqlOrId, Jdbcs.getRowMapperByClass(targetClass), condition);
-    }
-    
+	 * 通过sqlOrId、RowMapper、动态条件，按指定的fetchSize逐行读取结果
+	 * @param sqlOrId   SQL语句或对应SQL模板中的id
+	 * @param rowMapper
+	 * @param fetchSize   每次从数据库读取的行数；MySQL逐行流式读取为{@link #STREAMING_FETCH_SIZE}
+	 * @param condition   动态条件
+	 * @return   须关闭，以释放数据库连接
+	 */
+	public <T> Stream<T> queryForStream(String sqlOrId, RowMapper<T> rowMapper, int fetchSize, Condition condition) {
+	    final String id = resolveSqlId(sqlOrId);
+	    final String sql = generateSql(id, condition);
+	    MapSqlParameterSource paramSource = new MapSqlParameterSource(condition);
+	    ParsedSql parsedSql = NamedParameterUtils.parseSqlStatement(sql);
+	    final String sqlToUse = NamedParameterUtils.substituteNamedParameters(parsedSql, paramSource);
+	    List<SqlParameter> declaredParameters = NamedParameterUtils.buildSqlParameterList(parsedSql, paramSource);
+	    Object[] params = NamedParameterUtils.buildValueArray(parsedSql, paramSource, null);
+	    PreparedStatementSetter setter = new PreparedStatementCreatorFactory(sqlToUse, declaredParameters).newPreparedStatementSetter(params);
+	    return ResultSetStreams.stream(readDataSource(), sqlToUse, setter, rowMapper, fetchSize, queryTimeout(id), exceptionTranslator());
+	}
+	
 	/**
-	 * 通过sqlOrId、结果类型、参数，获取结果列表
+	 * 通过sqlOrId、RowMapper、参数，按指定的fetchSize逐行读取结果
 	 * @param sqlOrId   SQL语句或对应SQL模板中的id
-	 * @param targetClass
+	 * @param rowMapper
+	 * @param fetchSize   每次从数据库读取的行数；MySQL逐行流式读取为{@link #STREAMING_FETCH_SIZE}
 	 * @param args
-	 * @return
+	 * @return   须关闭，以释放数据库连接
 	 */
-	public <T> List<T> query(String sqlOrId, Class<T> targetClass, Object... args) {
-	    return query(sqlOrId, Jdbcs.getRowMapperByClass(targetClass), args);
+	public <T> Stream<T> queryForStream(String sqlOrId, RowMapper<T> rowMapper, int fetchSize, Object[] args) {
+	    final String id = resolveSqlId(sqlOrId);
+	    final String sql = generateSql(id, null);
+	    return ResultSetStreams.stream(readDataSource(), sql, new ArgumentPreparedStatementSetter(args), rowMapper, fetchSize, queryTimeout(id), exceptionTranslator());
 	}
 	
 	/**
-	 * 通过sqlOrId、结果类型、动态条件，获取结果列表
-	 * @param sqlOrId
+	 * 通过sqlOrId、结果类型、动态条件，逐行读取结果并交给action处理，处理完成后释放数据库连接
+	 * @param sqlOrId   SQL语句或对应SQL模板中的id
+	 * @param targetClass   目标类的类型
+	 * @param action   处理每行结果
+	 * @param condition   动态条件
+	 * @return   处理的行数
+	 */
+	public <T> long forEachRow(String sqlOrId, Class<T> targetClass, Consumer<? super T> action, Condition condition) {
+	    return forEachRow(queryForStream(sqlOrId, targetClass, condition), action);
+	}
+	
+	/**
+	 * 通过sqlOrId、结果类型、参数，逐行读取结果并交给action处理，处理完成后释放数据库连接
+	 * @param sqlOrId   SQL语句或对应SQL模板中的id
+	 * @param targetClass   目标类的类型
+	 * @param action   处理每行结果
+	 * @param args
+	 * @return   处理的行数
+	 */
+	public <T> long forEachRow(String sqlOrId, Class<T> targetClass, Consumer<? super T> action, Object... args) {
+	    return forEachRow(queryForStream(sqlOrId, targetClass, args), action);
+	}
+	
+	/**
+	 * 通过sqlOrId、RowMapper、动态条件，逐行读取结果并交给action处理，处理完成后释放数据库连接
+	 * @param sqlOrId   SQL语句或对应SQL模板中的id
 	 * @param rowMapper
-	 * @param condition
-	 * @return
+	 * @param action   处理每行结果
+	 * @param condition   动态条件
+	 * @return   处理的行数
 	 */
-	public <T> List<T> query(String sqlOrId, RowMapper<T> rowMapper, Condition condition) {
-        return jdbcTemplate.query(generateSql(sqlOrId, condition), condition, rowMapper);
-    }
+	public <T> long forEachRow(String sqlOrId, RowMapper<T> rowMapper, Consumer<? super T> action, Condition condition) {
+	    return forEachRow(queryForStream(sqlOrId, rowMapper, condition), action);
+	}
 	
 	/**
-	 * 通过sqlOrId、结果类型、参数，获取结果列表
+	 * 通过sqlOrId、RowMapper、参数，逐行读取结果并交给action处理，处理完成后释放数据库连接
 	 * @param sqlOrId   SQL语句或对应SQL模板中的id
 	 * @param rowMapper
+	 * @param action   处理每行结果
 	 * @param args
+	 * @return   处理的行数
+	 */
+	public <T> long forEachRow(String sqlOrId, RowMapper<T> rowMapper, Consumer<? super T> action, Object... args) {
+	    return forEachRow(queryForStream(sqlOrId, rowMapper, args), action);
+	}
+	
+	private static <T> long forEachRow(Stream<T> stream, Consumer<? super T> action) {
+	    long rows = 0;
+	    try (Stream<T> rowStream = stream) {
+	        Iterator<T> iterator = rowStream.iterator();
+	        while(iterator.hasNext()) {
+	            action.accept(iterator.next());
+	            rows ++;
+	        }
+	    }
+	    return rows;
+	}
+	
+	/**
+	 * 获取将SQLException转换为Spring DataAccessException的转换器
 	 * @return
 	 */
-	public <T> List<T> query(String sqlOrId, RowMapper<T> rowMapper, Object... args) {
-	    return classicJdbcTemplate.query(generateSql(sqlOrId, null), rowMapper, args);
+	private SQLExceptionTranslator exceptionTranslator() {
+	    if(classicJdbcTemplate instanceof JdbcTemplate) {
+	        return ((JdbcTemplate)classicJdbcTemplate).getExceptionTranslator();
+	    }
+	    return new SQLErrorCodeSQLExceptionTranslator(dataSource);
 	}
 	
 	/**
@@ -382,7 +1904,7 @@ public final class JdbcDao {
 	 * @return
 	 */
 	public <T> Page<T> queryPageByIndex(String sqlOrId, Class<T> targetClass, boolean flowMode, int pageIndex, int pageSize, Condition condition) {
-	    return queryPageByIndex(sqlOrId, Jdbcs.getRowMapperByClass(targetClass), flowMode, pageIndex, pageSize, condition);
+	    return queryPageByIndex(sqlOrId, getRowMapper(targetClass), flowMode, pageIndex, pageSize, condition);
 	}
 	
 	/**
@@ -396,7 +1918,7 @@ public final class JdbcDao {
 	 * @return
 	 */
 	public <T> Page<T> queryPageByIndex(String sqlOrId, Class<T> targetClass, boolean flowMode, int pageIndex, int pageSize, Object... args) {
-	    return queryPageByIndex(sqlOrId, Jdbcs.getRowMapperByClass(targetClass), flowMode, pageIndex, pageSize, args);
+	    return queryPageByIndex(sqlOrId, getRowMapper(targetClass), flowMode, pageIndex, pageSize, args);
 	}
 	
 	/**
@@ -444,7 +1966,7 @@ public final class JdbcDao {
 	 * @return
 	 */
 	public <T> Page<T> queryPage(String sqlOrId, Class<T> targetClass, boolean flowMode, int start, int limit, Condition condition) {
-	    return queryPage(sqlOrId, Jdbcs.getRowMapperByClass(targetClass), flowMode, start, limit, condition);
+	    return queryPage(sqlOrId, getRowMapper(targetClass), flowMode, start, limit, condition);
 	}
 	
 	/**
@@ -458,7 +1980,7 @@ public final class JdbcDao {
 	 * @return
 	 */
 	public <T> Page<T> queryPage(String sqlOrId, Class<T> targetClass, boolean flowMode, int start, int limit, Object... args) {
-	    return queryPage(sqlOrId, Jdbcs.getRowMapperByClass(targetClass), flowMode, start, limit, args);
+	    return queryPage(sqlOrId, getRowMapper(targetClass), flowMode, start, limit, args);
 	}
 	
 	/**
@@ -472,7 +1994,9 @@ public final class JdbcDao {
 	 * @return
 	 */
 	public <T> Page<T> queryPage(String sqlOrId, RowMapper<T> rowMapper, final boolean flowMode, int start, int limit, Condition condition) {
-	    return _queryPage(generateSql(sqlOrId, condition), rowMapper, flowMode, start, limit, condition);
+	    final String id = resolveSqlId(sqlOrId);
+	    final String sql = generateSql(id, condition);
+	    return withTemplateQueryTimeout(id, () -> _queryPage(sql, rowMapper, flowMode, start, limit, condition, flowMode ? null : countStrategy(id)));
 	}
 	
 	/**
@@ -486,7 +2010,191 @@ public final class JdbcDao {
 	 * @return
 	 */
 	public <T> Page<T> queryPage(String sqlOrId, RowMapper<T> rowMapper, final boolean flowMode, int start, final int limit, Object... args) {
-	    return _queryPage(generateSql(sqlOrId, null), rowMapper, flowMode, start, limit, args);
+	    final String id = resolveSqlId(sqlOrId);
+	    final String sql = generateSql(id, null);
+	    return withTemplateQueryTimeout(id, () -> _queryPage(sql, rowMapper, flowMode, start, limit, args, flowMode ? null : countStrategy(id)));
+	}
+	
+	/**
+	 * 通过动态条件分页查询，使用指定的总记录数策略
+	 * @param sqlOrId   执行的sql或对应模板中的id
+	 * @param targetClass   返回的目标类class
+	 * @param countStrategy   总记录数策略，见{@link CountStrategies}
+	 * @param start   分页查询起始的偏移量
+	 * @param limit   分页的每页数量
+	 * @param condition   查询条件的封装类
+	 * @return
+	 */
+	public <T> Page<T> queryPage(String sqlOrId, Class<T> targetClass, CountStrategy countStrategy, int start, int limit, Condition condition) {
+	    return queryPage(sqlOrId, getRowMapper(targetClass), countStrategy, start, limit, condition);
+	}
+	
+	/**
+	 * 通过可变参数条件分页查询，使用指定的总记录数策略
+	 * @param sqlOrId   执行的sql或对应模板中的id
+	 * @param targetClass   返回的目标类class
+	 * @param countStrategy   总记录数策略，见{@link CountStrategies}
+	 * @param start   分页查询起始的偏移量
+	 * @param limit   分页的每页数量
+	 * @param args   查询条件的参数列表
+	 * @return
+	 */
+	public <T> Page<T> queryPage(String sqlOrId, Class<T> targetClass, CountStrategy countStrategy, int start, int limit, Object... args) {
+	    return queryPage(sqlOrId, getRowMapper(targetClass), countStrategy, start, limit, args);
+	}
+	
+	/**
+	 * 通过动态条件分页查询，使用指定的总记录数策略
+	 * @param sqlOrId   执行的sql或对应模板中的id
+	 * @param rowMapper
+	 * @param countStrategy   总记录数策略，见{@link CountStrategies}
+	 * @param start   分页查询起始的偏移量
+	 * @param limit   分页的每页数量
+	 * @param condition   查询条件的封装类
+	 * @return
+	 */
+	public <T> Page<T> queryPage(String sqlOrId, RowMapper<T> rowMapper, CountStrategy countStrategy, int start, int limit, Condition condition) {
+	    Assert.notNull(countStrategy);
+	    final String id = resolveSqlId(sqlOrId);
+	    final String sql = generateSql(id, condition);
+	    return withTemplateQueryTimeout(id, () -> _queryPage(sql, rowMapper, false, start, limit, condition, countStrategy));
+	}
+	
+	/**
+	 * 通过可变参数条件分页查询，使用指定的总记录数策略
+	 * @param sqlOrId   执行的sql或对应模板中的id
+	 * @param rowMapper
+	 * @param countStrategy   总记录数策略，见{@link CountStrategies}
+	 * @param start   分页查询起始的偏移量
+	 * @param limit   分页的每页数量
+	 * @param args   查询条件的参数列表
+	 * @return
+	 */
+	public <T> Page<T> queryPage(String sqlOrId, RowMapper<T> rowMapper, CountStrategy countStrategy, int start, int limit, Object... args) {
+	    Assert.notNull(countStrategy);
+	    final String id = resolveSqlId(sqlOrId);
+	    final String sql = generateSql(id, null);
+	    return withTemplateQueryTimeout(id, () -> _queryPage(sql, rowMapper, false, start, limit, args, countStrategy));
+	}
+	
+	/**
+	 * 键集(seek)分页查询
+	 * <li>第一页token为null；下一页传入上一页的{@link Page#getNextToken()}</li>
+	 * <li>原查询作为子查询，按排序键定位：SELECT * FROM (sql) WHERE key &gt; ? ORDER BY key LIMIT limit，见{@link KeysetSort#wrap(String, boolean, int, boolean)}</li>
+	 * <li>返回的Page为流式分页，不包含总记录数</li>
+	 * @param sqlOrId   执行的sql或对应模板中的id
+	 * @param targetClass   返回的目标类class
+	 * @param sort   排序键
+	 * @param token   继续标识
+	 * @param limit   每页数量
+	 * @param condition   查询条件的封装类
+	 * @return
+	 */
+	public <T> Page<T> queryKeysetPage(String sqlOrId, Class<T> targetClass, KeysetSort sort, String token, int limit, Condition condition) {
+	    return queryKeysetPage(sqlOrId, getRowMapper(targetClass), sort, token, limit, condition);
+	}
+	
+	/**
+	 * 键集(seek)分页查询
+	 * @param sqlOrId   执行的sql或对应模板中的id
+	 * @param targetClass   返回的目标类class
+	 * @param sort   排序键
+	 * @param token   继续标识，第一页为null
+	 * @param limit   每页数量
+	 * @param args   查询条件的参数列表
+	 * @return
+	 */
+	public <T> Page<T> queryKeysetPage(String sqlOrId, Class<T> targetClass, KeysetSort sort, String token, int limit, Object... args) {
+	    return queryKeysetPage(sqlOrId, getRowMapper(targetClass), sort, token, limit, args);
+	}
+	
+	/**
+	 * 键集(seek)分页查询
+	 * @param sqlOrId   执行的sql或对应模板中的id
+	 * @param rowMapper
+	 * @param sort   排序键
+	 * @param token   继续标识，第一页为null
+	 * @param limit   每页数量
+	 * @param condition   查询条件的封装类
+	 * @return
+	 */
+	public <T> Page<T> queryKeysetPage(String sqlOrId, RowMapper<T> rowMapper, KeysetSort sort, String token, int limit, Condition condition) {
+	    final String id = resolveSqlId(sqlOrId);
+	    final String sql = generateSql(id, condition);
+	    return withTemplateQueryTimeout(id, () -> _queryKeysetPage(sql, rowMapper, sort, token, limit, condition));
+	}
+	
+	/**
+	 * 键集(seek)分页查询
+	 * @param sqlOrId   执行的sql或对应模板中的id
+	 * @param rowMapper
+	 * @param sort   排序键
+	 * @param token   继续标识，第一页为null
+	 * @param limit   每页数量
+	 * @param args   查询条件的参数列表
+	 * @return
+	 */
+	public <T> Page<T> queryKeysetPage(String sqlOrId, RowMapper<T> rowMapper, KeysetSort sort, String token, int limit, Object... args) {
+	    final String id = resolveSqlId(sqlOrId);
+	    final String sql = generateSql(id, null);
+	    return withTemplateQueryTimeout(id, () -> _queryKeysetPage(sql, rowMapper, sort, token, limit, args));
+	}
+	
+	/**
+	 * 执行键集分页查询，多查询一行判断是否存在下一页
+	 * @param sql
+	 * @param rowMapper
+	 * @param sort
+	 * @param token
+	 * @param limit
+	 * @param arg   Condition或参数数组
+	 * @return
+	 */
+	private <T> Page<T> _queryKeysetPage(String sql, final RowMapper<T> rowMapper, final KeysetSort sort, String token, final int limit, Object arg) {
+	    Assert.notNull(sort);
+	    if(limit <= 0) {
+	        throw new PageException("每页数量必须大于0！");
+	    }
+	    final Object[] seekValues = Strings.isEmpty(token) ? null : KeysetToken.decode(token, sort.getColumns().length);
+	    final boolean named = arg instanceof Condition;
+	    final String keysetSql = sort.wrap(sql, null != seekValues, limit + 1, named);
+	    final int keyCount = sort.getColumns().length;
+	    // 记录第limit行的排序键值，作为下一页的定位条件
+	    final Object[] lastKeyValues = new Object[keyCount];
+	    RowMapper<T> keysetRowMapper = new RowMapper<T>() {
+	        @Override
+	        public T mapRow(ResultSet rs, int rowNum) throws SQLException {
+	            if(rowNum == limit - 1) {
+	                for(int i = 0; i < keyCount; i ++) {
+	                    lastKeyValues[i] = rs.getObject(sort.getColumnLabel(i));
+	                }
+	            }
+	            return rowMapper.mapRow(rs, rowNum);
+	        }
+	    };
+	    List<T> items;
+	    if(named) {
+	        MapSqlParameterSource paramSource = new MapSqlParameterSource((Condition)arg);
+	        for(int i = 0; null != seekValues && i < keyCount; i ++) {
+	            paramSource.addValue(sort.paramName(i), seekValues[i]);
+	        }
+	        items = readJdbcTemplate().query(keysetSql, paramSource, keysetRowMapper);
+	    } else {
+	        Object[] args = Arrays.wrap(null == arg ? new Object[0] : arg);
+	        if(null != seekValues) {
+	            args = Arrays.addAll(args, sort.seekArgs(seekValues));
+	        }
+	        items = readClassicJdbcTemplate().query(keysetSql, keysetRowMapper, args);
+	    }
+	    Page<T> page = new Page<T>(true, 1, limit);
+	    int size = (null == items) ? 0 : items.size();
+	    page.setHasNext(size > limit);
+	    if(size > limit) {
+	        items.subList(limit, size).clear();
+	        page.setNextToken(KeysetToken.encode(lastKeyValues));
+	    }
+	    page.setItems(CollectionUtil.emptyListIfNull(items));
+	    return page;
 	}
 	
 	/**
@@ -497,52 +2205,55 @@ public final class JdbcDao {
 	 * @param start   分页查询起始的偏移量
 	 * @param limit   分页的每页数量
 	 * @param arg   查询条件
+	 * @param countStrategy   非流式分页的总记录数策略
 	 * @return
 	 */
-	private <T> Page<T> _queryPage(String sql, RowMapper<T> rowMapper, final boolean flowMode, final int start, final int limit, Object arg) {
+	private <T> Page<T> _queryPage(String sql, RowMapper<T> rowMapper, final boolean flowMode, final int start, final int limit, Object arg, CountStrategy countStrategy) {
 	    Page<T> page = new Page<T>(flowMode, start / limit + 1, limit);
 	    if(null == arg) {
 	        arg = new Object[0];
 	    }
-	    StringBuilder limitSqlBuilder =  new StringBuilder();
-	    // sql 主体内容
-	    if(flowMode) {
-	        limitSqlBuilder.append(sql);
-	    } else {
-	        limitSqlBuilder.append("SELECT SQL_CALC_FOUND_ROWS ").append(Jdbcs.removeFirstSelect(sql));
+	    if(!flowMode) {
+	        countStrategy.query(new CountQuery<T>(readJdbcTemplate(), concurrentCounter, countCache, getDialect(), sql, rowMapper, start, limit, arg), page);
+	        return page;
 	    }
-	    // sql 分页限定
+	    StringBuilder limitSqlBuilder =  new StringBuilder(sql);
+	    // sql 分页限定，多查询一条判断是否存在下一页
         if(start > 0 || limit > 0) {
             limitSqlBuilder.append(" LIMIT ");
-            int sqlLimit = limit;
-            if(flowMode) {
-                sqlLimit ++;
-            }
             if(start > 0) {
-                limitSqlBuilder.append(start).append(",").append(sqlLimit);
+                limitSqlBuilder.append(start).append(",").append(limit + 1);
             } else {
-                limitSqlBuilder.append(sqlLimit);
+                limitSqlBuilder.append(limit + 1);
             }
         }
         final String limitSql = limitSqlBuilder.toString();
         List<T> items;
         if(arg instanceof Condition) {
-            items = jdbcTemplate.query(limitSql, (Condition)arg, rowMapper);
+            items = readJdbcTemplate().query(limitSql, (Condition)arg, rowMapper);
         } else {
-            items = classicJdbcTemplate.query(limitSql, rowMapper, Arrays.wrap(arg));
+            items = readClassicJdbcTemplate().query(limitSql, rowMapper, Arrays.wrap(arg));
         }
-        if(flowMode) {
-            int size = (null == items) ? 0 : items.size();
-            page.setHasNext(size > limit);
-            if(size > limit) {
-                items.subList(limit, size).clear();
-            }
-            page.setItems(items);
-        } else {
-            final int total = classicJdbcTemplate.queryForObject(COUNT_SQL, Integer.class);
-            page.setItems(CollectionUtil.emptyListIfNull(items));
-            page.setTotalCount(total);
-        }        
+        int size = (null == items) ? 0 : items.size();
+        page.setHasNext(size > limit);
+        if(size > limit) {
+            items.subList(limit, size).clear();
+        }
+        page.setItems(items);
         return page;
 	}
+	
+	/**
+	 * 批量更新时，更新列相同的一组实体
+	 */
+	private static final class UpdateGroup {
+	    final String sql;
+	    /** 实体在原始集合中的位置 */
+	    final List<Integer> indexes = new ArrayList<>();
+	    final List<SqlParameterSource> batchArgs = new ArrayList<>();
+	    
+	    UpdateGroup(String sql) {
+	        this.sql = sql;
+	    }
+	}
 }
@@ -1,15 +1,26 @@
 package com.jyoryo.entityjdbc.dao;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.jyoryo.entityjdbc.EntityDao;
 import com.jyoryo.entityjdbc.JpaEntity;
 import com.jyoryo.entityjdbc.common.Reflects;
 import com.jyoryo.entityjdbc.common.Strings;
+import com.jyoryo.entityjdbc.support.BatchResult;
 import com.jyoryo.entityjdbc.support.Condition;
+import com.jyoryo.entityjdbc.support.FetchPlan;
 import com.jyoryo.entityjdbc.support.Page;
 
 /**
@@ -26,6 +37,10 @@ public abstract class JdbcEntityDao<T> implements EntityDao<T> {
 	protected JdbcDao dao;
 	protected final Class<T> targetClass;
 	protected final JpaEntity jpaEntity;
+	/**
+	 * 按主键缓存的实体，为null时不缓存
+	 */
+	private volatile EntityCache<T> entityCache;
 
 	public JdbcEntityDao() {
 		super();
@@ -41,14 +56,105 @@ public abstract class JdbcEntityDao<T> implements EntityDao<T> {
 	public void setJdbcDao(JdbcDao jdbcDao) {
 		this.jdbcDao = jdbcDao;
 		this.dao = jdbcDao;
+		if(null != jdbcDao && null != entityCache) {
+			jdbcDao.registerEntityCache(targetClass, entityCache);
+		}
+	}
+
+	/**
+	 * 开启按主键的实体缓存，{@link #get(Serializable)}先从缓存中获取
+	 * <li>通过该DAO的update、batchUpdate、save、saveOrUpdate、batchUpsert、delete、deleteById、deleteByIds、deleteAll按主键移除缓存</li>
+	 * <li>不经过该DAO的写入(如直接执行UPDATE语句)不会移除缓存，依赖失效时长或手动调用{@link EntityCache#evict(Object)}</li>
+	 * <li>缓存与返回的都是实体的副本，修改返回的实体不影响缓存</li>
+	 * <li>当前线程存在事务时，读取的实体不放入缓存</li>
+	 * @param maxSize   最大缓存数量，小于等于0时关闭缓存
+	 * @param timeoutMillis   失效时长，单位毫秒，0表示不失效
+	 * @param eviction   淘汰策略，为null时为LRU
+	 */
+	public void setEntityCache(int maxSize, long timeoutMillis, EntityCache.Eviction eviction) {
+		setEntityCache((maxSize <= 0) ? null : EntityCache.<T>create(maxSize, timeoutMillis, eviction));
+	}
+	
+	/**
+	 * 设置按主键的实体缓存
+	 * <li>同时注册到JdbcDao，加载其他实体的关联字段时使用，见{@link JdbcDao#registerEntityCache(Class, EntityCache)}</li>
+	 * @param entityCache   为null时关闭缓存
+	 */
+	public void setEntityCache(EntityCache<T> entityCache) {
+		this.entityCache = entityCache;
+		if(null != jdbcDao) {
+			jdbcDao.registerEntityCache(targetClass, entityCache);
+		}
+	}
+	
+	/**
+	 * 获取实体缓存，可用于查看命中率
+	 * @return   未开启时返回null
+	 */
+	public EntityCache<T> getEntityCache() {
+		return entityCache;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <li>开启实体缓存时先从缓存中获取，见{@link #setEntityCache(int, long, EntityCache.Eviction)}</li>
+	 */
 	@Override
 	public T get(Serializable id) {
-		String sql = Strings.format("SELECT * FROM {} WHERE {} = ?",
-				jpaEntity.getTableName(),
-				jpaEntity.getIdColumnName());
-		return queryForObject(sql, id);
+		final EntityCache<T> entityCache = this.entityCache;
+		if(null == entityCache || null == id) {
+			return queryForObject(jpaEntity.getEntitySql().getSelectByIdSql(), id);
+		}
+		T target = entityCache.get(id);
+		if(null != target) {
+			return jpaEntity.copy(target);
+		}
+		final long stamp = entityCache.stamp();
+		target = queryForObject(jpaEntity.getEntitySql().getSelectByIdSql(), id);
+		if(null != target && !TransactionSynchronizationManager.isActualTransactionActive()) {
+			entityCache.put(id, jpaEntity.copy(target), stamp);
+		}
+		return target;
+	}
+	
+	/**
+	 * 写入实体后，按主键移除缓存
+	 * <li>当前线程存在事务时，事务结束后再次移除</li>
+	 * @param ids
+	 */
+	private void evictCache(final Collection<?> ids) {
+		final EntityCache<T> entityCache = this.entityCache;
+		if(null == entityCache || null == ids || ids.isEmpty()) {
+			return ;
+		}
+		for(Object id : ids) {
+			entityCache.evict(id);
+		}
+		if(TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					for(Object id : ids) {
+						entityCache.evict(id);
+					}
+				}
+			});
+		}
+	}
+	
+	/**
+	 * 写入实体后，按实体的主键移除缓存
+	 * @param targets
+	 */
+	private void evictCacheOf(Collection<T> targets) {
+		if(null == entityCache || null == targets || !jpaEntity.existId()) {
+			return ;
+		}
+		List<Object> ids = new ArrayList<>(targets.size());
+		for(T target : targets) {
+			ids.add(jpaEntity.getIdValue(target));
+		}
+		evictCache(ids);
 	}
 	
 	/**
@@ -91,6 +197,48 @@ public abstract class JdbcEntityDao<T> implements EntityDao<T> {
 		return jdbcDao.query(sqlOrId, targetClass, args);
 	}
 	
+	/**
+	 * 通过动态条件获取泛型对象列表，并按加载计划批量加载关联实体
+	 * @param sqlOrId
+	 * @param fetchPlan   需要加载的<code>@JoinColumn</code>字段
+	 * @param condition
+	 * @return
+	 */
+	protected List<T> query(String sqlOrId, FetchPlan fetchPlan, Condition condition) {
+	    return jdbcDao.query(sqlOrId, targetClass, fetchPlan, condition);
+	}
+	
+	/**
+	 * 通过可变参数条件获取泛型对象列表，并按加载计划批量加载关联实体
+	 * @param sqlOrId
+	 * @param fetchPlan   需要加载的<code>@JoinColumn</code>字段
+	 * @param args
+	 * @return
+	 */
+	protected List<T> query(String sqlOrId, FetchPlan fetchPlan, Object... args) {
+	    return jdbcDao.query(sqlOrId, targetClass, fetchPlan, args);
+	}
+	
+	/**
+	 * 通过动态条件逐行读取泛型对象，返回的Stream须关闭以释放数据库连接
+	 * @param sqlOrId
+	 * @param condition
+	 * @return
+	 */
+	protected Stream<T> queryForStream(String sqlOrId, Condition condition) {
+	    return jdbcDao.queryForStream(sqlOrId, targetClass, condition);
+	}
+	
+	/**
+	 * 通过可变参数条件逐行读取泛型对象，返回的Stream须关闭以释放数据库连接
+	 * @param sqlOrId
+	 * @param args
+	 * @return
+	 */
+	protected Stream<T> queryForStream(String sqlOrId, Object... args) {
+	    return jdbcDao.queryForStream(sqlOrId, targetClass, args);
+	}
+	
 	/**
 	 * 通过动态条件分页获取泛型对象列表
 	 * @param sqlOrId   执行的sql或对应模板中的id
@@ -119,22 +267,74 @@ public abstract class JdbcEntityDao<T> implements EntityDao<T> {
 
 	@Override
 	public List<T> getAll() {
-		String sql = Strings.format("SELECT * FROM {}", jpaEntity.getTableName());
-		return jdbcDao.query(sql, targetClass);
+		return jdbcDao.query(jpaEntity.getEntitySql().getSelectAllSql(), targetClass);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <li>开启实体缓存时先从缓存中获取，其余主键按JdbcDao设置的IN条件参数个数分批查询：SELECT ... WHERE id IN (...)</li>
+	 */
+	@Override
+	public List<T> getAll(Collection<? extends Serializable> ids) {
+		return new ArrayList<>(getAllAsMap(ids).values());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <li>开启实体缓存时先从缓存中获取，其余主键按JdbcDao设置的IN条件参数个数分批查询：SELECT ... WHERE id IN (...)</li>
+	 * <li>整数类型的主键按long比较，如：传入1L可以获取主键为1的实体</li>
+	 * <li>数字类型的主键先按@Id属性的类型转换，如：@Id属性为String时，传入1可以获取主键为"1"的实体</li>
+	 */
+	@Override
+	public Map<Serializable, T> getAllAsMap(Collection<? extends Serializable> ids) {
+		if(!jpaEntity.existId()) {
+			throw new IllegalArgumentException(Strings.format("{}不存在主键，无法执行该操作！", targetClass));
+		}
+		Map<Serializable, T> result = new LinkedHashMap<>();
+		if(null == ids || ids.isEmpty()) {
+			return result;
+		}
+		// 去除null和重复的主键，key为比较用的主键值
+		Map<Object, Serializable> distinctIds = new LinkedHashMap<>();
+		for(Serializable id : ids) {
+			if(null == id) {
+				continue ;
+			}
+			// 按@Id属性的类型转换后比较，与查询到的实体的主键值一致
+			Object key = EntityCache.key(jpaEntity.convertId(id));
+			if(!distinctIds.containsKey(key)) {
+				distinctIds.put(key, id);
+			}
+		}
+		Map<Object, T> loaded = jdbcDao.loadByIds(jpaEntity, targetClass, distinctIds.values(), entityCache);
+		for(Map.Entry<Object, Serializable> entry : distinctIds.entrySet()) {
+			T target = loaded.get(entry.getKey());
+			if(null != target) {
+				result.put(entry.getValue(), target);
+			}
+		}
+		return result;
 	}
 
 	@Override
 	public Serializable save(T target) {
-		return jdbcDao.save(jpaEntity, target);
+		target = JdbcDao.unproxy(target);
+		Serializable id = jdbcDao.save(jpaEntity, target);
+		evictCacheOf(Collections.singletonList(target));
+		return id;
 	}
 
 	@Override
 	public int saveNotReturnKey(T target) {
-		return jdbcDao.saveNotReturnKey(jpaEntity, target);
+		target = JdbcDao.unproxy(target);
+		int rows = jdbcDao.saveNotReturnKey(jpaEntity, target);
+		evictCacheOf(Collections.singletonList(target));
+		return rows;
 	}
 
 	/**
 	 * 批量保存实体对象
+	 * <li>主键值为空的实体，保存后会写回数据库生成的主键</li>
 	 * @param targets
 	 * @return
 	 */
@@ -151,14 +351,70 @@ public abstract class JdbcEntityDao<T> implements EntityDao<T> {
 	public int [] batchSave(T [] targets, int buffer) {
 	    return jdbcDao.batchSave(jpaEntity, targets, buffer);
 	}
+	
+	/**
+	 * 流式批量保存实体对象，按chunkSize逐批从迭代器中读取实体并保存
+	 * @param targets
+	 * @param chunkSize   每批次保存的数量
+	 * @return   汇总结果
+	 */
+	public BatchResult batchSave(Iterator<T> targets, int chunkSize) {
+	    return jdbcDao.batchSave(jpaEntity, targets, chunkSize);
+	}
+	
+	/**
+	 * 流式批量保存实体对象，按chunkSize逐批保存
+	 * @param targets
+	 * @param chunkSize   每批次保存的数量
+	 * @return   汇总结果
+	 */
+	public BatchResult batchSave(Iterable<T> targets, int chunkSize) {
+	    return jdbcDao.batchSave(jpaEntity, targets, chunkSize);
+	}
+	
+	/**
+	 * 流式批量保存实体对象，按chunkSize逐批保存
+	 * @param targets
+	 * @param chunkSize   每批次保存的数量
+	 * @return   汇总结果
+	 */
+	public BatchResult batchSave(Stream<T> targets, int chunkSize) {
+	    return jdbcDao.batchSave(jpaEntity, targets, chunkSize);
+	}
 
 	@Override
 	public int update(T target, String... columns) {
-		return jdbcDao.update(jpaEntity, target, columns);
+		target = JdbcDao.unproxy(target);
+		int rows = jdbcDao.update(jpaEntity, target, columns);
+		evictCacheOf(Collections.singletonList(target));
+		return rows;
+	}
+
+	/**
+	 * 批量更新实体对象
+	 * <li>更新列相同的实体共用一条UPDATE语句，以JDBC批处理执行</li>
+	 * @param targets
+	 * @param columns   只需要更新的字段，如果没有设置的话就更新所有非null的字段
+	 * @return   与targets迭代顺序对应的影响行数
+	 */
+	public int[] batchUpdate(Collection<T> targets, String... columns) {
+	    int[] retValues = jdbcDao.batchUpdate(jpaEntity, targets, columns);
+	    evictCacheOf(targets);
+	    return retValues;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <li>数据库支持时(MySQL、H2)，以单条插入或更新语句执行，见{@link JdbcDao#upsert(JpaEntity, Object)}</li>
+	 */
 	@Override
 	public void saveOrUpdate(T target) {
+		target = JdbcDao.unproxy(target);
+		if(jdbcDao.supportsUpsert()) {
+			jdbcDao.upsert(jpaEntity, target);
+			evictCacheOf(Collections.singletonList(target));
+			return ;
+		}
 		Object id = jpaEntity.getIdValue(target);
 		if(null != id && null != get((Serializable)id)) {
 			update(target);
@@ -166,6 +422,31 @@ public abstract class JdbcEntityDao<T> implements EntityDao<T> {
 		}	
 		save(target);
 	}
+	
+	/**
+	 * 批量保存或更新实体对象
+	 * <li>数据库支持时(MySQL、H2)，按写入的列集合分组，以JDBC批处理执行插入或更新语句</li>
+	 * <li>数据库不支持时，逐个调用{@link #saveOrUpdate(Object)}</li>
+	 * @param targets
+	 * @return   与targets迭代顺序对应的影响行数
+	 */
+	public int[] batchUpsert(Collection<T> targets) {
+		if(jdbcDao.supportsUpsert()) {
+			int[] retValues = jdbcDao.batchUpsert(jpaEntity, targets);
+			evictCacheOf(targets);
+			return retValues;
+		}
+		if(null == targets) {
+			return new int[0];
+		}
+		int[] retValues = new int[targets.size()];
+		int index = 0;
+		for(T target : targets) {
+			saveOrUpdate(target);
+			retValues[index ++] = 1;
+		}
+		return retValues;
+	}
 
 	@Override
 	public int delete(T target) {
@@ -177,9 +458,38 @@ public abstract class JdbcEntityDao<T> implements EntityDao<T> {
 		if(!jpaEntity.existId()) {
 			throw new IllegalArgumentException(Strings.format("{}不存在主键，无法执行该操作！", targetClass));
 		}
-		String sql = Strings.format("DELETE FROM {} WHERE {} = ?",
-				jpaEntity.getTableName(),
-				jpaEntity.getIdColumn().getColumnName());
-		return jdbcDao.update(sql, id);
+		int rows = jdbcDao.update(jpaEntity.getEntitySql().getDeleteByIdSql(), id);
+		evictCache(Collections.singletonList(id));
+		return rows;
+	}
+	
+	/**
+	 * 按主键批量删除
+	 * <li>按JdbcDao设置的IN条件参数个数分批执行：DELETE ... WHERE id IN (...)</li>
+	 * @param ids
+	 * @return   删除的总行数
+	 */
+	public int deleteByIds(Collection<? extends Serializable> ids) {
+		int rows = jdbcDao.deleteByIds(jpaEntity, ids);
+		evictCache(ids);
+		return rows;
+	}
+	
+	/**
+	 * 批量删除实体对象
+	 * @param targets
+	 * @return   删除的总行数
+	 */
+	public int deleteAll(Collection<T> targets) {
+		if(null == targets || targets.isEmpty()) {
+			return 0;
+		}
+		List<Object> ids = new ArrayList<>(targets.size());
+		for(T target : targets) {
+			ids.add(jpaEntity.getIdValue(target));
+		}
+		int rows = jdbcDao.deleteByIds(jpaEntity, ids);
+		evictCache(ids);
+		return rows;
 	}
 }
@@ -0,0 +1,125 @@
+package com.jyoryo.entityjdbc.dao;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+
+import com.jyoryo.entityjdbc.common.Arrays;
+import com.jyoryo.entityjdbc.common.Chars;
+
+/**
+ * 缓存已编译的SimpleJdbcInsert
+ * <p>SimpleJdbcInsert首次执行时会通过DatabaseMetaData读取表信息并编译INSERT语句，编译后的对象是线程安全的，可重复使用。</p>
+ * <li>一个缓存对象只对应一个DataSource(JdbcTemplate)</li>
+ * <li>缓存的key：表名 + 自增主键列 + 写入的列集合</li>
+ * @author jyoryo
+ *
+ */
+public final class JdbcInsertCache {
+    private final JdbcTemplate jdbcTemplate;
+    private final ConcurrentMap<String, SimpleJdbcInsert> inserts = new ConcurrentHashMap<>();
+    /** 命中数 */
+    private final AtomicLong hitCount = new AtomicLong();
+    /** 丢失数 */
+    private final AtomicLong missCount = new AtomicLong();
+
+    public JdbcInsertCache(DataSource dataSource) {
+        this(new JdbcTemplate(dataSource));
+    }
+
+    /**
+     * @param jdbcTemplate   执行INSERT的JdbcTemplate，使用其查询超时时间等设置
+     */
+    public JdbcInsertCache(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * 获取已编译的SimpleJdbcInsert，不存在则创建并编译
+     * @param tableName   表名
+     * @param columns   写入的列，为空则写入表的所有列
+     * @param idColumnNames   自增主键列
+     * @return
+     */
+    public SimpleJdbcInsert get(String tableName, Collection<String> columns, String... idColumnNames) {
+        final String[] sortedColumns = (null == columns) ? new String[0] : columns.toArray(new String[columns.size()]);
+        java.util.Arrays.sort(sortedColumns);
+        final String key = key(tableName, sortedColumns, idColumnNames);
+        SimpleJdbcInsert jdbcInsert = inserts.get(key);
+        if(null != jdbcInsert) {
+            hitCount.incrementAndGet();
+            return jdbcInsert;
+        }
+        missCount.incrementAndGet();
+        jdbcInsert = new SimpleJdbcInsert(jdbcTemplate).withTableName(tableName);
+        if(sortedColumns.length > 0) {
+            jdbcInsert.usingColumns(sortedColumns);
+        }
+        // 存在id列表
+        if(Arrays.isNotEmpty(idColumnNames)) {
+            jdbcInsert.usingGeneratedKeyColumns(idColumnNames);
+        }
+        jdbcInsert.compile();
+        SimpleJdbcInsert existInsert = inserts.putIfAbsent(key, jdbcInsert);
+        return (null == existInsert) ? jdbcInsert : existInsert;
+    }
+
+    /**
+     * 清空缓存，表结构变动后需要调用
+     */
+    public void clear() {
+        inserts.clear();
+    }
+
+    /**
+     * 缓存的SimpleJdbcInsert数量
+     * @return
+     */
+    public int size() {
+        return inserts.size();
+    }
+
+    /**
+     * 命中数
+     * @return
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * 丢失数，即编译SimpleJdbcInsert的次数
+     * @return
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * 重置命中数和丢失数
+     */
+    public void resetStatistics() {
+        hitCount.set(0);
+        missCount.set(0);
+    }
+
+    private static String key(String tableName, String[] columns, String[] idColumnNames) {
+        StringBuilder keyBuilder = new StringBuilder(tableName).append(Chars.COLON);
+        if(null != idColumnNames) {
+            for(String idColumnName : idColumnNames) {
+                keyBuilder.append(idColumnName).append(Chars.COMMA);
+            }
+        }
+        keyBuilder.append(Chars.COLON);
+        for(String column : columns) {
+            keyBuilder.append(column).append(Chars.COMMA);
+        }
+        return keyBuilder.toString();
+    }
+}
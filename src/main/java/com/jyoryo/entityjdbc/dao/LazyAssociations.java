@@ -0,0 +1,216 @@
+package com.jyoryo.entityjdbc.dao;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+import org.springframework.cglib.proxy.Enhancer;
+import org.springframework.cglib.proxy.Factory;
+import org.springframework.cglib.proxy.MethodInterceptor;
+import org.springframework.cglib.proxy.MethodProxy;
+import org.springframework.objenesis.SpringObjenesis;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import com.jyoryo.entityjdbc.JpaEntity;
+import com.jyoryo.entityjdbc.common.Reflects;
+import com.jyoryo.entityjdbc.common.Strings;
+import com.jyoryo.entityjdbc.exception.DaoException;
+
+/**
+ * <code>@JoinColumn</code>字段的延迟加载代理
+ * <li>代理为关联实体类的子类(CGLIB)，只设置了主键；调用主键getter以外的方法时，通过JdbcDao加载实体并转发调用</li>
+ * <li>equals、hashCode按实体类和主键计算，toString在加载前只输出实体类和主键，均不会加载实体</li>
+ * <li>加载时先从关联实体类已注册的按主键缓存中获取，见{@link JdbcDao#registerEntityCache(Class, EntityCache)}</li>
+ * <li>代理实例只额外持有一个回调对象：共享的加载器、主键、加载后的实体</li>
+ * <li>直接访问代理的字段(而不是方法)时，只能读取到主键，可通过{@link JdbcDao#unproxy(Object)}获取加载后的实体</li>
+ * <li>JdbcDao、JdbcEntityDao写入实体(保存、更新、插入或更新)前，将代理替换为加载后的实体</li>
+ * @author jyoryo
+ *
+ */
+final class LazyAssociations implements BiFunction<Class<?>, Object, Object> {
+    private static final SpringObjenesis OBJENESIS = new SpringObjenesis();
+    /**
+     * 实体类对应的代理类
+     */
+    private static final Map<Class<?>, Class<?>> PROXY_CLASSES = new ConcurrentHashMap<>();
+
+    private final JdbcDao jdbcDao;
+    /**
+     * 实体类对应的加载器
+     */
+    private final Map<Class<?>, Loader> loaders = new ConcurrentHashMap<>();
+
+    LazyAssociations(JdbcDao jdbcDao) {
+        this.jdbcDao = jdbcDao;
+    }
+
+    /**
+     * 创建关联实体的延迟加载代理
+     * @param entityClass   关联实体类
+     * @param id   主键，不能为null
+     * @return
+     */
+    @Override
+    public Object apply(Class<?> entityClass, Object id) {
+        Loader loader = loaders.computeIfAbsent(entityClass, type -> new Loader(jdbcDao, type, jdbcDao.jpaEntity(type)));
+        Factory proxy = instantiate(PROXY_CLASSES.computeIfAbsent(entityClass, LazyAssociations::createProxyClass));
+        proxy.setCallback(0, new LazyInitializer(loader, id));
+        Reflects.writeField(proxy, loader.idField, id);
+        return proxy;
+    }
+
+    /**
+     * 是否为延迟加载代理
+     * @param target
+     * @return
+     */
+    static boolean isProxy(Object target) {
+        return target instanceof Factory && ((Factory)target).getCallback(0) instanceof LazyInitializer;
+    }
+
+    /**
+     * 获取代理加载后的实体，未加载时立即加载
+     * @param target
+     * @return   不是代理时返回target本身
+     */
+    static Object unproxy(Object target) {
+        return isProxy(target) ? ((LazyInitializer)((Factory)target).getCallback(0)).target() : target;
+    }
+
+    private static Class<?> createProxyClass(Class<?> entityClass) {
+        try {
+            Enhancer enhancer = new Enhancer();
+            enhancer.setSuperclass(entityClass);
+            enhancer.setCallbackType(MethodInterceptor.class);
+            enhancer.setClassLoader(entityClass.getClassLoader());
+            return enhancer.createClass();
+        } catch (RuntimeException | LinkageError e) {
+            // 实体类为final、没有可访问的构造方法，或运行环境不允许CGLIB定义类(JDK9+需要--add-opens java.base/java.lang=ALL-UNNAMED)
+            throw new DaoException(e, "创建延迟加载代理类失败：{}", entityClass);
+        }
+    }
+
+    private static Factory instantiate(Class<?> proxyClass) {
+        try {
+            return (Factory)OBJENESIS.newInstance(proxyClass, true);
+        } catch (RuntimeException e) {
+            // 不支持时通过构造方法创建，未设置回调前调用的方法直接执行父类方法
+            try {
+                return (Factory)proxyClass.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException ex) {
+                throw new DaoException(ex, "创建延迟加载代理失败：{}", proxyClass);
+            }
+        }
+    }
+
+    /**
+     * 关联实体类的加载器，同一实体类的代理共用
+     */
+    private static final class Loader {
+        private final JdbcDao jdbcDao;
+        private final Class<?> entityClass;
+        private final JpaEntity jpaEntity;
+        private final Field idField;
+        private final String idGetter;
+        private final String idBooleanGetter;
+
+        Loader(JdbcDao jdbcDao, Class<?> entityClass, JpaEntity jpaEntity) {
+            if(!jpaEntity.existId()) {
+                throw new IllegalArgumentException(Strings.format("{}不存在主键，无法延迟加载！", jpaEntity.getTableName()));
+            }
+            this.jdbcDao = jdbcDao;
+            this.entityClass = entityClass;
+            this.jpaEntity = jpaEntity;
+            this.idField = jpaEntity.getIdColumn().getField();
+            final String name = StringUtils.capitalize(idField.getName());
+            this.idGetter = "get" + name;
+            this.idBooleanGetter = "is" + name;
+        }
+
+        boolean isIdGetter(Method method) {
+            return 0 == method.getParameterCount() && (idGetter.equals(method.getName()) || idBooleanGetter.equals(method.getName()));
+        }
+
+        Object load(Object id) {
+            Object target = load(entityClass, id);
+            if(null == target) {
+                throw new DaoException("延迟加载的关联实体不存在：{}，主键：{}", jpaEntity.getTableName(), id);
+            }
+            return target;
+        }
+
+        private <T> T load(Class<T> entityClass, Object id) {
+            Map<Object, T> loaded = jdbcDao.loadByIds(jpaEntity, entityClass, Collections.singletonList(id), jdbcDao.getEntityCache(entityClass));
+            return loaded.get(EntityCache.key(id));
+        }
+    }
+
+    /**
+     * 代理的回调：主键getter直接返回代理中的主键，equals、hashCode、toString不加载实体，其他方法转发给加载后的实体
+     */
+    private static final class LazyInitializer implements MethodInterceptor {
+        private final Loader loader;
+        private final Object id;
+        private volatile Object target;
+
+        LazyInitializer(Loader loader, Object id) {
+            this.loader = loader;
+            this.id = id;
+        }
+
+        Object target() {
+            Object target = this.target;
+            if(null == target) {
+                synchronized (this) {
+                    target = this.target;
+                    if(null == target) {
+                        target = loader.load(id);
+                        this.target = target;
+                    }
+                }
+            }
+            return target;
+        }
+
+        @Override
+        public Object intercept(Object proxy, Method method, Object[] args, MethodProxy methodProxy) throws Throwable {
+            if(loader.isIdGetter(method)) {
+                return methodProxy.invokeSuper(proxy, args);
+            }
+            final String name = method.getName();
+            final int parameterCount = method.getParameterCount();
+            if("finalize".equals(name) && 0 == parameterCount) {
+                return null;
+            }
+            // equals、hashCode按实体类和主键比较，toString不加载实体
+            if("equals".equals(name) && 1 == parameterCount && Object.class == method.getParameterTypes()[0]) {
+                return proxy == args[0] || isSameEntity(args[0]);
+            }
+            if("hashCode".equals(name) && 0 == parameterCount) {
+                return 31 * loader.entityClass.hashCode() + EntityCache.key(id).hashCode();
+            }
+            if("toString".equals(name) && 0 == parameterCount) {
+                final Object target = this.target;
+                return (null == target) ? Strings.format("{}[{}={}, 未加载]", loader.entityClass.getName(), loader.idField.getName(), id) : target.toString();
+            }
+            return methodProxy.invoke(target(), args);
+        }
+
+        /**
+         * 是否为同一实体类、主键相同的实体或代理，不加载实体
+         * @param other
+         * @return
+         */
+        private boolean isSameEntity(Object other) {
+            if(null == other || loader.entityClass != ClassUtils.getUserClass(other)) {
+                return false;
+            }
+            final Object otherId = isProxy(other) ? ((LazyInitializer)((Factory)other).getCallback(0)).id : loader.jpaEntity.getIdValue(other);
+            return null != otherId && EntityCache.key(id).equals(EntityCache.key(otherId));
+        }
+    }
+}
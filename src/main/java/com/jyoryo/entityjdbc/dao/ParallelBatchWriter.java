@@ -0,0 +1,240 @@
+package com.jyoryo.entityjdbc.dao;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.jyoryo.entityjdbc.JpaEntity;
+import com.jyoryo.entityjdbc.common.Assert;
+import com.jyoryo.entityjdbc.common.log.Logs;
+import com.jyoryo.entityjdbc.common.thread.ExecutorBuilder;
+import com.jyoryo.entityjdbc.common.thread.NamedThreadFactory;
+import com.jyoryo.entityjdbc.exception.DaoException;
+import com.jyoryo.entityjdbc.support.BatchFailure;
+import com.jyoryo.entityjdbc.support.BatchResult;
+
+/**
+ * 并行批量保存
+ * <p>将数据按chunkSize分成多个批次，同时在多个线程、多个数据库连接上执行{@link JdbcDao}批量保存。</p>
+ * <li>同时执行的批次数为parallelism，每个批次占用连接池中的一个连接，parallelism不应超过连接池的大小</li>
+ * <li>已读取未完成的批次最多为parallelism * 2，内存占用与数据总量无关</li>
+ * <li>开启transactional后，每个批次在单独的事务中执行，批次失败时整批回滚</li>
+ * <li>某个批次失败不影响其他批次，失败的批次记录在{@link BatchResult#getFailures()}中</li>
+ * 例如：
+ * <pre>
+ * BatchResult result = ParallelBatchWriter.create(jdbcDao)
+ *         .setParallelism(16)
+ *         .setChunkSize(1000)
+ *         .setTransactional(true)
+ *         .write(jpaEntity, iterator);
+ * </pre>
+ * @author jyoryo
+ *
+ */
+public class ParallelBatchWriter {
+    /**
+     * 每个批次默认的记录数
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private final JdbcDao jdbcDao;
+    /** 同时执行的批次数，默认为CPU可用核心数 */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    /** 每个批次的记录数 */
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    /** 是否每个批次一个事务 */
+    private boolean transactional = false;
+    /** 外部设置的线程池，未设置时每次写入创建临时线程池 */
+    private ExecutorService executor;
+
+    public ParallelBatchWriter(JdbcDao jdbcDao) {
+        Assert.notNull(jdbcDao);
+        this.jdbcDao = jdbcDao;
+    }
+
+    /**
+     * 创建ParallelBatchWriter
+     * @param jdbcDao
+     * @return
+     */
+    public static ParallelBatchWriter create(JdbcDao jdbcDao) {
+        return new ParallelBatchWriter(jdbcDao);
+    }
+
+    /**
+     * 设置同时执行的批次数
+     * @param parallelism
+     * @return this
+     */
+    public ParallelBatchWriter setParallelism(int parallelism) {
+        this.parallelism = (parallelism <= 0) ? Runtime.getRuntime().availableProcessors() : parallelism;
+        return this;
+    }
+
+    /**
+     * 设置每个批次的记录数
+     * @param chunkSize
+     * @return this
+     */
+    public ParallelBatchWriter setChunkSize(int chunkSize) {
+        this.chunkSize = (chunkSize <= 0) ? DEFAULT_CHUNK_SIZE : chunkSize;
+        return this;
+    }
+
+    /**
+     * 设置是否每个批次在单独的事务中执行
+     * @param transactional
+     * @return this
+     */
+    public ParallelBatchWriter setTransactional(boolean transactional) {
+        this.transactional = transactional;
+        return this;
+    }
+
+    /**
+     * 设置执行批次的线程池
+     * <li>未设置时，每次写入创建parallelism个线程的临时线程池，写入完成后关闭</li>
+     * <li>设置的线程池由调用方负责关闭</li>
+     * @param executor
+     * @return this
+     */
+    public ParallelBatchWriter setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * 并行批量保存实体对象
+     * @param jpaEntity
+     * @param targets
+     * @return   汇总结果，包含失败的批次
+     */
+    public <T> BatchResult write(JpaEntity jpaEntity, Iterable<T> targets) {
+        return write(jpaEntity, (null == targets) ? null : targets.iterator());
+    }
+
+    /**
+     * 并行批量保存实体对象
+     * <li>不会关闭传入的Stream</li>
+     * @param jpaEntity
+     * @param targets
+     * @return   汇总结果，包含失败的批次
+     */
+    public <T> BatchResult write(JpaEntity jpaEntity, Stream<T> targets) {
+        return write(jpaEntity, (null == targets) ? null : targets.iterator());
+    }
+
+    /**
+     * 并行批量保存实体对象
+     * <li>在调用线程中读取迭代器，读取的批次提交到线程池中执行，方法在所有批次执行完成后返回</li>
+     * <li>读取迭代器抛出异常时，等待已提交的批次执行完成后再抛出</li>
+     * @param jpaEntity
+     * @param targets
+     * @return   汇总结果，包含失败的批次
+     */
+    public <T> BatchResult write(final JpaEntity jpaEntity, Iterator<T> targets) {
+        final BatchResult result = new BatchResult();
+        if(null == targets || !targets.hasNext()) {
+            return result;
+        }
+        final int maxPending = parallelism * 2;
+        final Semaphore pending = new Semaphore(maxPending);
+        final TransactionTemplate transactionTemplate = transactional ? new TransactionTemplate(new DataSourceTransactionManager(jdbcDao.getDataSource())) : null;
+        final ExecutorService chunkExecutor = (null != executor) ? executor : ExecutorBuilder.create()
+                .setCorePoolSize(parallelism)
+                .setMaxPoolSize(parallelism)
+                .setWorkQueue(new ArrayBlockingQueue<Runnable>(maxPending))
+                .setThreadFactory(new NamedThreadFactory("entityjdbc-batch-writer-", true))
+                .build();
+        int chunkIndex = 0;
+        long offset = 0;
+        boolean completed = false;
+        try {
+            while(targets.hasNext()) {
+                final List<T> chunk = new ArrayList<>(chunkSize);
+                while(targets.hasNext() && chunk.size() < chunkSize) {
+                    chunk.add(targets.next());
+                }
+                final int index = chunkIndex ++;
+                final long chunkOffset = offset;
+                offset += chunk.size();
+                acquire(pending, 1);
+                try {
+                    chunkExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                BatchResult chunkResult = writeChunk(jpaEntity, chunk, transactionTemplate);
+                                synchronized (result) {
+                                    result.merge(chunkResult);
+                                }
+                            } catch (RuntimeException | Error e) {
+                                Logs.error("表{}第{}批次批量保存失败，起始位置：{}，记录数：{}", e, jpaEntity.getTableName(), index, chunkOffset, chunk.size());
+                                synchronized (result) {
+                                    result.addFailure(new BatchFailure(index, chunkOffset, chunk.size(), e));
+                                }
+                            } finally {
+                                pending.release();
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    pending.release();
+                    synchronized (result) {
+                        result.addFailure(new BatchFailure(index, chunkOffset, chunk.size(), e));
+                    }
+                }
+            }
+            // 等待所有批次执行完成
+            acquire(pending, maxPending);
+            completed = true;
+        } finally {
+            // 读取迭代器失败或等待时被中断：等待已提交的批次执行完成后再抛出异常
+            if(!completed) {
+                pending.acquireUninterruptibly(maxPending);
+            }
+            if(null == executor) {
+                chunkExecutor.shutdown();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 执行一个批次
+     * @param jpaEntity
+     * @param chunk
+     * @param transactionTemplate   为null时不开启事务
+     * @return
+     */
+    private <T> BatchResult writeChunk(final JpaEntity jpaEntity, final List<T> chunk, TransactionTemplate transactionTemplate) {
+        if(null == transactionTemplate) {
+            return new BatchResult().addBatch(jdbcDao.batchSave(jpaEntity, chunk));
+        }
+        return transactionTemplate.execute(new TransactionCallback<BatchResult>() {
+            @Override
+            public BatchResult doInTransaction(TransactionStatus status) {
+                return new BatchResult().addBatch(jdbcDao.batchSave(jpaEntity, chunk));
+            }
+        });
+    }
+
+    private static void acquire(Semaphore semaphore, int permits) {
+        try {
+            semaphore.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DaoException(e, "等待批量保存执行时被中断！");
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.jyoryo.entityjdbc.dao;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+
+import com.jyoryo.entityjdbc.common.Arrays;
+import com.jyoryo.entityjdbc.common.Assert;
+import com.jyoryo.entityjdbc.common.cache.Cache;
+import com.jyoryo.entityjdbc.common.cache.LRUCache;
+import com.jyoryo.entityjdbc.support.Condition;
+import com.jyoryo.entityjdbc.utils.Jdbcs;
+
+/**
+ * 按表失效的查询缓存
+ * <li>key为规范化的sql(合并空白)与绑定的参数值，见{@link #key(String, Object)}</li>
+ * <li>每个表维护一个版本号，写入表时版本号递增；缓存项记录查询前读取的表版本，版本变化后视为失效</li>
+ * <li>缓存的大小、失效时长、淘汰策略由{@link Cache}实现决定</li>
+ * @author jyoryo
+ *
+ */
+public final class QueryCache {
+    /**
+     * sql涉及的表名缓存的最大数量
+     */
+    private static final int TABLE_NAMES_CACHE_SIZE = 1024;
+
+    private final Cache<Object, Object> cache;
+    /**
+     * 表名(小写)对应的版本号
+     */
+    private final ConcurrentMap<String, AtomicLong> tableVersions = new ConcurrentHashMap<>();
+    /**
+     * sql对应的表名
+     */
+    private final Cache<String, String[]> tableNamesCache = new LRUCache<>(TABLE_NAMES_CACHE_SIZE);
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * @param cache   存储缓存项，如：{@link LRUCache}、{@link com.jyoryo.entityjdbc.common.cache.LFUCache}、{@link com.jyoryo.entityjdbc.common.cache.TimedCache}
+     */
+    public QueryCache(Cache<Object, Object> cache) {
+        Assert.notNull(cache);
+        this.cache = cache;
+    }
+
+    /**
+     * 创建以LRU淘汰的查询缓存
+     * @param maxSize   最大缓存数量
+     * @param timeoutMillis   失效时长，单位毫秒，0表示不失效
+     * @return
+     */
+    public static QueryCache lru(int maxSize, long timeoutMillis) {
+        if(maxSize <= 0) {
+            throw new IllegalArgumentException("缓存数量必须大于0！");
+        }
+        return new QueryCache(new LRUCache<Object, Object>(maxSize, Math.max(timeoutMillis, 0L)));
+    }
+
+    /**
+     * 生成缓存key：规范化的sql与绑定的参数值
+     * <li>Condition按sql中出现的具名参数取值，未使用的条件不影响key</li>
+     * @param sql
+     * @param arg   Condition或参数数组
+     * @return
+     */
+    public static Object key(String sql, Object arg) {
+        final String normalizedSql = normalize(sql);
+        Object[] values;
+        if(arg instanceof Condition) {
+            values = NamedParameterUtils.buildValueArray(NamedParameterUtils.parseSqlStatement(sql), new MapSqlParameterSource((Condition)arg), null);
+        } else {
+            values = (null == arg) ? new Object[0] : Arrays.wrap(arg);
+        }
+        return new Key(normalizedSql, values);
+    }
+
+    /**
+     * 合并sql中的空白
+     * @param sql
+     * @return
+     */
+    static String normalize(String sql) {
+        return sql.trim().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * 获取sql涉及的表名
+     * @param sql
+     * @return
+     */
+    String[] tableNames(String sql) {
+        String[] tableNames = tableNamesCache.get(sql);
+        if(null == tableNames) {
+            Set<String> names = Jdbcs.tableNames(sql);
+            tableNames = names.toArray(new String[names.size()]);
+            tableNamesCache.put(sql, tableNames);
+        }
+        return tableNames;
+    }
+
+    /**
+     * 读取表当前的版本号，在执行查询前读取，与查询结果一起放入缓存
+     * @param tableNames
+     * @return
+     */
+    long[] versions(String[] tableNames) {
+        long[] versions = new long[tableNames.length];
+        for(int i = 0; i < tableNames.length; i ++) {
+            versions[i] = version(tableNames[i]).get();
+        }
+        return versions;
+    }
+
+    /**
+     * 获取未失效的缓存项
+     * @param key
+     * @return   不存在或已失效时返回null
+     */
+    Entry lookup(Object key) {
+        Entry entry = (Entry)cache.get(key);
+        if(null != entry && !entry.isCurrent(this)) {
+            cache.remove(key);
+            entry = null;
+        }
+        if(null == entry) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * 放入缓存；查询期间表已被写入(版本号已变化)时不放入
+     * @param key
+     * @param tableNames
+     * @param versions   执行查询前读取的版本号，见{@link #versions(String[])}
+     * @param value   可以为null
+     */
+    void put(Object key, String[] tableNames, long[] versions, Object value) {
+        Entry entry = new Entry(tableNames, versions, value);
+        if(entry.isCurrent(this)) {
+            cache.put(key, entry);
+        }
+    }
+
+    /**
+     * 表被写入后调用，使涉及这些表的缓存失效
+     * @param tableNames
+     */
+    public void invalidate(Collection<String> tableNames) {
+        if(null == tableNames) {
+            return ;
+        }
+        for(String tableName : tableNames) {
+            if(null != tableName) {
+                version(tableName.toLowerCase()).incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 表被写入后调用，使涉及这些表的缓存失效
+     * @param tableNames
+     */
+    public void invalidate(String... tableNames) {
+        if(null != tableNames) {
+            invalidate(java.util.Arrays.asList(tableNames));
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * 当前缓存数量，包含已失效但未清理的缓存项
+     * @return
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * 命中数
+     * @return
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * 丢失数，包含已失效的缓存项
+     * @return
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * 命中率，没有访问时为0
+     * @return
+     */
+    public double getHitRatio() {
+        final long hits = getHitCount(), total = hits + getMissCount();
+        return (0 == total) ? 0D : (double)hits / total;
+    }
+
+    /**
+     * 重置命中数、丢失数
+     */
+    public void resetStatistics() {
+        hitCount.reset();
+        missCount.reset();
+    }
+
+    /**
+     * 存储缓存项的Cache
+     * @return
+     */
+    public Cache<Object, Object> getCache() {
+        return cache;
+    }
+
+    private AtomicLong version(String tableName) {
+        AtomicLong version = tableVersions.get(tableName);
+        if(null == version) {
+            AtomicLong newVersion = new AtomicLong();
+            version = tableVersions.putIfAbsent(tableName, newVersion);
+            if(null == version) {
+                version = newVersion;
+            }
+        }
+        return version;
+    }
+
+    /**
+     * 缓存key：规范化的sql与参数值，数组参数按内容比较
+     */
+    private static final class Key {
+        private final String sql;
+        private final Object[] values;
+        private final int hash;
+
+        Key(String sql, Object[] values) {
+            this.sql = sql;
+            this.values = values;
+            this.hash = 31 * sql.hashCode() + java.util.Arrays.deepHashCode(values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(this == obj) {
+                return true;
+            }
+            if(!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key)obj;
+            return hash == other.hash && sql.equals(other.sql) && java.util.Arrays.deepEquals(values, other.values);
+        }
+
+        @Override
+        public String toString() {
+            return sql + " " + java.util.Arrays.deepToString(values);
+        }
+    }
+
+    /**
+     * 缓存项：查询结果与查询前读取的表版本号
+     */
+    static final class Entry {
+        private final String[] tableNames;
+        private final long[] versions;
+        private final Object value;
+
+        Entry(String[] tableNames, long[] versions, Object value) {
+            this.tableNames = tableNames;
+            this.versions = versions;
+            this.value = value;
+        }
+
+        Object getValue() {
+            return value;
+        }
+
+        boolean isCurrent(QueryCache queryCache) {
+            Map<String, AtomicLong> tableVersions = queryCache.tableVersions;
+            for(int i = 0; i < tableNames.length; i ++) {
+                AtomicLong version = tableVersions.get(tableNames[i]);
+                if(versions[i] != ((null == version) ? 0L : version.get())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
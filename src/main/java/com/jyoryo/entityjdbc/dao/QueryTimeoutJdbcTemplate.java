@@ -0,0 +1,74 @@
+package com.jyoryo.entityjdbc.dao;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.function.IntSupplier;
+
+import javax.sql.DataSource;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.SQLExceptionTranslator;
+
+import com.jyoryo.entityjdbc.exception.QueryTimeoutException;
+
+/**
+ * 每次创建Statement时获取查询超时时间的JdbcTemplate
+ * <li>超时时间通过Statement.setQueryTimeout设置，超时后由数据库驱动取消语句；存在事务超时时以事务的剩余时间为准</li>
+ * <li>被取消的语句转换为{@link QueryTimeoutException}</li>
+ * @author jyoryo
+ *
+ */
+final class QueryTimeoutJdbcTemplate extends JdbcTemplate {
+    /**
+     * 标准SQLState：语句已取消
+     */
+    private static final String CANCELED_SQL_STATE = "57014";
+    /**
+     * MySQL错误码：查询被中断(ER_QUERY_INTERRUPTED)、超过max_execution_time(ER_QUERY_TIMEOUT)
+     */
+    private static final int MYSQL_QUERY_INTERRUPTED = 1317, MYSQL_QUERY_TIMEOUT = 3024;
+
+    private final IntSupplier queryTimeout;
+    private final SQLExceptionTranslator timeoutTranslator = this::translate;
+
+    /**
+     * @param dataSource
+     * @param queryTimeout   当前的超时时间，单位秒，0表示不设置
+     */
+    QueryTimeoutJdbcTemplate(DataSource dataSource, IntSupplier queryTimeout) {
+        super(dataSource);
+        this.queryTimeout = queryTimeout;
+    }
+
+    @Override
+    public int getQueryTimeout() {
+        return queryTimeout.getAsInt();
+    }
+
+    @Override
+    public SQLExceptionTranslator getExceptionTranslator() {
+        return timeoutTranslator;
+    }
+
+    private DataAccessException translate(String task, String sql, SQLException ex) {
+        final int timeout = getQueryTimeout();
+        if(isTimeout(ex, timeout)) {
+            return new QueryTimeoutException(sql, timeout, ex);
+        }
+        return super.getExceptionTranslator().translate(task, sql, ex);
+    }
+
+    /**
+     * 是否为超时取消的异常
+     * @param ex
+     * @param timeout   设置的超时时间，MySQL的中断错误只在设置了超时时间时视为超时
+     * @return
+     */
+    static boolean isTimeout(SQLException ex, int timeout) {
+        if(ex instanceof SQLTimeoutException || CANCELED_SQL_STATE.equals(ex.getSQLState()) || MYSQL_QUERY_TIMEOUT == ex.getErrorCode()) {
+            return true;
+        }
+        return timeout > 0 && MYSQL_QUERY_INTERRUPTED == ex.getErrorCode();
+    }
+}
@@ -0,0 +1,144 @@
+package com.jyoryo.entityjdbc.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import com.jyoryo.entityjdbc.common.Assert;
+
+/**
+ * 多个从库组成的数据源，每次获取连接时按负载策略选择一个从库
+ * <li>由{@link JdbcDao#setReplicaDataSource(DataSource)}使用，只用于事务外的查询</li>
+ * <li>记录每个从库已借出未关闭的连接数，用于{@link Balance#LEAST_IN_FLIGHT}</li>
+ * @author jyoryo
+ *
+ */
+public class ReplicaDataSource extends AbstractDataSource {
+    /**
+     * 负载策略
+     */
+    public enum Balance {
+        /** 轮询 */
+        ROUND_ROBIN,
+        /** 已借出连接数最少，相同时轮询 */
+        LEAST_IN_FLIGHT
+    }
+
+    private final List<DataSource> replicas;
+    private final AtomicInteger[] inFlights;
+    private final Balance balance;
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    /**
+     * @param replicas   从库数据源，不能为空
+     * @param balance   负载策略，为null时为轮询
+     */
+    public ReplicaDataSource(List<? extends DataSource> replicas, Balance balance) {
+        Assert.notNull(replicas);
+        if(replicas.isEmpty() || replicas.contains(null)) {
+            throw new IllegalArgumentException("从库数据源不能为空！");
+        }
+        this.replicas = Collections.unmodifiableList(new ArrayList<DataSource>(replicas));
+        this.inFlights = new AtomicInteger[replicas.size()];
+        for(int i = 0; i < inFlights.length; i ++) {
+            inFlights[i] = new AtomicInteger();
+        }
+        this.balance = (null == balance) ? Balance.ROUND_ROBIN : balance;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        final int index = select();
+        return track(replicas.get(index).getConnection(), index);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        final int index = select();
+        return track(replicas.get(index).getConnection(username, password), index);
+    }
+
+    /**
+     * 按负载策略选择从库
+     * @return   从库的下标
+     */
+    private int select() {
+        final int size = replicas.size(), offset = Math.floorMod(sequence.getAndIncrement(), size);
+        if(Balance.ROUND_ROBIN == balance || 1 == size) {
+            return offset;
+        }
+        int selected = offset, min = inFlights[offset].get();
+        for(int i = 1; i < size && min > 0; i ++) {
+            final int index = (offset + i) % size, inFlight = inFlights[index].get();
+            if(inFlight < min) {
+                selected = index;
+                min = inFlight;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * 记录借出的连接，连接关闭时归还计数
+     * @param con
+     * @param index
+     * @return
+     */
+    private Connection track(final Connection con, int index) {
+        final AtomicInteger inFlight = inFlights[index];
+        inFlight.incrementAndGet();
+        final AtomicBoolean closed = new AtomicBoolean();
+        InvocationHandler handler = (proxy, method, args) -> {
+            if("close".equals(method.getName()) && 0 == method.getParameterCount() && closed.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+            }
+            return invoke(con, method, args);
+        };
+        return (Connection)Proxy.newProxyInstance(ReplicaDataSource.class.getClassLoader(), new Class<?>[] {Connection.class}, handler);
+    }
+
+    private static Object invoke(Connection con, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(con, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    /**
+     * 从库数据源
+     * @return
+     */
+    public List<DataSource> getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * 负载策略
+     * @return
+     */
+    public Balance getBalance() {
+        return balance;
+    }
+
+    /**
+     * 从库已借出未关闭的连接数
+     * @param index   从库的下标
+     * @return
+     */
+    public int getInFlight(int index) {
+        return inFlights[index].get();
+    }
+}
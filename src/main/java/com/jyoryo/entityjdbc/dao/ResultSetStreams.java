@@ -0,0 +1,147 @@
+package com.jyoryo.entityjdbc.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.sql.DataSource;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.SQLExceptionTranslator;
+
+import com.jyoryo.entityjdbc.exception.QueryTimeoutException;
+
+/**
+ * 将查询结果逐行映射为Stream
+ * <li>执行查询后，连接、语句、结果集一直保持打开，直到Stream关闭或读取完所有行</li>
+ * <li>连接通过{@link DataSourceUtils}获取，参与当前线程中的Spring事务</li>
+ * @author jyoryo
+ *
+ */
+final class ResultSetStreams {
+    private static final String TASK = "queryForStream";
+
+    private ResultSetStreams() {
+    }
+
+    /**
+     * 执行查询，返回逐行映射的Stream
+     * @param dataSource
+     * @param sql
+     * @param setter   设置参数，可以为null
+     * @param rowMapper
+     * @param fetchSize   每次从数据库读取的行数；MySQL逐行流式读取为{@link Integer#MIN_VALUE}
+     * @param queryTimeout   查询超时时间，单位秒，0表示不设置；存在事务超时时以事务的剩余时间为准
+     * @param translator   SQLException转换
+     * @return   须关闭，以释放连接
+     */
+    static <T> Stream<T> stream(DataSource dataSource, String sql, PreparedStatementSetter setter, RowMapper<T> rowMapper, int fetchSize, int queryTimeout, SQLExceptionTranslator translator) {
+        final RowSpliterator<T> spliterator = new RowSpliterator<>(dataSource, sql, rowMapper, queryTimeout, translator);
+        spliterator.open(setter, fetchSize);
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+    }
+
+    /**
+     * 基于ResultSet的Spliterator，持有查询使用的连接
+     */
+    private static final class RowSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+        private final DataSource dataSource;
+        private final String sql;
+        private final RowMapper<T> rowMapper;
+        private final int queryTimeout;
+        private final SQLExceptionTranslator translator;
+        private Connection con;
+        private PreparedStatement ps;
+        private ResultSet rs;
+        private int rowNum = 0;
+        private boolean closed = false;
+
+        RowSpliterator(DataSource dataSource, String sql, RowMapper<T> rowMapper, int queryTimeout, SQLExceptionTranslator translator) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED);
+            this.dataSource = dataSource;
+            this.sql = sql;
+            this.rowMapper = rowMapper;
+            this.queryTimeout = queryTimeout;
+            this.translator = translator;
+        }
+
+        void open(PreparedStatementSetter setter, int fetchSize) {
+            con = DataSourceUtils.getConnection(dataSource);
+            try {
+                ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                if(0 != fetchSize) {
+                    ps.setFetchSize(fetchSize);
+                }
+                DataSourceUtils.applyTimeout(ps, dataSource, queryTimeout);
+                if(null != setter) {
+                    setter.setValues(ps);
+                }
+                rs = ps.executeQuery();
+            } catch (SQLException e) {
+                close();
+                throw translate(e);
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /**
+         * 转换SQLException，超时取消的语句转换为{@link QueryTimeoutException}
+         * <li>逐行读取时可能已不在设置超时时间的调用中，使用执行查询时的超时时间</li>
+         * @param e
+         * @return
+         */
+        private DataAccessException translate(SQLException e) {
+            if(QueryTimeoutJdbcTemplate.isTimeout(e, queryTimeout)) {
+                return new QueryTimeoutException(sql, queryTimeout, e);
+            }
+            return translator.translate(TASK, sql, e);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if(closed) {
+                return false;
+            }
+            try {
+                if(!rs.next()) {
+                    // 读取完所有行，提前释放连接
+                    close();
+                    return false;
+                }
+                action.accept(rowMapper.mapRow(rs, rowNum ++));
+                return true;
+            } catch (SQLException e) {
+                close();
+                throw translate(e);
+            } catch (RuntimeException | Error e) {
+                close();
+                throw e;
+            }
+        }
+
+        void close() {
+            if(closed) {
+                return ;
+            }
+            closed = true;
+            JdbcUtils.closeResultSet(rs);
+            JdbcUtils.closeStatement(ps);
+            DataSourceUtils.releaseConnection(con, dataSource);
+            rs = null;
+            ps = null;
+            con = null;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.jyoryo.entityjdbc.dao;
+
+/**
+ * 按分片键值选择分片的函数
+ * <p>同一分片键值必须始终返回同一分片，内置的函数见{@link ShardFunctions}。</p>
+ * <li>通过{@link ShardedJdbcDao}的构造方法设置</li>
+ * <li>分片键值为实体<code>@ShardKey</code>字段(没有时为主键)的列值，见{@link com.jyoryo.entityjdbc.JpaEntity#getShardKeyColumn()}</li>
+ * @author jyoryo
+ *
+ */
+public interface ShardFunction {
+    /**
+     * 选择分片
+     * @param shardKey   分片键值，不为null
+     * @param shardCount   分片数量
+     * @return   分片下标：[0, shardCount)
+     */
+    int shard(Object shardKey, int shardCount);
+}
@@ -0,0 +1,41 @@
+package com.jyoryo.entityjdbc.dao;
+
+import java.math.BigInteger;
+
+/**
+ * 内置的分片函数
+ * @author jyoryo
+ *
+ */
+public enum ShardFunctions implements ShardFunction {
+    /**
+     * 取模：整数分片键按数值取模，其他类型按hashCode取模
+     * <li>整数分片键连续时，数据在分片间均匀分布</li>
+     * <li>默认函数</li>
+     */
+    MOD {
+        @Override
+        public int shard(Object shardKey, int shardCount) {
+            if(shardKey instanceof Long || shardKey instanceof Integer || shardKey instanceof Short || shardKey instanceof Byte) {
+                return (int)Math.floorMod(((Number)shardKey).longValue(), (long)shardCount);
+            }
+            if(shardKey instanceof BigInteger) {
+                return ((BigInteger)shardKey).mod(BigInteger.valueOf(shardCount)).intValue();
+            }
+            return HASH.shard(shardKey, shardCount);
+        }
+    },
+    /**
+     * 哈希：按分片键的hashCode打散后取模
+     * <li>整数类型的分片键统一转换为long后计算，如：1与1L在同一分片，见{@link EntityCache}</li>
+     */
+    HASH {
+        @Override
+        public int shard(Object shardKey, int shardCount) {
+            int hash = EntityCache.key(shardKey).hashCode();
+            // 打散低位，与HashMap一致
+            hash ^= (hash >>> 16);
+            return Math.floorMod(hash, shardCount);
+        }
+    }
+}
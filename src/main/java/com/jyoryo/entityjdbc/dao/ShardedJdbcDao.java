@@ -0,0 +1,486 @@
+package com.jyoryo.entityjdbc.dao;
+
+import java.io.Closeable;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+
+import com.jyoryo.entityjdbc.JpaEntity;
+import com.jyoryo.entityjdbc.common.Assert;
+import com.jyoryo.entityjdbc.common.Numbers;
+import com.jyoryo.entityjdbc.common.Strings;
+import com.jyoryo.entityjdbc.common.collection.CollectionUtil;
+import com.jyoryo.entityjdbc.common.thread.ExecutorBuilder;
+import com.jyoryo.entityjdbc.common.thread.NamedThreadFactory;
+import com.jyoryo.entityjdbc.exception.DaoException;
+import com.jyoryo.entityjdbc.exception.PageException;
+import com.jyoryo.entityjdbc.metadata.ColumnMetaData;
+import com.jyoryo.entityjdbc.metadata.ColumnMetaType;
+import com.jyoryo.entityjdbc.support.Condition;
+import com.jyoryo.entityjdbc.support.Page;
+
+/**
+ * 分片的{@link JdbcDao}：一张表的数据按分片键分布在多个数据库中
+ * <p>每个分片为一个JdbcDao，按实体的分片键值通过{@link ShardFunction}选择分片。</p>
+ * <li>分片键为实体<code>@ShardKey</code>标记的字段，没有时为主键，见{@link com.jyoryo.entityjdbc.annotation.ShardKey}</li>
+ * <li>save、update按实体的分片键值写入对应的分片；主键应全局唯一，由应用生成或各分片的自增主键错开</li>
+ * <li>get按分片键值查询对应的分片；分片键不是主键且未提供分片键值时，查询所有分片</li>
+ * <li>query、queryPage在所有分片上并行执行后合并结果；按顺序合并时，各分片的sql须按同样的顺序ORDER BY</li>
+ * <li>并行的查询在线程池中执行，不参与调用线程的事务；需要在事务中查询时，通过{@link #shard(Object)}获取分片后直接调用</li>
+ * 例如：
+ * <pre>
+ * ShardedJdbcDao shardedDao = ShardedJdbcDao.create(Arrays.asList(jdbcDao0, jdbcDao1), ShardFunctions.MOD, 0);
+ * shardedDao.save(orderEntity, order);
+ * Page&lt;Order&gt; page = shardedDao.queryPage("$$", Order.class, Comparator.comparing(Order::getCreateTime).reversed(), false, 0, 20, condition);
+ * </pre>
+ * @author jyoryo
+ *
+ */
+public class ShardedJdbcDao implements Closeable {
+    private final List<JdbcDao> shards;
+    private final ShardFunction shardFunction;
+    private final ExecutorService executor;
+    /** 是否由当前对象创建线程池，关闭时需要关闭线程池 */
+    private final boolean ownExecutor;
+
+    /**
+     * 使用指定的线程池并行查询
+     * <li>线程池由调用方负责关闭</li>
+     * @param shards   各分片的JdbcDao，下标即分片下标
+     * @param shardFunction   为null时为{@link ShardFunctions#MOD}
+     * @param executor
+     */
+    public ShardedJdbcDao(List<JdbcDao> shards, ShardFunction shardFunction, ExecutorService executor) {
+        this(shards, shardFunction, executor, false);
+    }
+
+    private ShardedJdbcDao(List<JdbcDao> shards, ShardFunction shardFunction, ExecutorService executor, boolean ownExecutor) {
+        Assert.notNull(shards);
+        Assert.notNull(executor);
+        if(shards.isEmpty() || shards.contains(null)) {
+            throw new IllegalArgumentException("分片不能为空！");
+        }
+        this.shards = Collections.unmodifiableList(new ArrayList<JdbcDao>(shards));
+        this.shardFunction = (null == shardFunction) ? ShardFunctions.MOD : shardFunction;
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+    }
+
+    /**
+     * 创建固定线程数的ShardedJdbcDao
+     * <li>调用{@link #close()}关闭线程池</li>
+     * @param shards   各分片的JdbcDao，下标即分片下标
+     * @param shardFunction   为null时为{@link ShardFunctions#MOD}
+     * @param poolSize   线程数，小于等于0时为分片数
+     * @return
+     */
+    public static ShardedJdbcDao create(List<JdbcDao> shards, ShardFunction shardFunction, int poolSize) {
+        Assert.notNull(shards);
+        final int size = (poolSize <= 0) ? Math.max(shards.size(), 1) : poolSize;
+        ExecutorService executor = ExecutorBuilder.create()
+                .setCorePoolSize(size)
+                .setMaxPoolSize(size)
+                .setThreadFactory(new NamedThreadFactory("entityjdbc-shard-", true))
+                .build();
+        return new ShardedJdbcDao(shards, shardFunction, executor, true);
+    }
+
+    /**
+     * 各分片的JdbcDao
+     * @return
+     */
+    public List<JdbcDao> getShards() {
+        return shards;
+    }
+
+    /**
+     * 分片函数
+     * @return
+     */
+    public ShardFunction getShardFunction() {
+        return shardFunction;
+    }
+
+    /**
+     * 分片键值对应的分片下标
+     * @param shardKey
+     * @return
+     */
+    public int shardIndex(Object shardKey) {
+        if(null == shardKey) {
+            throw new IllegalArgumentException("分片键值不能为null！");
+        }
+        final int index = shardFunction.shard(shardKey, shards.size());
+        if(index < 0 || index >= shards.size()) {
+            throw new DaoException("分片函数返回的下标越界：{}，分片数：{}", index, shards.size());
+        }
+        return index;
+    }
+
+    /**
+     * 分片键值对应的分片
+     * @param shardKey
+     * @return
+     */
+    public JdbcDao shard(Object shardKey) {
+        return shards.get(shardIndex(shardKey));
+    }
+
+    /**
+     * 实体所在的分片
+     * @param jpaEntity
+     * @param target
+     * @return
+     */
+    public <T> JdbcDao shardOf(JpaEntity jpaEntity, T target) {
+        Assert.notNull(jpaEntity);
+        Assert.notNull(target);
+        ColumnMetaData shardKeyColumn = shardKeyColumn(jpaEntity);
+        Object shardKey = jpaEntity.columnValue(target, shardKeyColumn);
+        // 主键作为分片键时，0视为未设置
+        if(null == shardKey || (ColumnMetaType.ID == shardKeyColumn.getColumnType() && Numbers.isEmptyNumber(shardKey))) {
+            throw new IllegalArgumentException(Strings.format("{}的分片键{}不能为null！", jpaEntity.getTableName(), shardKeyColumn.getFieldName()));
+        }
+        return shard(shardKey);
+    }
+
+    /**
+     * 保存实体到分片键值对应的分片
+     * <li>已设置主键值时，按设置的主键写入</li>
+     * <li>未设置主键值时，由分片数据库生成主键；分片键为主键时须先设置主键值</li>
+     * @param jpaEntity
+     * @param target
+     * @return   主键值
+     */
+    public <T> Serializable save(JpaEntity jpaEntity, T target) {
+        final JdbcDao shard = shardOf(jpaEntity, target);
+        final Object id = jpaEntity.getIdValue(target);
+        if(null == id || Numbers.isEmptyNumber(id)) {
+            return shard.save(jpaEntity, target);
+        }
+        shard.saveNotReturnKey(jpaEntity, target);
+        return (Serializable)id;
+    }
+
+    /**
+     * 更新分片键值对应分片中的实体
+     * @param jpaEntity
+     * @param target
+     * @param columns   更新的列，为空时见{@link JdbcDao#update(JpaEntity, Object, String...)}
+     * @return
+     */
+    public <T> int update(JpaEntity jpaEntity, T target, String... columns) {
+        return shardOf(jpaEntity, target).update(jpaEntity, target, columns);
+    }
+
+    /**
+     * 按主键获取实体
+     * <li>分片键为主键时只查询对应的分片，否则查询所有分片</li>
+     * @param entityClass
+     * @param id
+     * @return   不存在时返回null
+     */
+    public <T> T get(final Class<T> entityClass, final Serializable id) {
+        if(null == id) {
+            return null;
+        }
+        final JpaEntity jpaEntity = shards.get(0).jpaEntity(entityClass);
+        if(shardKeyColumn(jpaEntity) == jpaEntity.getIdColumn()) {
+            return get(shard(id), jpaEntity, entityClass, id);
+        }
+        for(T target : scatter(shard -> get(shard, jpaEntity, entityClass, id))) {
+            if(null != target) {
+                return target;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 按分片键值、主键获取实体，只查询对应的分片
+     * @param entityClass
+     * @param shardKey   分片键值
+     * @param id
+     * @return   不存在时返回null
+     */
+    public <T> T get(Class<T> entityClass, Object shardKey, Serializable id) {
+        if(null == id) {
+            return null;
+        }
+        final JdbcDao shard = shard(shardKey);
+        return get(shard, shard.jpaEntity(entityClass), entityClass, id);
+    }
+
+    private static <T> T get(JdbcDao shard, JpaEntity jpaEntity, Class<T> entityClass, Serializable id) {
+        if(!jpaEntity.existId()) {
+            throw new UnsupportedOperationException(Strings.format("类{}未设置主键，不支持该操作！", entityClass));
+        }
+        return shard.loadByIds(jpaEntity, entityClass, Collections.singletonList(id), shard.getEntityCache(entityClass)).get(EntityCache.key(id));
+    }
+
+    /**
+     * 在所有分片上查询，按分片顺序拼接结果
+     * @param sqlOrId
+     * @param targetClass
+     * @param condition
+     * @return
+     */
+    public <T> List<T> query(String sqlOrId, final Class<T> targetClass, final Condition condition) {
+        final String sql = resolveSqlId(sqlOrId);
+        return concat(scatter(shard -> shard.query(sql, targetClass, condition)));
+    }
+
+    /**
+     * 在所有分片上查询，按分片顺序拼接结果
+     * @param sqlOrId
+     * @param targetClass
+     * @param args
+     * @return
+     */
+    public <T> List<T> query(String sqlOrId, final Class<T> targetClass, final Object... args) {
+        final String sql = resolveSqlId(sqlOrId);
+        return concat(scatter(shard -> shard.query(sql, targetClass, args)));
+    }
+
+    /**
+     * 在所有分片上查询，按顺序归并结果
+     * @param sqlOrId   各分片的结果须按comparator的顺序ORDER BY
+     * @param targetClass
+     * @param comparator
+     * @param condition
+     * @return
+     */
+    public <T> List<T> query(String sqlOrId, final Class<T> targetClass, Comparator<? super T> comparator, final Condition condition) {
+        Assert.notNull(comparator);
+        final String sql = resolveSqlId(sqlOrId);
+        return merge(scatter(shard -> shard.query(sql, targetClass, condition)), comparator, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 在所有分片上查询，按顺序归并结果
+     * @param sqlOrId   各分片的结果须按comparator的顺序ORDER BY
+     * @param targetClass
+     * @param comparator
+     * @param args
+     * @return
+     */
+    public <T> List<T> query(String sqlOrId, final Class<T> targetClass, Comparator<? super T> comparator, final Object... args) {
+        Assert.notNull(comparator);
+        final String sql = resolveSqlId(sqlOrId);
+        return merge(scatter(shard -> shard.query(sql, targetClass, args)), comparator, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 在所有分片上分页查询，按顺序归并
+     * <li>每个分片查询前start + limit条，归并后取[start, start + limit)，偏移量越大，每个分片读取的行越多</li>
+     * <li>非流式分页的总记录数为各分片总记录数之和</li>
+     * @param sqlOrId   各分片的结果须按comparator的顺序ORDER BY
+     * @param targetClass
+     * @param comparator
+     * @param flowMode   是否以流式进行分页(流式分页，不返回总记录数和总页数，仅能判断是否存在下一页。)
+     * @param start   分页查询起始的偏移量
+     * @param limit   分页的每页数量
+     * @param condition
+     * @return
+     */
+    public <T> Page<T> queryPage(String sqlOrId, final Class<T> targetClass, Comparator<? super T> comparator, final boolean flowMode, int start, int limit, final Condition condition) {
+        final String sql = resolveSqlId(sqlOrId);
+        final int window = window(start, limit);
+        return mergePage(scatter(shard -> shard.queryPage(sql, targetClass, flowMode, 0, window, condition)), comparator, flowMode, start, limit);
+    }
+
+    /**
+     * 在所有分片上分页查询，按顺序归并，见{@link #queryPage(String, Class, Comparator, boolean, int, int, Condition)}
+     * @param sqlOrId   各分片的结果须按comparator的顺序ORDER BY
+     * @param targetClass
+     * @param comparator
+     * @param flowMode   是否以流式进行分页(流式分页，不返回总记录数和总页数，仅能判断是否存在下一页。)
+     * @param start   分页查询起始的偏移量
+     * @param limit   分页的每页数量
+     * @param args
+     * @return
+     */
+    public <T> Page<T> queryPage(String sqlOrId, final Class<T> targetClass, Comparator<? super T> comparator, final boolean flowMode, int start, int limit, final Object... args) {
+        final String sql = resolveSqlId(sqlOrId);
+        final int window = window(start, limit);
+        return mergePage(scatter(shard -> shard.queryPage(sql, targetClass, flowMode, 0, window, args)), comparator, flowMode, start, limit);
+    }
+
+    /**
+     * 关闭由当前对象创建的线程池
+     */
+    @Override
+    public void close() {
+        if(ownExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    private static ColumnMetaData shardKeyColumn(JpaEntity jpaEntity) {
+        ColumnMetaData shardKeyColumn = jpaEntity.getShardKeyColumn();
+        if(null == shardKeyColumn) {
+            throw new UnsupportedOperationException(Strings.format("{}未设置@ShardKey或主键，无法分片！", jpaEntity.getTableName()));
+        }
+        return shardKeyColumn;
+    }
+
+    /**
+     * 在调用线程中解析模板id，与直接调用JdbcDao一致
+     * @param sqlOrId
+     * @return
+     */
+    private String resolveSqlId(String sqlOrId) {
+        return shards.get(0).resolveSqlId(sqlOrId);
+    }
+
+    /**
+     * 在所有分片上并行执行，第一个分片在调用线程中执行
+     * @param action
+     * @return   按分片顺序的结果
+     */
+    private <R> List<R> scatter(final Function<JdbcDao, R> action) {
+        final int size = shards.size();
+        List<CompletableFuture<R>> futures = new ArrayList<>(size);
+        for(int i = 1; i < size; i ++) {
+            final JdbcDao shard = shards.get(i);
+            futures.add(CompletableFuture.supplyAsync(() -> action.apply(shard), executor));
+        }
+        List<R> results = new ArrayList<>(size);
+        try {
+            results.add(action.apply(shards.get(0)));
+            for(CompletableFuture<R> future : futures) {
+                results.add(future.join());
+            }
+        } catch (RuntimeException e) {
+            for(CompletableFuture<R> future : futures) {
+                future.cancel(true);
+            }
+            throw unwrap(e);
+        }
+        return results;
+    }
+
+    private static RuntimeException unwrap(RuntimeException e) {
+        if(!(e instanceof CompletionException) || null == e.getCause()) {
+            return e;
+        }
+        Throwable cause = e.getCause();
+        if(cause instanceof RuntimeException) {
+            return (RuntimeException)cause;
+        }
+        if(cause instanceof Error) {
+            throw (Error)cause;
+        }
+        return new DaoException(cause);
+    }
+
+    private static int window(int start, int limit) {
+        if(limit <= 0) {
+            throw new PageException("每页数量必须大于0！");
+        }
+        start = Math.max(start, 0);
+        if(start > Integer.MAX_VALUE - limit) {
+            throw new PageException("分页偏移量过大：{}", start);
+        }
+        return start + limit;
+    }
+
+    private static <T> List<T> concat(List<List<T>> results) {
+        int size = 0;
+        for(List<T> result : results) {
+            size += (null == result) ? 0 : result.size();
+        }
+        List<T> items = new ArrayList<>(size);
+        for(List<T> result : results) {
+            if(null != result) {
+                items.addAll(result);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * 归并各分片已排序的结果
+     * @param results
+     * @param comparator
+     * @param maxSize   最多归并的数量
+     * @return
+     */
+    private static <T> List<T> merge(List<List<T>> results, final Comparator<? super T> comparator, int maxSize) {
+        PriorityQueue<Cursor<T>> queue = new PriorityQueue<>(Math.max(results.size(), 1), (a, b) -> comparator.compare(a.current(), b.current()));
+        int size = 0;
+        for(List<T> result : results) {
+            if(null != result && !result.isEmpty()) {
+                queue.add(new Cursor<T>(result));
+                size += result.size();
+            }
+        }
+        List<T> items = new ArrayList<>(Math.min(size, maxSize));
+        while(items.size() < maxSize && !queue.isEmpty()) {
+            Cursor<T> cursor = queue.poll();
+            items.add(cursor.current());
+            if(cursor.next()) {
+                queue.add(cursor);
+            }
+        }
+        return items;
+    }
+
+    private static <T> Page<T> mergePage(List<Page<T>> pages, Comparator<? super T> comparator, boolean flowMode, int start, int limit) {
+        Assert.notNull(comparator);
+        start = Math.max(start, 0);
+        List<List<T>> results = new ArrayList<>(pages.size());
+        int totalCount = 0, fetched = 0;
+        boolean hasNext = false, estimated = false, stale = false;
+        for(Page<T> shardPage : pages) {
+            List<T> items = CollectionUtil.emptyListIfNull(shardPage.getItems());
+            results.add(items);
+            fetched += items.size();
+            hasNext |= shardPage.isHasNext();
+            if(!flowMode) {
+                totalCount += shardPage.getTotalCount();
+                estimated |= shardPage.isTotalCountEstimated();
+                stale |= shardPage.isTotalCountStale();
+            }
+        }
+        final int window = start + limit;
+        List<T> merged = merge(results, comparator, window);
+        Page<T> page = new Page<T>(flowMode, start / limit + 1, limit);
+        page.setItems((merged.size() > start) ? new ArrayList<>(merged.subList(start, merged.size())) : new ArrayList<T>(0));
+        if(flowMode) {
+            page.setHasNext(hasNext || fetched > window);
+        } else {
+            page.setTotalCount(totalCount);
+            page.setTotalCountEstimated(estimated);
+            page.setTotalCountStale(stale);
+        }
+        return page;
+    }
+
+    /**
+     * 归并时单个分片结果的读取位置
+     */
+    private static final class Cursor<T> {
+        private final List<T> items;
+        private int index;
+
+        Cursor(List<T> items) {
+            this.items = items;
+        }
+
+        T current() {
+            return items.get(index);
+        }
+
+        boolean next() {
+            return ++ index < items.size();
+        }
+    }
+}
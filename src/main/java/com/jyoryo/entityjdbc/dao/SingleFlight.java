@@ -0,0 +1,149 @@
+package com.jyoryo.entityjdbc.dao;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import com.jyoryo.entityjdbc.exception.DaoException;
+
+/**
+ * 合并相同的并发查询：同一时刻相同key的查询只执行一次，结果交给所有等待的调用方
+ * <li>第一个调用方执行查询，执行期间到达的相同key的调用方等待其结果；执行结束后，之后的调用重新执行</li>
+ * <li>执行失败时，等待的调用方抛出相同的异常</li>
+ * <li>执行的调用方得到执行结果本身；执行结果经copier复制一份后交给等待方，每个等待的调用方再各自复制一份，互不影响</li>
+ * <li>等待超过{@link #getWaitMillis()}时，不再等待，由调用方自己执行查询</li>
+ * <li>key的生成见{@link QueryCache#key(String, Object)}</li>
+ * @author jyoryo
+ *
+ */
+public final class SingleFlight {
+    /**
+     * 执行中的查询
+     */
+    private final ConcurrentMap<Object, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+    private final long waitMillis;
+    /** 执行数 */
+    private final LongAdder executionCount = new LongAdder();
+    /** 合并数：使用其他调用方执行结果的调用数 */
+    private final LongAdder collapsedCount = new LongAdder();
+    /** 等待超时，自己执行的调用数 */
+    private final LongAdder waitTimeoutCount = new LongAdder();
+
+    /**
+     * @param waitMillis   等待相同查询结果的最长时间，单位毫秒，必须大于0
+     */
+    public SingleFlight(long waitMillis) {
+        if(waitMillis <= 0) {
+            throw new IllegalArgumentException("等待时间必须大于0！");
+        }
+        this.waitMillis = waitMillis;
+    }
+
+    /**
+     * 执行查询，存在相同key执行中的查询时等待其结果
+     * @param key
+     * @param loader   执行查询
+     * @param copier   复制执行结果，如复制列表和其中的实体
+     * @return
+     */
+    Object execute(Object key, Supplier<?> loader, UnaryOperator<Object> copier) {
+        final CompletableFuture<Object> flight = new CompletableFuture<>();
+        final CompletableFuture<Object> existing = flights.putIfAbsent(key, flight);
+        if(null != existing) {
+            return await(existing, loader, copier);
+        }
+        executionCount.increment();
+        try {
+            final Object value = loader.get();
+            flights.remove(key, flight);
+            // 返回前复制，执行的调用方之后修改结果不影响等待方
+            flight.complete(copier.apply(value));
+            return value;
+        } catch (RuntimeException | Error e) {
+            flights.remove(key, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private Object await(CompletableFuture<Object> flight, Supplier<?> loader, UnaryOperator<Object> copier) {
+        final Object value;
+        try {
+            value = flight.get(waitMillis, TimeUnit.MILLISECONDS);
+            collapsedCount.increment();
+        } catch (TimeoutException e) {
+            waitTimeoutCount.increment();
+            executionCount.increment();
+            return loader.get();
+        } catch (ExecutionException e) {
+            collapsedCount.increment();
+            final Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if(cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new DaoException(cause, "合并的查询执行失败");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DaoException(e, "等待合并的查询结果时被中断");
+        }
+        return copier.apply(value);
+    }
+
+    /**
+     * 等待相同查询结果的最长时间，单位毫秒
+     * @return
+     */
+    public long getWaitMillis() {
+        return waitMillis;
+    }
+
+    /**
+     * 当前执行中的查询数
+     * @return
+     */
+    public int getInFlight() {
+        return flights.size();
+    }
+
+    /**
+     * 执行数：实际执行查询的调用数，包含等待超时后自己执行的
+     * @return
+     */
+    public long getExecutionCount() {
+        return executionCount.sum();
+    }
+
+    /**
+     * 合并数：未执行查询，使用其他调用方执行结果(包括异常)的调用数
+     * @return
+     */
+    public long getCollapsedCount() {
+        return collapsedCount.sum();
+    }
+
+    /**
+     * 等待超时后自己执行查询的调用数
+     * @return
+     */
+    public long getWaitTimeoutCount() {
+        return waitTimeoutCount.sum();
+    }
+
+    /**
+     * 重置执行数、合并数、等待超时数
+     */
+    public void resetStatistics() {
+        executionCount.reset();
+        collapsedCount.reset();
+        waitTimeoutCount.reset();
+    }
+}
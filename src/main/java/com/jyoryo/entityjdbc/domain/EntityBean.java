@@ -12,9 +12,24 @@ import com.jyoryo.entityjdbc.common.BaseDo;
  * @auther: jyoryo
  */
 @MappedSuperclass
-public class EntityBean extends BaseDo {
+public class EntityBean extends BaseDo implements Snapshotable {
     private static final long serialVersionUID = 5536205024042485643L;
 
+    /**
+     * 加载时的数据快照，用于脏数据跟踪
+     */
+    private transient Object[] snapshotValues;
+
+    @Override
+    public Object[] snapshotValues() {
+        return snapshotValues;
+    }
+
+    @Override
+    public void snapshotValues(Object[] snapshotValues) {
+        this.snapshotValues = snapshotValues;
+    }
+
     @Override
     public String toString() {
         return ToStringBuilder.reflectionToString(this, ToStringStyle.MULTI_LINE_STYLE);
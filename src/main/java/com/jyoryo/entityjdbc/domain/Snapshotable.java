@@ -0,0 +1,23 @@
+package com.jyoryo.entityjdbc.domain;
+
+/**
+ * 支持记录加载时数据快照的实体
+ * <p>开启脏数据跟踪后，JpaEntityRowMapper在加载实体时记录各列的值，更新实体时只写入发生变化的列。</p>
+ * <li>快照为按列位置索引的数组，见{@link com.jyoryo.entityjdbc.JpaEntity#snapshot(Object)}</li>
+ * <li>实现类应将快照保存在transient字段中，不作为实体的数据</li>
+ * @author jyoryo
+ *
+ */
+public interface Snapshotable {
+    /**
+     * 获取加载时的数据快照
+     * @return   未记录快照时返回null
+     */
+    Object[] snapshotValues();
+
+    /**
+     * 记录数据快照
+     * @param snapshotValues   为null时清除快照
+     */
+    void snapshotValues(Object[] snapshotValues);
+}
@@ -0,0 +1,38 @@
+package com.jyoryo.entityjdbc.exception;
+
+/**
+ * 查询超时异常：语句执行超过设置的超时时间，已被数据库驱动取消
+ * <li>超时时间见JdbcDao的setQueryTimeout、withQueryTimeout，以及sql模板的timeout属性</li>
+ * @author jyoryo
+ *
+ */
+public class QueryTimeoutException extends DaoException {
+    private static final long serialVersionUID = -4017360786521539815L;
+
+    /**
+     * 执行的sql
+     */
+    private final String sql;
+    /**
+     * 超时时间，单位秒
+     */
+    private final int timeoutSeconds;
+
+    public QueryTimeoutException(String sql, int timeoutSeconds, Throwable throwable) {
+        super(throwable, "查询超过{}秒，已取消：{}", timeoutSeconds, sql);
+        this.sql = sql;
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * 超时时间，单位秒；0表示未设置超时时间，由数据库或事务超时取消
+     * @return
+     */
+    public int getTimeoutSeconds() {
+        return timeoutSeconds;
+    }
+}
@@ -3,11 +3,13 @@ package com.jyoryo.entityjdbc.mapper;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Map;
+import java.util.function.BiFunction;
 
 import org.springframework.beans.BeanUtils;
 import org.springframework.jdbc.core.RowMapper;
 
 import com.jyoryo.entityjdbc.JpaEntity;
+import com.jyoryo.entityjdbc.domain.Snapshotable;
 import com.jyoryo.entityjdbc.metadata.ColumnMetaData;
 import com.jyoryo.entityjdbc.utils.JpaUtils;
 
@@ -21,10 +23,39 @@ import com.jyoryo.entityjdbc.utils.JpaUtils;
 public class JpaEntityRowMapper<T> implements RowMapper<T> {
 	private Class<T> entityClass;
 	private JpaEntity jpaEntity;
+	/**
+	 * 是否记录加载时的数据快照，仅对实现{@link Snapshotable}的实体有效
+	 */
+	private boolean snapshot;
+	/**
+	 * 按关联实体类、主键创建<code>@JoinColumn</code>字段的关联对象，为null时创建只有主键的关联对象
+	 */
+	private BiFunction<Class<?>, Object, Object> associationFactory;
 	
 	public JpaEntityRowMapper(Class<T> entityClass) {
+		this(entityClass, false);
+	}
+	
+	/**
+	 * 
+	 * @param entityClass
+	 * @param snapshot   是否记录加载时的数据快照，用于更新时只写入变化的列
+	 */
+	public JpaEntityRowMapper(Class<T> entityClass, boolean snapshot) {
+		this(entityClass, snapshot, null);
+	}
+	
+	/**
+	 * 
+	 * @param entityClass
+	 * @param snapshot   是否记录加载时的数据快照，用于更新时只写入变化的列
+	 * @param associationFactory   按关联实体类、主键创建<code>@JoinColumn</code>字段的关联对象，如：延迟加载代理
+	 */
+	public JpaEntityRowMapper(Class<T> entityClass, boolean snapshot, BiFunction<Class<?>, Object, Object> associationFactory) {
 		this.entityClass = entityClass;
 		this.jpaEntity = new JpaEntity(entityClass);
+		this.snapshot = snapshot && Snapshotable.class.isAssignableFrom(entityClass);
+		this.associationFactory = associationFactory;
 	}
 
 	@Override
@@ -34,7 +65,10 @@ public class JpaEntityRowMapper<T> implements RowMapper<T> {
 		ColumnMetaData columnMetaData;
 		for(String columnName : columnFieldMap.keySet()) {
 			columnMetaData = columnFieldMap.get(columnName);
-			JpaUtils.writeField(target, columnMetaData.getField(), rs, columnName);
+			JpaUtils.writeField(target, columnMetaData.getField(), rs, columnName, associationFactory);
+		}
+		if(snapshot) {
+			((Snapshotable)target).snapshotValues(jpaEntity.snapshot(target));
 		}
 		return target;
 	}
@@ -20,6 +20,8 @@ public class ColumnMetaData extends BaseDo {
 	private String columnName;
 	// 注解数据库列类型
 	private ColumnMetaType columnType;
+	// 列在实体所有列中的位置，从0开始
+	private int index;
 	
 	
 	public ColumnMetaData() {
@@ -95,4 +97,18 @@ public class ColumnMetaData extends BaseDo {
 	public void setColumnType(ColumnMetaType columnType) {
 		this.columnType = columnType;
 	}
+	/**
+	 * 获取列在实体所有列中的位置，从0开始
+	 * @return
+	 */
+	public int getIndex() {
+		return index;
+	}
+	/**
+	 * 设置列在实体所有列中的位置
+	 * @param index
+	 */
+	public void setIndex(int index) {
+		this.index = index;
+	}
 }
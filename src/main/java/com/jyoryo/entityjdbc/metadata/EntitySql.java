@@ -0,0 +1,176 @@
+package com.jyoryo.entityjdbc.metadata;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.jyoryo.entityjdbc.JpaEntity;
+import com.jyoryo.entityjdbc.common.Chars;
+import com.jyoryo.entityjdbc.common.Strings;
+
+/**
+ * 实体增删改查的预生成sql
+ * <li>按主键查询、查询所有、按主键删除的sql在创建时生成</li>
+ * <li>UPDATE按更新列的集合缓存，以列位置组成的位掩码作为缓存key，列的先后顺序不影响缓存</li>
+ * @author jyoryo
+ *
+ */
+public final class EntitySql {
+	/**
+	 * 列数不超过该值时，位掩码使用long
+	 */
+	private static final int LONG_MASK_COLUMNS = Long.SIZE;
+
+	private final String tableName;
+	private final String idColumnName;
+	private final ColumnMetaData[] columns;
+	private final Map<String, ColumnMetaData> columnFieldMap;
+
+	private final String selectAllSql;
+	private final String selectByIdSql;
+	private final String deleteByIdSql;
+	private final String deleteByIdsPrefix;
+	private final String selectByIdsPrefix;
+	/**
+	 * 按更新列位掩码缓存的UPDATE语句
+	 */
+	private final ConcurrentMap<Object, String> updateSqlCache = new ConcurrentHashMap<>();
+
+	public EntitySql(JpaEntity jpaEntity) {
+		this.tableName = jpaEntity.getTableName();
+		this.idColumnName = jpaEntity.getIdColumnName();
+		this.columns = jpaEntity.getColumns();
+		this.columnFieldMap = jpaEntity.getColumnFieldMap();
+		this.selectAllSql = "SELECT * FROM " + tableName;
+		if(jpaEntity.existId()) {
+			this.selectByIdSql = Strings.format("SELECT * FROM {} WHERE {} = ?", tableName, idColumnName);
+			this.deleteByIdSql = Strings.format("DELETE FROM {} WHERE {} = ?", tableName, idColumnName);
+			this.deleteByIdsPrefix = Strings.format("DELETE FROM {} WHERE {} IN ", tableName, idColumnName);
+			this.selectByIdsPrefix = Strings.format("SELECT * FROM {} WHERE {} IN ", tableName, idColumnName);
+		} else {
+			this.selectByIdSql = null;
+			this.deleteByIdSql = null;
+			this.deleteByIdsPrefix = null;
+			this.selectByIdsPrefix = null;
+		}
+	}
+
+	/**
+	 * 查询所有记录：SELECT * FROM table
+	 * @return
+	 */
+	public String getSelectAllSql() {
+		return selectAllSql;
+	}
+
+	/**
+	 * 按主键查询：SELECT * FROM table WHERE id = ?
+	 * @return   实体不存在主键时返回null
+	 */
+	public String getSelectByIdSql() {
+		return selectByIdSql;
+	}
+
+	/**
+	 * 按主键删除：DELETE FROM table WHERE id = ?
+	 * @return   实体不存在主键时返回null
+	 */
+	public String getDeleteByIdSql() {
+		return deleteByIdSql;
+	}
+
+	/**
+	 * 按主键批量查询的前缀：SELECT * FROM table WHERE id IN
+	 * @return   实体不存在主键时返回null
+	 */
+	public String getSelectByIdsPrefix() {
+		return selectByIdsPrefix;
+	}
+
+	/**
+	 * 按主键批量删除的前缀：DELETE FROM table WHERE id IN
+	 * @return   实体不存在主键时返回null
+	 */
+	public String getDeleteByIdsPrefix() {
+		return deleteByIdsPrefix;
+	}
+
+	/**
+	 * 获取按主键更新指定列的sql，参数为以列名命名的具名参数
+	 * <li>如：UPDATE table SET c1=:c1,c2=:c2 WHERE id=:id，SET中的列按字段声明顺序排列</li>
+	 * @param updateColumns   更新的列，须为实体的列，不能为空
+	 * @return
+	 */
+	public String updateSql(Collection<String> updateColumns) {
+		Object key = columnMask(updateColumns);
+		String sql = updateSqlCache.get(key);
+		if(null == sql) {
+			sql = buildUpdateSql(key);
+			String existSql = updateSqlCache.putIfAbsent(key, sql);
+			if(null != existSql) {
+				sql = existSql;
+			}
+		}
+		return sql;
+	}
+
+	/**
+	 * 已缓存的UPDATE语句数量
+	 * @return
+	 */
+	public int getUpdateSqlCacheSize() {
+		return updateSqlCache.size();
+	}
+
+	/**
+	 * 计算列集合的位掩码：列数不超过64时为Long，否则为BitSet
+	 * @param updateColumns
+	 * @return
+	 */
+	private Object columnMask(Collection<String> updateColumns) {
+		if(null == updateColumns || updateColumns.isEmpty()) {
+			throw new IllegalArgumentException("更新列不能为空！");
+		}
+		if(columns.length <= LONG_MASK_COLUMNS) {
+			long mask = 0L;
+			for(String column : updateColumns) {
+				mask |= 1L << columnIndex(column);
+			}
+			return mask;
+		}
+		BitSet mask = new BitSet(columns.length);
+		for(String column : updateColumns) {
+			mask.set(columnIndex(column));
+		}
+		return mask;
+	}
+
+	private int columnIndex(String column) {
+		ColumnMetaData columnMetaData = columnFieldMap.get(column);
+		if(null == columnMetaData) {
+			throw new IllegalArgumentException(Strings.format("{}不存在列：{}", tableName, column));
+		}
+		return columnMetaData.getIndex();
+	}
+
+	private String buildUpdateSql(Object mask) {
+		StringBuilder sqlBuilder = new StringBuilder()
+				.append("UPDATE ")
+				.append(tableName)
+				.append(" SET ");
+		for(ColumnMetaData columnMetaData : columns) {
+			final int index = columnMetaData.getIndex();
+			boolean selected = (mask instanceof BitSet) ? ((BitSet)mask).get(index) : 0L != (((Long)mask) & (1L << index));
+			if(!selected) {
+				continue ;
+			}
+			final String column = columnMetaData.getColumnName();
+			sqlBuilder.append(column).append("=:").append(column).append(Chars.COMMA);
+		}
+		sqlBuilder.deleteCharAt(sqlBuilder.length() - 1);
+		sqlBuilder.append(" WHERE ").append(idColumnName).append("=:").append(idColumnName);
+		return sqlBuilder.toString();
+	}
+}
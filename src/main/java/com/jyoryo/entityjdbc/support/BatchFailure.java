@@ -0,0 +1,68 @@
+package com.jyoryo.entityjdbc.support;
+
+import com.jyoryo.entityjdbc.common.BaseDo;
+
+/**
+ * 批量操作中执行失败的批次
+ * @author jyoryo
+ *
+ */
+public class BatchFailure extends BaseDo {
+    private static final long serialVersionUID = 4619807390551247719L;
+
+    /**
+     * 批次序号，从0开始
+     */
+    private final int chunkIndex;
+    /**
+     * 批次第一条记录在全部数据中的位置，从0开始
+     */
+    private final long offset;
+    /**
+     * 批次包含的记录数
+     */
+    private final int rows;
+    /**
+     * 失败原因
+     */
+    private final Throwable cause;
+
+    public BatchFailure(int chunkIndex, long offset, int rows, Throwable cause) {
+        this.chunkIndex = chunkIndex;
+        this.offset = offset;
+        this.rows = rows;
+        this.cause = cause;
+    }
+
+    /**
+     * 批次序号，从0开始
+     * @return
+     */
+    public int getChunkIndex() {
+        return chunkIndex;
+    }
+
+    /**
+     * 批次第一条记录在全部数据中的位置，从0开始
+     * @return
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * 批次包含的记录数
+     * @return
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * 失败原因
+     * @return
+     */
+    public Throwable getCause() {
+        return cause;
+    }
+}
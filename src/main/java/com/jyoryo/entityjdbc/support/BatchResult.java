@@ -0,0 +1,153 @@
+package com.jyoryo.entityjdbc.support;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.jyoryo.entityjdbc.common.BaseDo;
+
+/**
+ * 批量操作的汇总结果
+ * <p>用于大批量数据处理，只记录汇总数量，不保留每条记录的结果。</p>
+ * @author jyoryo
+ *
+ */
+public class BatchResult extends BaseDo {
+    private static final long serialVersionUID = -3820415874291153371L;
+
+    /**
+     * 处理的记录数
+     */
+    private long rows;
+    /**
+     * 影响的行数
+     */
+    private long affectedRows;
+    /**
+     * 无法确定影响行数的记录数，即JDBC返回{@link Statement#SUCCESS_NO_INFO}
+     */
+    private long unknownRows;
+    /**
+     * 执行的批次数
+     */
+    private int batches;
+    /**
+     * 执行失败的批次
+     */
+    private final List<BatchFailure> failures = new ArrayList<>();
+
+    public BatchResult() {
+        super();
+    }
+
+    /**
+     * 累加一个批次的执行结果
+     * @param batchValues   JDBC批处理返回的每条记录的影响行数
+     * @return
+     */
+    public BatchResult addBatch(int[] batchValues) {
+        batches ++;
+        if(null == batchValues) {
+            return this;
+        }
+        rows += batchValues.length;
+        for(int value : batchValues) {
+            if(value >= 0) {
+                affectedRows += value;
+            } else if(Statement.SUCCESS_NO_INFO == value) {
+                unknownRows ++;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * 合并另一个结果
+     * @param other
+     * @return
+     */
+    public BatchResult merge(BatchResult other) {
+        if(null == other) {
+            return this;
+        }
+        rows += other.rows;
+        affectedRows += other.affectedRows;
+        unknownRows += other.unknownRows;
+        batches += other.batches;
+        failures.addAll(other.failures);
+        return this;
+    }
+
+    /**
+     * 记录执行失败的批次
+     * @param failure
+     * @return
+     */
+    public BatchResult addFailure(BatchFailure failure) {
+        if(null != failure) {
+            failures.add(failure);
+        }
+        return this;
+    }
+
+    /**
+     * 执行失败的批次
+     * @return
+     */
+    public List<BatchFailure> getFailures() {
+        return Collections.unmodifiableList(failures);
+    }
+
+    /**
+     * 是否所有批次都执行成功
+     * @return
+     */
+    public boolean isSuccess() {
+        return failures.isEmpty();
+    }
+
+    /**
+     * 执行失败的记录数
+     * @return
+     */
+    public long getFailedRows() {
+        long failedRows = 0;
+        for(BatchFailure failure : failures) {
+            failedRows += failure.getRows();
+        }
+        return failedRows;
+    }
+
+    /**
+     * 处理的记录数
+     * @return
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * 影响的行数
+     * @return
+     */
+    public long getAffectedRows() {
+        return affectedRows;
+    }
+
+    /**
+     * 无法确定影响行数的记录数
+     * @return
+     */
+    public long getUnknownRows() {
+        return unknownRows;
+    }
+
+    /**
+     * 执行的批次数
+     * @return
+     */
+    public int getBatches() {
+        return batches;
+    }
+}
@@ -0,0 +1,117 @@
+package com.jyoryo.entityjdbc.support;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+import com.jyoryo.entityjdbc.common.Chars;
+import com.jyoryo.entityjdbc.common.Strings;
+import com.jyoryo.entityjdbc.common.log.Logs;
+import com.jyoryo.entityjdbc.utils.Jdbcs;
+
+/**
+ * 数据库方言
+ * <li>用于生成不同数据库特有的sql</li>
+ * @author jyoryo
+ *
+ */
+public enum Dialect {
+    /**
+     * MySQL、MariaDB
+     */
+    MYSQL {
+        @Override
+        public String upsertSql(String tableName, String[] columns, String idColumnName) {
+            StringBuilder sqlBuilder = new StringBuilder("INSERT INTO ").append(tableName)
+                    .append(" (").append(String.join(String.valueOf(Chars.COMMA), columns)).append(") VALUES ")
+                    .append(Jdbcs.inPlaceholders(columns.length))
+                    .append(" ON DUPLICATE KEY UPDATE ");
+            boolean first = true;
+            for(String column : columns) {
+                if(Strings.equalsIgnoreCase(idColumnName, column)) {
+                    continue ;
+                }
+                if(!first) {
+                    sqlBuilder.append(Chars.COMMA);
+                }
+                sqlBuilder.append(column).append("=VALUES(").append(column).append(')');
+                first = false;
+            }
+            // 只有主键列
+            if(first) {
+                sqlBuilder.append(idColumnName).append('=').append(idColumnName);
+            }
+            return sqlBuilder.toString();
+        }
+    },
+    /**
+     * H2
+     */
+    H2 {
+        @Override
+        public String upsertSql(String tableName, String[] columns, String idColumnName) {
+            return new StringBuilder("MERGE INTO ").append(tableName)
+                    .append(" (").append(String.join(String.valueOf(Chars.COMMA), columns)).append(") KEY (")
+                    .append(idColumnName).append(") VALUES ")
+                    .append(Jdbcs.inPlaceholders(columns.length))
+                    .toString();
+        }
+    },
+    /**
+     * 其他数据库，不支持方言相关的操作
+     */
+    OTHER;
+
+    /**
+     * 是否支持单条语句的插入或更新
+     * @return
+     */
+    public boolean supportsUpsert() {
+        return this != OTHER;
+    }
+
+    /**
+     * 生成按主键插入或更新的sql，参数顺序与columns一致
+     * @param tableName   表名
+     * @param columns   写入的列，须包含主键列
+     * @param idColumnName   主键列
+     * @return
+     */
+    public String upsertSql(String tableName, String[] columns, String idColumnName) {
+        throw new UnsupportedOperationException(Strings.format("数据库方言{}不支持插入或更新操作！", this));
+    }
+
+    /**
+     * 根据数据库产品名称获取方言
+     * @param databaseProductName
+     * @return
+     */
+    public static Dialect of(String databaseProductName) {
+        if(Strings.containsIgnoreCase(databaseProductName, "mysql") || Strings.containsIgnoreCase(databaseProductName, "mariadb")) {
+            return MYSQL;
+        }
+        if(Strings.containsIgnoreCase(databaseProductName, "h2")) {
+            return H2;
+        }
+        return OTHER;
+    }
+
+    /**
+     * 通过数据源的元数据获取方言
+     * @param dataSource
+     * @return   无法获取时返回{@link #OTHER}
+     */
+    public static Dialect of(DataSource dataSource) {
+        if(null == dataSource) {
+            return OTHER;
+        }
+        try {
+            String databaseProductName = (String)JdbcUtils.extractDatabaseMetaData(dataSource, "getDatabaseProductName");
+            return of(databaseProductName);
+        } catch (MetaDataAccessException e) {
+            Logs.warn("无法获取数据库产品名称，使用默认方言：{}", e, OTHER);
+            return OTHER;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.jyoryo.entityjdbc.support;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.jyoryo.entityjdbc.common.BaseDo;
+import com.jyoryo.entityjdbc.common.Strings;
+
+/**
+ * 关联实体的加载计划
+ * <p>查询实体后，按计划批量加载<code>@JoinColumn</code>字段关联的实体：每个关联类型以IN查询分批加载，替换只有主键的关联对象。</p>
+ * <li>字段以实体的字段名指定，如：owner</li>
+ * <li>多级关联以.分隔，如：owner.address，先加载owner，再加载所有owner的address</li>
+ * @author jyoryo
+ *
+ */
+public final class FetchPlan extends BaseDo {
+    private static final long serialVersionUID = 4062297458612385731L;
+
+    /**
+     * 字段名对应的下一级加载计划
+     */
+    private final Map<String, FetchPlan> children = new LinkedHashMap<>();
+
+    private FetchPlan() {
+    }
+
+    /**
+     * 创建加载计划
+     * @param paths   关联字段，多级关联以.分隔
+     * @return
+     */
+    public static FetchPlan of(String... paths) {
+        FetchPlan fetchPlan = new FetchPlan();
+        if(null != paths) {
+            for(String path : paths) {
+                fetchPlan.fetch(path);
+            }
+        }
+        return fetchPlan;
+    }
+
+    /**
+     * 添加需要加载的关联字段
+     * @param path   关联字段，多级关联以.分隔
+     * @return
+     */
+    public FetchPlan fetch(String path) {
+        if(Strings.isBlank(path)) {
+            throw new IllegalArgumentException("关联字段不能为空！");
+        }
+        FetchPlan current = this;
+        for(String field : path.trim().split("\\.")) {
+            field = field.trim();
+            if(field.isEmpty()) {
+                throw new IllegalArgumentException(Strings.format("关联字段非法：{}", path));
+            }
+            FetchPlan child = current.children.get(field);
+            if(null == child) {
+                child = new FetchPlan();
+                current.children.put(field, child);
+            }
+            current = child;
+        }
+        return this;
+    }
+
+    /**
+     * 当前级需要加载的关联字段
+     * @return
+     */
+    public Set<String> getFields() {
+        return Collections.unmodifiableSet(children.keySet());
+    }
+
+    /**
+     * 关联字段的下一级加载计划
+     * @param field
+     * @return   不存在下一级时返回空的加载计划
+     */
+    public FetchPlan getChild(String field) {
+        FetchPlan child = children.get(field);
+        return (null == child) ? new FetchPlan() : child;
+    }
+
+    /**
+     * 是否不需要加载任何关联
+     * @return
+     */
+    public boolean isEmpty() {
+        return children.isEmpty();
+    }
+}
@@ -0,0 +1,157 @@
+package com.jyoryo.entityjdbc.support;
+
+import java.util.regex.Pattern;
+
+import com.jyoryo.entityjdbc.common.BaseDo;
+import com.jyoryo.entityjdbc.common.Chars;
+import com.jyoryo.entityjdbc.common.Strings;
+
+/**
+ * 键集(seek)分页的排序键
+ * <p>按排序键定位下一页：<code>WHERE key &gt; ? ORDER BY key LIMIT n</code>，不扫描之前的记录。</p>
+ * <li>排序键为查询结果中的列名(别名)，多个列依次比较，同一排序键的组合值应唯一，如：create_time, id</li>
+ * <li>所有排序键的排序方向相同</li>
+ * <li>排序键应有索引，否则与LIMIT start,limit相比没有优势</li>
+ * @author jyoryo
+ *
+ */
+public class KeysetSort extends BaseDo {
+    private static final long serialVersionUID = -1489261573921848152L;
+    /**
+     * 包装原查询的子查询别名
+     */
+    private static final String ALIAS = "keyset_page";
+    /**
+     * 具名参数的前缀
+     */
+    private static final String PARAM_PREFIX = "keyset_";
+    /**
+     * 允许的列名：字母、数字、下划线，可以使用`或"包裹
+     */
+    private static final Pattern COLUMN_PATTERN = Pattern.compile("[`\"]?[A-Za-z_][A-Za-z0-9_]*[`\"]?");
+
+    private final String[] columns;
+    private final boolean descending;
+
+    private KeysetSort(boolean descending, String... columns) {
+        if(null == columns || 0 >= columns.length) {
+            throw new IllegalArgumentException("排序键不能为空！");
+        }
+        for(String column : columns) {
+            if(null == column || !COLUMN_PATTERN.matcher(column).matches()) {
+                throw new IllegalArgumentException(Strings.format("排序键列名非法：{}", column));
+            }
+        }
+        this.columns = columns.clone();
+        this.descending = descending;
+    }
+
+    /**
+     * 升序排序键
+     * @param columns   查询结果中的列名
+     * @return
+     */
+    public static KeysetSort asc(String... columns) {
+        return new KeysetSort(false, columns);
+    }
+
+    /**
+     * 降序排序键
+     * @param columns   查询结果中的列名
+     * @return
+     */
+    public static KeysetSort desc(String... columns) {
+        return new KeysetSort(true, columns);
+    }
+
+    /**
+     * 排序键列名
+     * @return
+     */
+    public String[] getColumns() {
+        return columns.clone();
+    }
+
+    /**
+     * 是否降序
+     * @return
+     */
+    public boolean isDescending() {
+        return descending;
+    }
+
+    /**
+     * 读取结果集时使用的列名，去除`或"
+     * @param index
+     * @return
+     */
+    public String getColumnLabel(int index) {
+        return Strings.strip(columns[index], "`\"");
+    }
+
+    /**
+     * 生成键集分页的sql
+     * <li>将原查询作为子查询：SELECT * FROM (sql) keyset_page WHERE ... ORDER BY ... LIMIT rows</li>
+     * <li>多个排序键时，条件展开为：(c1 &gt; ?) OR (c1 = ? AND c2 &gt; ?) ...</li>
+     * @param sql   原查询
+     * @param seek   是否添加定位条件，第一页为false
+     * @param rows   返回的最大行数
+     * @param named   是否使用具名参数，参数名见{@link #paramName(int)}
+     * @return
+     */
+    public String wrap(String sql, boolean seek, int rows, boolean named) {
+        final String operator = descending ? " < " : " > ";
+        StringBuilder sqlBuilder = new StringBuilder(sql.length() + 128)
+                .append("SELECT * FROM (").append(sql).append(") ").append(ALIAS);
+        if(seek) {
+            sqlBuilder.append(" WHERE ");
+            for(int i = 0; i < columns.length; i ++) {
+                if(i > 0) {
+                    sqlBuilder.append(" OR ");
+                }
+                sqlBuilder.append('(');
+                for(int j = 0; j < i; j ++) {
+                    sqlBuilder.append(columns[j]).append(" = ").append(placeholder(j, named)).append(" AND ");
+                }
+                sqlBuilder.append(columns[i]).append(operator).append(placeholder(i, named)).append(')');
+            }
+        }
+        sqlBuilder.append(" ORDER BY ");
+        for(int i = 0; i < columns.length; i ++) {
+            if(i > 0) {
+                sqlBuilder.append(Chars.COMMA);
+            }
+            sqlBuilder.append(columns[i]).append(descending ? " DESC" : " ASC");
+        }
+        return sqlBuilder.append(" LIMIT ").append(rows).toString();
+    }
+
+    /**
+     * 按{@link #wrap(String, boolean, int, boolean)}中占位符的顺序展开排序键的值，用于位置参数
+     * @param keyValues
+     * @return
+     */
+    public Object[] seekArgs(Object[] keyValues) {
+        Object[] args = new Object[columns.length * (columns.length + 1) / 2];
+        int index = 0;
+        for(int i = 0; i < columns.length; i ++) {
+            for(int j = 0; j <= i; j ++) {
+                args[index ++] = keyValues[j];
+            }
+        }
+        return args;
+    }
+
+    /**
+     * 第index个排序键的具名参数名
+     * @param index
+     * @return
+     */
+    public String paramName(int index) {
+        return PARAM_PREFIX + index;
+    }
+
+    private String placeholder(int index, boolean named) {
+        return named ? (Chars.COLON + paramName(index)) : "?";
+    }
+}
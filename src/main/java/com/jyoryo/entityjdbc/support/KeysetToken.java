@@ -0,0 +1,170 @@
+package com.jyoryo.entityjdbc.support;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import com.jyoryo.entityjdbc.common.Strings;
+import com.jyoryo.entityjdbc.exception.PageException;
+
+/**
+ * 键集分页的继续标识
+ * <p>将上一页最后一行的排序键值编码为不透明的字符串，传给下一页查询。</p>
+ * <li>编码保留值的类型：整数、小数、字符串、日期时间、布尔，其他类型按字符串编码</li>
+ * <li>只做编码，不做签名；标识由客户端传回时，只会作为查询参数使用</li>
+ * @author jyoryo
+ *
+ */
+public final class KeysetToken {
+    private static final String VERSION = "k1";
+    private static final char SEPARATOR = '\n';
+
+    private KeysetToken() {
+    }
+
+    /**
+     * 编码排序键值
+     * @param keyValues
+     * @return
+     */
+    public static String encode(Object[] keyValues) {
+        StringBuilder builder = new StringBuilder(VERSION);
+        for(Object value : keyValues) {
+            builder.append(SEPARATOR).append(encodeValue(value));
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(builder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解码排序键值
+     * @param token
+     * @param keyCount   排序键的个数
+     * @return
+     * @throws PageException   标识无效或与排序键个数不一致
+     */
+    public static Object[] decode(String token, int keyCount) {
+        String content;
+        try {
+            content = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new PageException("无效的分页标识：{}", token);
+        }
+        List<String> parts = split(content);
+        if(parts.isEmpty() || !VERSION.equals(parts.get(0)) || parts.size() != keyCount + 1) {
+            throw new PageException("无效的分页标识：{}", token);
+        }
+        Object[] keyValues = new Object[keyCount];
+        for(int i = 0; i < keyCount; i ++) {
+            try {
+                keyValues[i] = decodeValue(parts.get(i + 1));
+            } catch (RuntimeException e) {
+                throw new PageException(e, "无效的分页标识：{}", token);
+            }
+        }
+        return keyValues;
+    }
+
+    private static String encodeValue(Object value) {
+        if(null == value) {
+            return "N";
+        }
+        if(value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return "I" + value;
+        }
+        if(value instanceof Long) {
+            return "L" + value;
+        }
+        if(value instanceof BigInteger) {
+            return "G" + value;
+        }
+        if(value instanceof BigDecimal) {
+            return "D" + ((BigDecimal)value).toPlainString();
+        }
+        if(value instanceof Double || value instanceof Float) {
+            return "F" + value;
+        }
+        if(value instanceof Boolean) {
+            return "Z" + value;
+        }
+        if(value instanceof Timestamp) {
+            Timestamp timestamp = (Timestamp)value;
+            return "T" + timestamp.getTime() + ':' + timestamp.getNanos();
+        }
+        if(value instanceof java.sql.Date) {
+            return "d" + ((java.sql.Date)value).getTime();
+        }
+        if(value instanceof java.util.Date) {
+            return "t" + ((java.util.Date)value).getTime();
+        }
+        return "S" + escape(value.toString());
+    }
+
+    private static Object decodeValue(String part) {
+        if(Strings.isEmpty(part)) {
+            throw new IllegalArgumentException("empty value");
+        }
+        final String text = part.substring(1);
+        switch (part.charAt(0)) {
+            case 'N':
+                return null;
+            case 'I':
+                return Integer.valueOf(text);
+            case 'L':
+                return Long.valueOf(text);
+            case 'G':
+                return new BigInteger(text);
+            case 'D':
+                return new BigDecimal(text);
+            case 'F':
+                return Double.valueOf(text);
+            case 'Z':
+                return Boolean.valueOf(text);
+            case 'T':
+                int index = text.indexOf(':');
+                Timestamp timestamp = new Timestamp(Long.parseLong(text.substring(0, index)));
+                timestamp.setNanos(Integer.parseInt(text.substring(index + 1)));
+                return timestamp;
+            case 'd':
+                return new java.sql.Date(Long.parseLong(text));
+            case 't':
+                return new java.util.Date(Long.parseLong(text));
+            case 'S':
+                return unescape(text);
+            default:
+                throw new IllegalArgumentException("unknown type: " + part.charAt(0));
+        }
+    }
+
+    private static List<String> split(String content) {
+        List<String> parts = new ArrayList<>();
+        int from = 0, index;
+        while(-1 != (index = content.indexOf(SEPARATOR, from))) {
+            parts.add(content.substring(from, index));
+            from = index + 1;
+        }
+        parts.add(content.substring(from));
+        return parts;
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    private static String unescape(String text) {
+        StringBuilder builder = new StringBuilder(text.length());
+        for(int i = 0; i < text.length(); i ++) {
+            char c = text.charAt(i);
+            if('\\' == c && i + 1 < text.length()) {
+                char next = text.charAt(++ i);
+                builder.append('n' == next ? '\n' : next);
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -51,6 +51,19 @@ public class Page<T> extends BaseDo {
      * 总的页数
      */
     private int totalPage = -1;
+    /**
+     * 总记录数是否为估算值
+     */
+    private boolean totalCountEstimated = false;
+    /**
+     * 总记录数是否来自缓存，可能不是最新值
+     */
+    private boolean totalCountStale = false;
+    
+    /**
+     * 键集分页时，获取下一页的继续标识
+     */
+    private String nextToken;
     
     
     public Page() {
@@ -205,6 +218,39 @@ public class Page<T> extends BaseDo {
         this.hasNext = totalPage > pageIndex;
     }
 
+    /**
+     * 总记录数是否为估算值，如通过EXPLAIN估算
+     * @return
+     */
+    public boolean isTotalCountEstimated() {
+        return totalCountEstimated;
+    }
+
+    /**
+     * 设置总记录数是否为估算值
+     * @param totalCountEstimated
+     */
+    public void setTotalCountEstimated(boolean totalCountEstimated) {
+        this.totalCountEstimated = totalCountEstimated;
+    }
+
+    /**
+     * 总记录数是否来自缓存，可能不是最新值
+     * <li>缓存在表被写入后失效，但其他应用或直接通过数据源的写入不会使缓存失效，见{@link com.jyoryo.entityjdbc.dao.JdbcDao#setCountCache(int, long)}</li>
+     * @return
+     */
+    public boolean isTotalCountStale() {
+        return totalCountStale;
+    }
+
+    /**
+     * 设置总记录数是否来自缓存
+     * @param totalCountStale
+     */
+    public void setTotalCountStale(boolean totalCountStale) {
+        this.totalCountStale = totalCountStale;
+    }
+
     /**
      * 总页数
      * @return
@@ -227,6 +273,24 @@ public class Page<T> extends BaseDo {
         this.totalPage = totalPage;
     }
     
+    /**
+     * 键集分页时，获取下一页的继续标识
+     * <li>不存在下一页时为null</li>
+     * <li>传给{@link com.jyoryo.entityjdbc.dao.JdbcDao}的queryKeysetPage获取下一页</li>
+     * @return
+     */
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    /**
+     * 键集分页时，设置下一页的继续标识
+     * @param nextToken
+     */
+    public void setNextToken(String nextToken) {
+        this.nextToken = nextToken;
+    }
+    
     /**
      * 获取当前页第一条数据在数据库中的起始index。
      * <li>类似sql分页中的limit {start}, {limit}中的start</li>
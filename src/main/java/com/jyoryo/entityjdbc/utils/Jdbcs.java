@@ -4,6 +4,10 @@ import java.math.BigDecimal;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.SingleColumnRowMapper;
@@ -30,6 +34,22 @@ public abstract class Jdbcs extends JdbcUtils {
             Boolean.class, Short.class, Integer.class, Long.class, Float.class, Double.class,
             String.class, Date.class, BigDecimal.class, Number.class
     };
+    /**
+     * 表名前的关键字：FROM、JOIN、UPDATE、INTO
+     */
+    private static final Pattern TABLE_KEYWORD_PATTERN = Pattern.compile("\\b(FROM|JOIN|UPDATE|INTO)\\s+", Pattern.CASE_INSENSITIVE);
+    /**
+     * 表名，可以带schema，可以使用`、"或[]包裹
+     */
+    private static final Pattern TABLE_NAME_PATTERN = Pattern.compile("[`\"\\[]?([A-Za-z_][\\w$]*)[`\"\\]]?(?:\\s*\\.\\s*[`\"\\[]?([A-Za-z_][\\w$]*)[`\"\\]]?)?");
+    /**
+     * FROM中逗号分隔的下一个表：可选的别名后跟逗号
+     */
+    private static final Pattern NEXT_TABLE_PATTERN = Pattern.compile("(?:\\s+(?:AS\\s+)?(?!(?:WHERE|ON|USING|JOIN|LEFT|RIGHT|INNER|OUTER|CROSS|FULL|NATURAL|GROUP|ORDER|HAVING|LIMIT|UNION|SET|VALUES|FOR)\\b)[A-Za-z_]\\w*)?\\s*,\\s*", Pattern.CASE_INSENSITIVE);
+    /**
+     * 字符串常量
+     */
+    private static final Pattern STRING_LITERAL_PATTERN = Pattern.compile("'(?:[^'\\\\]|\\\\.|'')*'");
 
 	/**
 	 * 通过ResultSet获取值并设置目标对象
@@ -106,6 +126,22 @@ public abstract class Jdbcs extends JdbcUtils {
         return  new BeanRowMapper<T>(requiredType);
     }
 	
+	/**
+	 * 生成IN条件的占位符，如：(?,?,?)
+	 * @param count   占位符个数
+	 * @return
+	 */
+	public static String inPlaceholders(int count) {
+	    StringBuilder builder = new StringBuilder(count * 2 + 1).append('(');
+	    for(int i = 0; i < count; i ++) {
+	        if(i > 0) {
+	            builder.append(',');
+	        }
+	        builder.append('?');
+	    }
+	    return builder.append(')').toString();
+	}
+	
 	/**
 	 * 删除第一个select，返回剩余的sql
 	 * @param sql
@@ -115,4 +151,97 @@ public abstract class Jdbcs extends JdbcUtils {
 	    int index = Strings.indexOfIgnoreCase(sql, "select");
 	    return (-1 == index) ? sql : Strings.trim(Strings.substring(sql, index + 6));
 	}
+	
+	/**
+	 * 查找sql最外层(不在括号、字符串常量、引号标识符中)第一个关键字的位置
+	 * @param sql
+	 * @param keyword   关键字，忽略大小写，按整个单词匹配
+	 * @return   不存在时返回-1
+	 */
+	public static int indexOfTopLevelKeyword(String sql, String keyword) {
+	    if(Strings.isBlank(sql) || Strings.isBlank(keyword)) {
+	        return -1;
+	    }
+	    final int length = sql.length(), keywordLength = keyword.length();
+	    int depth = 0;
+	    for(int i = 0; i < length; i ++) {
+	        final char c = sql.charAt(i);
+	        if('\'' == c || '"' == c || '`' == c) {
+	            i = skipQuoted(sql, i, c);
+	        } else if('(' == c) {
+	            depth ++;
+	        } else if(')' == c) {
+	            depth --;
+	        } else if(0 == depth && sql.regionMatches(true, i, keyword, 0, keywordLength)
+	                && (0 == i || !isIdentifierPart(sql.charAt(i - 1)))
+	                && (i + keywordLength >= length || !isIdentifierPart(sql.charAt(i + keywordLength)))) {
+	            return i;
+	        }
+	    }
+	    return -1;
+	}
+	
+	/**
+	 * 跳过以quote开始的字符串常量或引号标识符
+	 * @param sql
+	 * @param start   开始引号的位置
+	 * @param quote
+	 * @return   结束引号的位置，未结束时返回sql的长度
+	 */
+	private static int skipQuoted(String sql, int start, char quote) {
+	    final int length = sql.length();
+	    for(int i = start + 1; i < length; i ++) {
+	        final char c = sql.charAt(i);
+	        if('\\' == c && '\'' == quote) {
+	            i ++;
+	        } else if(quote == c) {
+	            // 连续两个引号为转义
+	            if(i + 1 < length && quote == sql.charAt(i + 1)) {
+	                i ++;
+	            } else {
+	                return i;
+	            }
+	        }
+	    }
+	    return length;
+	}
+	
+	private static boolean isIdentifierPart(char c) {
+	    return Character.isLetterOrDigit(c) || '_' == c || '$' == c;
+	}
+	
+	/**
+	 * 提取sql中读写的表名：FROM、JOIN、UPDATE、INTO之后的表，以及FROM中逗号分隔的表
+	 * <li>表名转为小写，去除schema和`、"、[]</li>
+	 * <li>基于正则匹配，子查询中的表同样会被提取；函数中的FROM(如EXTRACT(YEAR FROM c))可能多提取出列名</li>
+	 * @param sql
+	 * @return   按出现顺序排列
+	 */
+	public static Set<String> tableNames(String sql) {
+	    Set<String> tableNames = new LinkedHashSet<>();
+	    if(Strings.isBlank(sql)) {
+	        return tableNames;
+	    }
+	    // 去除字符串常量，避免匹配其中的关键字
+	    sql = STRING_LITERAL_PATTERN.matcher(sql).replaceAll("''");
+	    Matcher keywordMatcher = TABLE_KEYWORD_PATTERN.matcher(sql);
+	    Matcher nameMatcher = TABLE_NAME_PATTERN.matcher(sql);
+	    Matcher nextMatcher = NEXT_TABLE_PATTERN.matcher(sql);
+	    int from = 0;
+	    while(keywordMatcher.find(from)) {
+	        final boolean fromList = "FROM".equalsIgnoreCase(keywordMatcher.group(1));
+	        int position = keywordMatcher.end();
+	        while(nameMatcher.region(position, sql.length()).lookingAt()) {
+	            String tableName = (null == nameMatcher.group(2)) ? nameMatcher.group(1) : nameMatcher.group(2);
+	            tableNames.add(tableName.toLowerCase());
+	            position = nameMatcher.end();
+	            if(!fromList || !nextMatcher.region(position, sql.length()).lookingAt()) {
+	                break;
+	            }
+	            position = nextMatcher.end();
+	        }
+	        from = Math.max(position, keywordMatcher.end());
+	    }
+	    return tableNames;
+	}
 }
@@ -7,6 +7,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.BiFunction;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -16,6 +17,7 @@ import javax.persistence.MappedSuperclass;
 import javax.persistence.Table;
 
 import org.springframework.beans.BeanUtils;
+import org.springframework.util.ClassUtils;
 
 import com.jyoryo.entityjdbc.common.Annotations;
 import com.jyoryo.entityjdbc.common.Assert;
@@ -58,6 +60,8 @@ public abstract class JpaUtils {
 	 */
 	public static Field[] getFields(Class<?> entityClass) {
 		Assert.notNull(entityClass);
+		// 延迟加载的代理类取实体类
+		entityClass = ClassUtils.getUserClass(entityClass);
 		//已缓存，直接返回
 		Field[] fields = CACHE_FIELDS.get(entityClass);
 		if(null != fields) {
@@ -176,6 +180,19 @@ public abstract class JpaUtils {
 	 * @throws SQLException 
 	 */
 	public static <T> void writeField(T target, Field field, ResultSet rs, String columnName) throws SQLException {
+		writeField(target, field, rs, columnName, null);
+	}
+
+	/**
+	 * 设置实体字段值
+	 * @param target   待设置值的模板对象
+	 * @param field   带设置的对象属性
+	 * @param rs   ResultSet
+	 * @param columnName   数据库列名称
+	 * @param associationFactory   按关联实体类、主键创建外键关联对象，如：延迟加载代理；为null时创建只有主键的关联对象
+	 * @throws SQLException
+	 */
+	public static <T> void writeField(T target, Field field, ResultSet rs, String columnName, BiFunction<Class<?>, Object, Object> associationFactory) throws SQLException {
 		if(null == target || null == field || null == rs || Strings.isBlank(columnName)) {
 			return ;
 		}
@@ -183,14 +200,17 @@ public abstract class JpaUtils {
 		Object value;
 		//字段为外键关联其他实体
 		if(JpaUtils.isEntity(fieldClass)) {
-			// 通过反射初始化外键关联类对象
-			value = BeanUtils.instantiateClass(fieldClass);
 			//获取对应id
 			Field valueIdField = JpaUtils.getIdField(fieldClass);
 			Object valueIdValue = Jdbcs.getResultSetValue(rs, columnName, valueIdField.getType());
 			if(null == valueIdValue) {
 				value = null;
+			} else if(null != associationFactory) {
+				// 基本类型主键的列为NULL时读取为0，不创建关联对象
+				value = rs.wasNull() ? null : associationFactory.apply(fieldClass, valueIdValue);
 			} else {
+				// 通过反射初始化外键关联类对象
+				value = BeanUtils.instantiateClass(fieldClass);
 				Reflects.writeField(value, valueIdField, valueIdValue);
 			}
 		} else {
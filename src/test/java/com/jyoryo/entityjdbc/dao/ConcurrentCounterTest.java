@@ -0,0 +1,143 @@
+package com.jyoryo.entityjdbc.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.SingleColumnRowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.jyoryo.entityjdbc.support.Dialect;
+
+/**
+ * 并发COUNT：在另一个连接上执行，获取连接超时、线程池拒绝时由调用方顺序执行，事务中不并发
+ * @author jyoryo
+ *
+ */
+public class ConcurrentCounterTest {
+    private static final String SELECT = "SELECT id FROM counter_item ORDER BY id";
+    private RecordingDataSource dataSource;
+    private JdbcDao jdbcDao;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        dataSource = new RecordingDataSource("concurrentCounter");
+        jdbcDao = new JdbcDao(dataSource);
+        jdbcDao.setSqlBuilder(new PlainSqlBuilder());
+        jdbcDao.getClassicJdbcTemplate().execute("DROP TABLE IF EXISTS counter_item");
+        jdbcDao.getClassicJdbcTemplate().execute("CREATE TABLE counter_item(id INT PRIMARY KEY)");
+        jdbcDao.getClassicJdbcTemplate().execute("INSERT INTO counter_item SELECT X FROM SYSTEM_RANGE(1, 12)");
+        executor = Executors.newSingleThreadExecutor();
+        dataSource.reset();
+    }
+
+    @After
+    public void tearDown() {
+        dataSource.setConnectionGate(null);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void countsOnAnotherConnection() throws Exception {
+        final Thread caller = Thread.currentThread();
+        CompletableFuture<Long> future = new ConcurrentCounter(jdbcDao, executor, 5000L).submit(countQuery(), query -> {
+            assertNotEquals(caller, Thread.currentThread());
+            return query.queryForObject("SELECT COUNT(*) FROM counter_item", Long.class);
+        });
+        assertNotNull(future);
+        assertEquals(Long.valueOf(12L), future.get(10, TimeUnit.SECONDS));
+        // 通知调用方前已释放连接
+        assertEquals(1, dataSource.getConnectionCount());
+        assertEquals(0, dataSource.getOpenConnectionCount());
+    }
+
+    @Test
+    public void failureCompletesExceptionally() throws Exception {
+        CompletableFuture<Long> future = new ConcurrentCounter(jdbcDao, executor, 5000L).submit(countQuery(), query -> query.queryForObject("SELECT COUNT(*) FROM missing_table", Long.class));
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof org.springframework.dao.DataAccessException);
+        }
+        assertEquals(0, dataSource.getOpenConnectionCount());
+    }
+
+    @Test
+    public void skippedInTransaction() throws Exception {
+        final AtomicBoolean counted = new AtomicBoolean();
+        final ConcurrentCounter counter = new ConcurrentCounter(jdbcDao, executor, 5000L);
+        new TransactionTemplate(new DataSourceTransactionManager(dataSource)).execute(status -> {
+            assertNull(counter.submit(countQuery(), query -> counted.getAndSet(true)));
+            return null;
+        });
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertFalse(counted.get());
+        // 只有事务的连接
+        assertEquals(1, dataSource.getConnectionCount());
+    }
+
+    @Test
+    public void rejectedRunsSequentially() {
+        executor.shutdown();
+        assertNull(new ConcurrentCounter(jdbcDao, executor, 5000L).submit(countQuery(), query -> 0L));
+        assertEquals(0, dataSource.getConnectionCount());
+    }
+
+    @Test
+    public void busyExecutorTimesOut() throws Exception {
+        final CountDownLatch busy = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                busy.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        final AtomicBoolean counted = new AtomicBoolean();
+        assertNull(new ConcurrentCounter(jdbcDao, executor, 50L).submit(countQuery(), query -> counted.getAndSet(true)));
+        busy.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        // 调用方已放弃时，线程池中的任务不再获取连接
+        assertFalse(counted.get());
+        assertEquals(0, dataSource.getConnectionCount());
+    }
+
+    @Test
+    public void connectionReleasedWhenCallerGaveUp() throws Exception {
+        final CountDownLatch gate = new CountDownLatch(1);
+        dataSource.setConnectionGate(gate);
+        final AtomicBoolean counted = new AtomicBoolean();
+        assertNull(new ConcurrentCounter(jdbcDao, executor, 50L).submit(countQuery(), query -> counted.getAndSet(true)));
+        // 超时后才获取到连接：不执行COUNT，直接释放连接
+        gate.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertFalse(counted.get());
+        assertEquals(1, dataSource.getConnectionCount());
+        assertEquals(0, dataSource.getOpenConnectionCount());
+    }
+
+    private CountQuery<Integer> countQuery() {
+        return new CountQuery<>(jdbcDao.getJdbcTemplate(), null, null, Dialect.H2, SELECT, new SingleColumnRowMapper<>(Integer.class), 0, 5, null);
+    }
+}
@@ -0,0 +1,123 @@
+package com.jyoryo.entityjdbc.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.jyoryo.entityjdbc.support.Page;
+
+/**
+ * 总记录数缓存：使用缓存时标记为可能过期，按表版本失效，事务结束后再次失效
+ * @author jyoryo
+ *
+ */
+public class CountCacheTest {
+    private static final String SELECT = "SELECT id FROM count_cache_item ORDER BY id";
+    private RecordingDataSource dataSource;
+    private JdbcDao jdbcDao;
+
+    @Before
+    public void setUp() {
+        dataSource = new RecordingDataSource("countCache");
+        jdbcDao = new JdbcDao(dataSource);
+        jdbcDao.setSqlBuilder(new PlainSqlBuilder());
+        jdbcDao.getClassicJdbcTemplate().execute("DROP TABLE IF EXISTS count_cache_item");
+        jdbcDao.getClassicJdbcTemplate().execute("CREATE TABLE count_cache_item(id INT PRIMARY KEY)");
+        jdbcDao.getClassicJdbcTemplate().execute("INSERT INTO count_cache_item SELECT X FROM SYSTEM_RANGE(1, 12)");
+        jdbcDao.setCountCache(100, 0);
+        dataSource.reset();
+    }
+
+    @Test
+    public void cachedTotalIsStale() {
+        Page<Integer> page = firstPage();
+        assertEquals(12, page.getTotalCount());
+        assertFalse(page.isTotalCountStale());
+        assertEquals(1, countStatements());
+
+        Page<Integer> cached = firstPage();
+        assertEquals(12, cached.getTotalCount());
+        assertTrue(cached.isTotalCountStale());
+        assertEquals(1, countStatements());
+        assertEquals(1, jdbcDao.getCountCache().getHitCount());
+    }
+
+    @Test
+    public void writeInvalidatesTable() {
+        firstPage();
+        jdbcDao.update("INSERT INTO count_cache_item VALUES (?)", 13);
+        Page<Integer> page = firstPage();
+        assertEquals(13, page.getTotalCount());
+        assertFalse(page.isTotalCountStale());
+        assertEquals(2, countStatements());
+    }
+
+    @Test
+    public void partialPageRefreshesCache() {
+        firstPage();
+        // 不经过JdbcDao写入，缓存不会失效
+        jdbcDao.getClassicJdbcTemplate().update("INSERT INTO count_cache_item VALUES (13)");
+        Page<Integer> lastPage = jdbcDao.queryPage(SELECT, Integer.class, CountStrategies.DERIVED, 10, 5);
+        assertEquals(13, lastPage.getTotalCount());
+        assertFalse(lastPage.isTotalCountStale());
+        // 当前页未满时得出的总记录数更新缓存
+        Page<Integer> page = firstPage();
+        assertEquals(13, page.getTotalCount());
+        assertTrue(page.isTotalCountStale());
+        assertEquals(1, countStatements());
+    }
+
+    @Test
+    public void notCachedInTransaction() {
+        new TransactionTemplate(new DataSourceTransactionManager(dataSource)).execute(status -> {
+            firstPage();
+            assertFalse(firstPage().isTotalCountStale());
+            return null;
+        });
+        assertEquals(0, jdbcDao.getCountCache().size());
+        assertEquals(2, countStatements());
+    }
+
+    @Test
+    public void invalidatedAgainAfterCommit() throws Exception {
+        final AtomicReference<Page<Integer>> readDuringTransaction = new AtomicReference<>();
+        new TransactionTemplate(new DataSourceTransactionManager(dataSource)).execute(status -> {
+            jdbcDao.update("INSERT INTO count_cache_item VALUES (?)", 13);
+            // 提交前，其他线程COUNT到提交前的总记录数并放入缓存
+            Thread reader = new Thread(() -> readDuringTransaction.set(firstPage()));
+            reader.start();
+            try {
+                reader.join();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return null;
+        });
+        assertEquals(12, readDuringTransaction.get().getTotalCount());
+        // 事务结束后再次失效，不会使用提交前缓存的总记录数
+        Page<Integer> page = firstPage();
+        assertEquals(13, page.getTotalCount());
+        assertFalse(page.isTotalCountStale());
+    }
+
+    private Page<Integer> firstPage() {
+        return jdbcDao.queryPage(SELECT, Integer.class, CountStrategies.DERIVED, 0, 5);
+    }
+
+    private int countStatements() {
+        int count = 0;
+        for(String sql : dataSource.getStatements()) {
+            if(sql.startsWith("SELECT COUNT(*)")) {
+                count ++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,135 @@
+package com.jyoryo.entityjdbc.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jyoryo.entityjdbc.support.Condition;
+import com.jyoryo.entityjdbc.support.Dialect;
+import com.jyoryo.entityjdbc.support.Page;
+
+/**
+ * 总记录数策略：派生COUNT(当前页未满时不执行COUNT、并发COUNT)，EXPLAIN估算
+ * @author jyoryo
+ *
+ */
+public class CountStrategiesTest {
+    private static final String SELECT = "SELECT id FROM count_item ORDER BY id";
+    private RecordingDataSource dataSource;
+    private JdbcDao jdbcDao;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        dataSource = new RecordingDataSource("countStrategies");
+        jdbcDao = new JdbcDao(dataSource);
+        jdbcDao.setSqlBuilder(new PlainSqlBuilder());
+        jdbcDao.getClassicJdbcTemplate().execute("DROP TABLE IF EXISTS count_item");
+        jdbcDao.getClassicJdbcTemplate().execute("CREATE TABLE count_item(id INT PRIMARY KEY)");
+        jdbcDao.getClassicJdbcTemplate().execute("INSERT INTO count_item SELECT X FROM SYSTEM_RANGE(1, 12)");
+        executor = Executors.newSingleThreadExecutor();
+        // 检测方言使用的连接不计入
+        assertEquals(Dialect.H2, jdbcDao.getDialect());
+        dataSource.reset();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void derivedCountsFullPage() {
+        Page<Integer> page = jdbcDao.queryPage(SELECT, Integer.class, CountStrategies.DERIVED, 0, 5);
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), page.getItems());
+        assertEquals(12, page.getTotalCount());
+        assertFalse(page.isTotalCountEstimated());
+        assertEquals(1, countStatements());
+
+        Page<Integer> filtered = jdbcDao.queryPage("SELECT id FROM count_item WHERE id > :min ORDER BY id", Integer.class, CountStrategies.DERIVED, 5, 5, new Condition().addValue("min", 2));
+        assertEquals(Arrays.asList(8, 9, 10, 11, 12), filtered.getItems());
+        assertEquals(10, filtered.getTotalCount());
+    }
+
+    @Test
+    public void derivedSkipsCountOnPartialPage() {
+        Page<Integer> page = jdbcDao.queryPage(SELECT, Integer.class, CountStrategies.DERIVED, 10, 5);
+        assertEquals(Arrays.asList(11, 12), page.getItems());
+        assertEquals(12, page.getTotalCount());
+        assertEquals(0, countStatements());
+
+        // 超过最后一页时当前页为空，仍需COUNT
+        Page<Integer> empty = jdbcDao.queryPage(SELECT, Integer.class, CountStrategies.DERIVED, 20, 5);
+        assertTrue(empty.getItems().isEmpty());
+        assertEquals(12, empty.getTotalCount());
+        assertEquals(1, countStatements());
+    }
+
+    @Test
+    public void derivedCountsConcurrently() {
+        jdbcDao.setConcurrentCount(executor);
+        Page<Integer> page = jdbcDao.queryPage(SELECT, Integer.class, CountStrategies.DERIVED, 5, 5);
+        assertEquals(Arrays.asList(6, 7, 8, 9, 10), page.getItems());
+        assertEquals(12, page.getTotalCount());
+        // 当前页与COUNT各用一个连接
+        assertEquals(2, dataSource.getConnectionCount());
+        assertEquals(0, dataSource.getOpenConnectionCount());
+    }
+
+    @Test
+    public void explainUsesDerivedCountOnH2() {
+        Page<Integer> page = jdbcDao.queryPage(SELECT, Integer.class, CountStrategies.EXPLAIN, 0, 5);
+        assertEquals(12, page.getTotalCount());
+        assertFalse(page.isTotalCountEstimated());
+        assertEquals(0, explainStatements());
+    }
+
+    @Test
+    public void explainEstimatesOnMysql() {
+        jdbcDao.setDialect(Dialect.MYSQL);
+        dataSource.setExplainRows(40L);
+        Page<Integer> page = jdbcDao.queryPage(SELECT, Integer.class, CountStrategies.EXPLAIN, 0, 5);
+        assertEquals(5, page.getItems().size());
+        assertEquals(40, page.getTotalCount());
+        assertTrue(page.isTotalCountEstimated());
+        assertEquals(1, explainStatements());
+        assertEquals(0, countStatements());
+
+        // 估算值不小于当前页已确定的记录数
+        dataSource.setExplainRows(3L);
+        jdbcDao.setConcurrentCount(executor);
+        Page<Integer> lastPage = jdbcDao.queryPage(SELECT, Integer.class, CountStrategies.EXPLAIN, 10, 5);
+        assertEquals(Arrays.asList(11, 12), lastPage.getItems());
+        assertEquals(12, lastPage.getTotalCount());
+        assertTrue(lastPage.isTotalCountEstimated());
+        assertEquals(2, explainStatements());
+    }
+
+    private int countStatements() {
+        return statementsStartingWith("SELECT COUNT(*)");
+    }
+
+    private int explainStatements() {
+        return statementsStartingWith("SELECT 3 AS") + statementsStartingWith("SELECT 40 AS");
+    }
+
+    private int statementsStartingWith(String prefix) {
+        final List<String> statements = dataSource.getStatements();
+        int count = 0;
+        for(String sql : statements) {
+            if(sql.startsWith(prefix)) {
+                count ++;
+            }
+        }
+        return count;
+    }
+}
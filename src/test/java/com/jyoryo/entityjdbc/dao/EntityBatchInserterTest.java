@@ -0,0 +1,214 @@
+package com.jyoryo.entityjdbc.dao;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jyoryo.entityjdbc.JpaEntity;
+import com.jyoryo.entityjdbc.domain.support.IdSupport;
+
+/**
+ * 批量插入：多行VALUES的行数、占位符、包大小限制，按写入列分组，批量写回生成的主键
+ * @author jyoryo
+ *
+ */
+public class EntityBatchInserterTest {
+    private final JpaEntity jpaEntity = new JpaEntity(BatchItem.class);
+    private RecordingDataSource dataSource;
+    private JdbcDao jdbcDao;
+
+    @Entity
+    @Table(name = "batch_item")
+    public static class BatchItem extends IdSupport {
+        private static final long serialVersionUID = 1L;
+        @Column
+        private String name;
+        @Column
+        private Integer qty;
+
+        BatchItem(String name, Integer qty) {
+            this.name = name;
+            this.qty = qty;
+        }
+
+        public BatchItem() {
+        }
+    }
+
+    @Before
+    public void setUp() {
+        dataSource = new RecordingDataSource("entityBatchInserter");
+        jdbcDao = new JdbcDao(dataSource);
+        jdbcDao.setSqlBuilder(new PlainSqlBuilder());
+        jdbcDao.getClassicJdbcTemplate().execute("DROP TABLE IF EXISTS batch_item");
+        jdbcDao.getClassicJdbcTemplate().execute("CREATE TABLE batch_item(id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(200) DEFAULT 'none', qty INT DEFAULT 7)");
+        jdbcDao.setMultiValuesInsert(true);
+        dataSource.reset();
+    }
+
+    @Test
+    public void multiValuesSplitsByRowsPerStatement() {
+        jdbcDao.setMultiValuesRows(3);
+        List<BatchItem> items = mixedNullItems(8);
+        assertArrayEquals(ones(8), jdbcDao.batchSave(jpaEntity, items.toArray(new BatchItem[0])));
+        assertEquals(Arrays.asList(3, 3, 2), rowsPerInsert());
+        assertSaved(items);
+    }
+
+    @Test
+    public void multiValuesCappedByPlaceholders() {
+        // 每行2个占位符(name、qty)，最多5个占位符时每条语句2行
+        jdbcDao.setMaxPlaceholders(5);
+        List<BatchItem> items = mixedNullItems(7);
+        jdbcDao.batchSave(jpaEntity, items.toArray(new BatchItem[0]));
+        assertEquals(Arrays.asList(2, 2, 2, 1), rowsPerInsert());
+        assertSaved(items);
+    }
+
+    @Test
+    public void multiValuesCappedByPacketSize() {
+        List<BatchItem> items = new ArrayList<>();
+        for(int i = 0; i < 5; i ++) {
+            items.add(new BatchItem(String.format("%0100d", i), i));
+        }
+        // 每行估算约340字节，800字节时每条语句2行
+        jdbcDao.setMaxPacketSize(800);
+        jdbcDao.batchSave(jpaEntity, items.toArray(new BatchItem[0]));
+        assertEquals(Arrays.asList(2, 2, 1), rowsPerInsert());
+        assertSaved(items);
+
+        // 单行超过限制时仍然写入
+        dataSource.reset();
+        jdbcDao.setMaxPacketSize(1);
+        List<BatchItem> more = new ArrayList<>();
+        for(int i = 0; i < 2; i ++) {
+            more.add(new BatchItem(String.format("%0100d", i), i));
+        }
+        jdbcDao.batchSave(jpaEntity, more.toArray(new BatchItem[0]));
+        assertEquals(Arrays.asList(1, 1), rowsPerInsert());
+        assertSaved(more);
+    }
+
+    @Test
+    public void explicitAndGeneratedIdsGrouped() {
+        jdbcDao.setMultiValuesRows(2);
+        List<BatchItem> items = mixedNullItems(5);
+        items.get(1).setId(100);
+        items.get(3).setId(200);
+        jdbcDao.batchSave(jpaEntity, items.toArray(new BatchItem[0]));
+        // 主键由数据库生成、主键已指定各一组
+        Set<String> prefixes = new HashSet<>();
+        for(String sql : dataSource.getStatements()) {
+            prefixes.add(sql.substring(0, sql.indexOf("VALUES")));
+        }
+        assertEquals(new HashSet<>(Arrays.asList("INSERT INTO batch_item (name,qty) ", "INSERT INTO batch_item (id,name,qty) ")), prefixes);
+        assertEquals(Arrays.asList(2, 1, 2), rowsPerInsert());
+        assertEquals(100, items.get(1).getId());
+        assertEquals(200, items.get(3).getId());
+        assertSaved(items);
+    }
+
+    @Test
+    public void jdbcBatchWritesNullsAndKeys() {
+        jdbcDao.setMultiValuesInsert(false);
+        List<BatchItem> items = mixedNullItems(6);
+        assertArrayEquals(ones(6), jdbcDao.batchSave(jpaEntity, items.toArray(new BatchItem[0])));
+        assertEquals(1, new HashSet<>(dataSource.getStatements()).size());
+        assertSaved(items);
+    }
+
+    @Test
+    public void upsertSkipsNullsOfExistingRows() {
+        BatchItem existing = new BatchItem("a", 5);
+        jdbcDao.save(jpaEntity, existing);
+        BatchItem changed = new BatchItem(null, 6);
+        changed.setId(existing.getId());
+        BatchItem inserted = new BatchItem("b", null);
+        jdbcDao.batchUpsert(jpaEntity, Arrays.asList(changed, inserted));
+        Map<String, Object> row = jdbcDao.getClassicJdbcTemplate().queryForMap("SELECT name, qty FROM batch_item WHERE id = ?", existing.getId());
+        assertEquals("a", row.get("NAME"));
+        assertEquals(6, row.get("QTY"));
+        // 插入的实体写入NULL，不使用默认值
+        assertNull(jdbcDao.getClassicJdbcTemplate().queryForObject("SELECT qty FROM batch_item WHERE id = ?", Integer.class, inserted.getId()));
+    }
+
+    @Test
+    public void fewerGeneratedKeysKeepRowsAligned() {
+        // 每条语句只返回前2个主键：缺少主键的实体不写入，后续语句的主键仍与实体一一对应
+        dataSource.setGeneratedKeyLimit(2);
+        jdbcDao.setMultiValuesRows(3);
+        List<BatchItem> items = mixedNullItems(5);
+        assertArrayEquals(ones(5), jdbcDao.batchSave(jpaEntity, items.toArray(new BatchItem[0])));
+        assertEquals(0, items.get(2).getId());
+        List<BatchItem> keyed = new ArrayList<>(items);
+        keyed.remove(2);
+        assertSaved(keyed);
+        assertEquals(Integer.valueOf(5), jdbcDao.queryForObject("SELECT COUNT(*) FROM batch_item", Integer.class));
+
+        jdbcDao.setMultiValuesInsert(false);
+        List<BatchItem> batch = mixedNullItems(3);
+        jdbcDao.batchSave(jpaEntity, batch.toArray(new BatchItem[0]));
+        assertEquals(0, batch.get(2).getId());
+        assertSaved(batch.subList(0, 2));
+    }
+
+    /**
+     * name、qty交替为null的实体
+     */
+    private static List<BatchItem> mixedNullItems(int size) {
+        List<BatchItem> items = new ArrayList<>(size);
+        for(int i = 0; i < size; i ++) {
+            items.add(new BatchItem((i % 2 == 0) ? "n" + i : null, (i % 3 == 0) ? null : i));
+        }
+        return items;
+    }
+
+    /**
+     * 每个实体得到各自的主键，对应记录的值与实体一致，null写入NULL而不是默认值
+     */
+    private void assertSaved(List<BatchItem> items) {
+        Set<Integer> ids = new HashSet<>();
+        for(BatchItem item : items) {
+            assertTrue(item.getId() > 0);
+            ids.add(item.getId());
+            Map<String, Object> row = jdbcDao.getClassicJdbcTemplate().queryForMap("SELECT name, qty FROM batch_item WHERE id = ?", item.getId());
+            assertEquals(item.name, row.get("NAME"));
+            assertEquals(item.qty, row.get("QTY"));
+        }
+        assertEquals(items.size(), ids.size());
+    }
+
+    /**
+     * 记录的每条INSERT语句包含的行数
+     */
+    private List<Integer> rowsPerInsert() {
+        List<Integer> rows = new ArrayList<>();
+        for(String sql : dataSource.getStatements()) {
+            if(sql.startsWith("INSERT")) {
+                rows.add(sql.split("\\(\\?", -1).length - 1);
+            }
+        }
+        return rows;
+    }
+
+    private static int[] ones(int size) {
+        int[] values = new int[size];
+        Arrays.fill(values, 1);
+        return values;
+    }
+}
@@ -0,0 +1,134 @@
+package com.jyoryo.entityjdbc.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.jyoryo.entityjdbc.common.cache.LRUCache;
+import com.jyoryo.entityjdbc.domain.support.IdSupport;
+
+/**
+ * 按主键的实体缓存：读取期间有实体被移除时不放入，通过JdbcEntityDao写入后移除，事务结束后再次移除
+ * @author jyoryo
+ *
+ */
+public class EntityCacheTest {
+    private RecordingDataSource dataSource;
+    private EntityItemDao entityItemDao;
+
+    @Entity
+    @Table(name = "entity_item")
+    public static class EntityItem extends IdSupport {
+        private static final long serialVersionUID = 1L;
+        @Column
+        private String name;
+    }
+
+    static class EntityItemDao extends JdbcEntityDao<EntityItem> {
+    }
+
+    @Before
+    public void setUp() {
+        dataSource = new RecordingDataSource("entityCache");
+        JdbcDao jdbcDao = new JdbcDao(dataSource);
+        jdbcDao.setSqlBuilder(new PlainSqlBuilder());
+        jdbcDao.getClassicJdbcTemplate().execute("DROP TABLE IF EXISTS entity_item");
+        jdbcDao.getClassicJdbcTemplate().execute("CREATE TABLE entity_item(id INT PRIMARY KEY, name VARCHAR(20))");
+        jdbcDao.getClassicJdbcTemplate().execute("INSERT INTO entity_item VALUES (1, 'a'), (2, 'b')");
+        entityItemDao = new EntityItemDao();
+        entityItemDao.setJdbcDao(jdbcDao);
+        entityItemDao.setEntityCache(100, 0, null);
+        dataSource.reset();
+    }
+
+    @Test
+    public void putRejectedAfterEvict() {
+        EntityCache<String> entityCache = EntityCache.create(10, 0, null);
+        long stamp = entityCache.stamp();
+        // 读取期间有其他实体被移除
+        entityCache.evict(2);
+        entityCache.put(1, "stale", stamp);
+        assertNull(entityCache.get(1));
+
+        entityCache.put(1L, "current", entityCache.stamp());
+        assertEquals("current", entityCache.get(1));
+        entityCache.clear();
+        assertNull(entityCache.get(1L));
+    }
+
+    @Test
+    public void putRemovedWhenEvictedWhilePutting() {
+        final AtomicReference<EntityCache<String>> holder = new AtomicReference<>();
+        // 检查stamp之后、放入完成之前有实体被移除
+        EntityCache<String> entityCache = new EntityCache<>(new LRUCache<Object, String>(10, 0) {
+            @Override
+            public void put(Object key, String object) {
+                super.put(key, object);
+                holder.get().evict(2);
+            }
+        });
+        holder.set(entityCache);
+        entityCache.put(1, "racing", entityCache.stamp());
+        assertNull(entityCache.get(1));
+        assertEquals(0, entityCache.size());
+    }
+
+    @Test
+    public void getCachesCopies() {
+        EntityItem item = entityItemDao.get(1);
+        item.name = "changed";
+        EntityItem cached = entityItemDao.get(1);
+        assertEquals("a", cached.name);
+        assertNotSame(cached, entityItemDao.get(1));
+        assertEquals(1, dataSource.getConnectionCount());
+        assertEquals(2, entityItemDao.getEntityCache().getHitCount());
+    }
+
+    @Test
+    public void updateEvicts() {
+        EntityItem item = entityItemDao.get(1);
+        item.name = "b";
+        entityItemDao.update(item);
+        assertEquals("b", entityItemDao.get(1).name);
+        assertEquals(0, entityItemDao.getEntityCache().getHitCount());
+    }
+
+    @Test
+    public void notCachedInTransaction() {
+        new TransactionTemplate(new DataSourceTransactionManager(dataSource)).execute(status -> entityItemDao.get(1));
+        assertEquals(0, entityItemDao.getEntityCache().size());
+    }
+
+    @Test
+    public void evictedAgainAfterCommit() {
+        final AtomicReference<EntityItem> readDuringTransaction = new AtomicReference<>();
+        new TransactionTemplate(new DataSourceTransactionManager(dataSource)).execute(status -> {
+            EntityItem item = entityItemDao.get(1);
+            item.name = "b";
+            entityItemDao.update(item);
+            // 提交前，其他线程读取到提交前的实体并放入缓存
+            Thread reader = new Thread(() -> readDuringTransaction.set(entityItemDao.get(1)));
+            reader.start();
+            try {
+                reader.join();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return null;
+        });
+        assertEquals("a", readDuringTransaction.get().name);
+        // 事务结束后再次移除，不会读取到提交前缓存的实体
+        assertEquals("b", entityItemDao.get(1).name);
+    }
+}
@@ -0,0 +1,128 @@
+package com.jyoryo.entityjdbc.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.JoinColumn;
+import javax.persistence.Table;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jyoryo.entityjdbc.domain.support.IdSupport;
+import com.jyoryo.entityjdbc.support.FetchPlan;
+
+/**
+ * 按加载计划查询：关联字段加载到调用方自己的结果上，不影响合并查询的其他调用方
+ * @author jyoryo
+ *
+ */
+public class FetchPlanQueryTest {
+    private static final String SELECT = "SELECT * FROM fetch_order WHERE FETCH_PAUSE() = 1 ORDER BY id";
+    private static volatile CountDownLatch blocked, release;
+    private static final AtomicBoolean first = new AtomicBoolean();
+    private JdbcDao jdbcDao;
+    private ExecutorService executor;
+
+    @Entity
+    @Table(name = "fetch_owner")
+    public static class FetchOwner extends IdSupport {
+        private static final long serialVersionUID = 1L;
+        @Column
+        private String name;
+    }
+
+    @Entity
+    @Table(name = "fetch_order")
+    public static class FetchOrder extends IdSupport {
+        private static final long serialVersionUID = 1L;
+        @JoinColumn(name = "owner_id")
+        private FetchOwner owner;
+    }
+
+    /**
+     * H2函数：第一次调用时等待，直到release
+     * @return
+     * @throws InterruptedException
+     */
+    public static int pause() throws InterruptedException {
+        if(first.compareAndSet(true, false)) {
+            blocked.countDown();
+            release.await(10, TimeUnit.SECONDS);
+        }
+        return 1;
+    }
+
+    @Before
+    public void setUp() {
+        blocked = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+        first.set(true);
+        jdbcDao = new JdbcDao(new RecordingDataSource("fetchPlanQuery"));
+        jdbcDao.setSqlBuilder(new PlainSqlBuilder());
+        jdbcDao.getClassicJdbcTemplate().execute("CREATE ALIAS IF NOT EXISTS FETCH_PAUSE FOR \"" + FetchPlanQueryTest.class.getName() + ".pause\"");
+        jdbcDao.getClassicJdbcTemplate().execute("DROP TABLE IF EXISTS fetch_order");
+        jdbcDao.getClassicJdbcTemplate().execute("DROP TABLE IF EXISTS fetch_owner");
+        jdbcDao.getClassicJdbcTemplate().execute("CREATE TABLE fetch_owner(id INT PRIMARY KEY, name VARCHAR(20))");
+        jdbcDao.getClassicJdbcTemplate().execute("CREATE TABLE fetch_order(id INT PRIMARY KEY, owner_id INT)");
+        jdbcDao.getClassicJdbcTemplate().execute("INSERT INTO fetch_owner VALUES (1, 'a'), (2, 'b')");
+        jdbcDao.getClassicJdbcTemplate().execute("INSERT INTO fetch_order VALUES (1, 1), (2, 2), (3, 1)");
+        jdbcDao.setSingleFlight(10000);
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void fetchDoesNotChangeMergedResults() throws Exception {
+        Future<List<FetchOrder>> fetching = executor.submit(() -> jdbcDao.query(SELECT, FetchOrder.class, FetchPlan.of("owner")));
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+        Future<List<FetchOrder>> plain = executor.submit(() -> jdbcDao.query(SELECT, FetchOrder.class));
+        // 等待方加入后再放行
+        Thread.sleep(200L);
+        release.countDown();
+
+        List<FetchOrder> fetched = fetching.get(10, TimeUnit.SECONDS), orders = plain.get(10, TimeUnit.SECONDS);
+        assertEquals(1, jdbcDao.getSingleFlight().getCollapsedCount());
+        assertEquals("a", fetched.get(0).owner.name);
+        assertEquals("b", fetched.get(1).owner.name);
+        // 同一主键的关联字段为同一实体
+        assertTrue(fetched.get(0).owner == fetched.get(2).owner);
+        for(int i = 0; i < orders.size(); i ++) {
+            assertNotSame(fetched.get(i), orders.get(i));
+            assertNull(orders.get(i).owner.name);
+        }
+        assertEquals(1, orders.get(2).owner.getId());
+    }
+
+    @Test
+    public void mergedCallerFetchesOwnCopy() throws Exception {
+        Future<List<FetchOrder>> plain = executor.submit(() -> jdbcDao.query(SELECT, FetchOrder.class));
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+        Future<List<FetchOrder>> fetching = executor.submit(() -> jdbcDao.query(SELECT, FetchOrder.class, FetchPlan.of("owner")));
+        Thread.sleep(200L);
+        release.countDown();
+
+        List<FetchOrder> orders = plain.get(10, TimeUnit.SECONDS), fetched = fetching.get(10, TimeUnit.SECONDS);
+        assertEquals(1, jdbcDao.getSingleFlight().getCollapsedCount());
+        assertEquals("b", fetched.get(1).owner.name);
+        assertNull(orders.get(1).owner.name);
+    }
+}
@@ -0,0 +1,76 @@
+package com.jyoryo.entityjdbc.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jyoryo.entityjdbc.JpaEntity;
+import com.jyoryo.entityjdbc.domain.support.IdSupport;
+
+/**
+ * JdbcDao单条保存：已编译INSERT语句的缓存，值为null的属性写入NULL
+ * @author jyoryo
+ *
+ */
+public class JdbcDaoInsertTest {
+    private final JpaEntity jpaEntity = new JpaEntity(InsertItem.class);
+    private JdbcDao jdbcDao;
+
+    @Entity
+    @Table(name = "insert_item")
+    public static class InsertItem extends IdSupport {
+        private static final long serialVersionUID = 1L;
+        @Column
+        private String name;
+        @Column
+        private Integer qty;
+    }
+
+    @Before
+    public void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:jdbcDaoInsert;DB_CLOSE_DELAY=-1");
+        jdbcDao = new JdbcDao(dataSource);
+        jdbcDao.setSqlBuilder(new PlainSqlBuilder());
+        jdbcDao.getClassicJdbcTemplate().execute("DROP TABLE IF EXISTS insert_item");
+        jdbcDao.getClassicJdbcTemplate().execute("CREATE TABLE insert_item(id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(20) DEFAULT 'none', qty INT DEFAULT 7)");
+    }
+
+    @Test
+    public void saveWritesNullInsteadOfDefault() {
+        InsertItem item = new InsertItem();
+        item.name = "a";
+        Object id = jdbcDao.save(jpaEntity, item);
+        assertEquals(1, id);
+        assertEquals(1, item.getId());
+        assertNull(jdbcDao.queryForObject("SELECT qty FROM insert_item WHERE id = ?", Integer.class, id));
+        assertEquals("a", jdbcDao.queryForObject("SELECT name FROM insert_item WHERE id = ?", String.class, id));
+    }
+
+    @Test
+    public void insertCompiledOncePerTable() {
+        jdbcDao.getInsertCache().clear();
+        jdbcDao.getInsertCache().resetStatistics();
+        for(int i = 0; i < 3; i ++) {
+            InsertItem item = new InsertItem();
+            // 写入不同的非null列，仍使用同一条INSERT语句
+            if(i % 2 == 0) {
+                item.name = "n" + i;
+            } else {
+                item.qty = i;
+            }
+            jdbcDao.save(jpaEntity, item);
+        }
+        assertEquals(1, jdbcDao.getInsertCache().getMissCount());
+        assertEquals(2, jdbcDao.getInsertCache().getHitCount());
+        assertEquals(1, jdbcDao.getInsertCache().size());
+        assertEquals(Integer.valueOf(2), jdbcDao.queryForObject("SELECT COUNT(*) FROM insert_item WHERE qty IS NULL", Integer.class));
+    }
+}
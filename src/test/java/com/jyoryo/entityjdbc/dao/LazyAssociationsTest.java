@@ -0,0 +1,114 @@
+package com.jyoryo.entityjdbc.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.JoinColumn;
+import javax.persistence.Table;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jyoryo.entityjdbc.domain.support.IdSupport;
+import com.jyoryo.entityjdbc.exception.DaoException;
+
+/**
+ * 延迟加载代理：主键getter、equals、hashCode、toString不执行查询，其他getter首次调用时加载
+ * @author jyoryo
+ *
+ */
+public class LazyAssociationsTest {
+    private static final String SELECT = "SELECT * FROM lazy_order ORDER BY id";
+    private RecordingDataSource dataSource;
+    private JdbcDao jdbcDao;
+
+    @Entity
+    @Table(name = "lazy_owner")
+    public static class LazyOwner extends IdSupport {
+        private static final long serialVersionUID = 1L;
+        @Column
+        private String name;
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    @Entity
+    @Table(name = "lazy_order")
+    public static class LazyOrder extends IdSupport {
+        private static final long serialVersionUID = 1L;
+        @JoinColumn(name = "owner_id")
+        private LazyOwner owner;
+    }
+
+    @Before
+    public void setUp() {
+        dataSource = new RecordingDataSource("lazyAssociations");
+        jdbcDao = new JdbcDao(dataSource);
+        jdbcDao.setSqlBuilder(new PlainSqlBuilder());
+        jdbcDao.getClassicJdbcTemplate().execute("DROP TABLE IF EXISTS lazy_order");
+        jdbcDao.getClassicJdbcTemplate().execute("DROP TABLE IF EXISTS lazy_owner");
+        jdbcDao.getClassicJdbcTemplate().execute("CREATE TABLE lazy_owner(id INT PRIMARY KEY, name VARCHAR(20))");
+        jdbcDao.getClassicJdbcTemplate().execute("CREATE TABLE lazy_order(id INT PRIMARY KEY, owner_id INT)");
+        jdbcDao.getClassicJdbcTemplate().execute("INSERT INTO lazy_owner VALUES (1, 'a'), (2, 'b')");
+        jdbcDao.getClassicJdbcTemplate().execute("INSERT INTO lazy_order VALUES (1, 1), (2, 2), (3, 1), (4, 9)");
+        jdbcDao.setLazyAssociations(true);
+    }
+
+    @Test
+    public void noQueryUntilNonIdGetter() {
+        List<LazyOrder> orders = jdbcDao.query(SELECT, LazyOrder.class);
+        LazyOwner loaded = jdbcDao.queryForObject("SELECT * FROM lazy_owner WHERE id = ?", LazyOwner.class, 1);
+        dataSource.reset();
+
+        LazyOwner owner = orders.get(0).owner, sameOwner = orders.get(2).owner, otherOwner = orders.get(1).owner;
+        assertTrue(LazyAssociations.isProxy(owner));
+        assertEquals(1, owner.getId());
+        assertEquals(owner, sameOwner);
+        assertEquals(owner.hashCode(), sameOwner.hashCode());
+        assertNotEquals(owner, otherOwner);
+        assertTrue(owner.equals(loaded));
+        assertFalse(owner.equals(null));
+        Set<LazyOwner> owners = new HashSet<>();
+        for(LazyOrder order : orders) {
+            owners.add(order.owner);
+        }
+        assertEquals(3, owners.size());
+        assertTrue(owner.toString().contains(LazyOwner.class.getName()));
+        assertEquals(0, dataSource.getConnectionCount());
+
+        assertEquals("a", owner.getName());
+        assertEquals(1, dataSource.getConnectionCount());
+        // 加载后的hashCode不变，不再查询
+        assertEquals(sameOwner.hashCode(), owner.hashCode());
+        assertEquals("b", otherOwner.getName());
+        assertEquals(2, dataSource.getConnectionCount());
+    }
+
+    @Test
+    public void missingTargetLoadedOnlyOnGetter() {
+        LazyOwner missing = jdbcDao.query(SELECT, LazyOrder.class).get(3).owner;
+        dataSource.reset();
+        assertEquals(9, missing.getId());
+        assertTrue(missing.toString().contains("9"));
+        assertTrue(missing.equals(missing));
+        missing.hashCode();
+        assertEquals(0, dataSource.getConnectionCount());
+        try {
+            missing.getName();
+            fail();
+        } catch (DaoException e) {
+            assertEquals(1, dataSource.getConnectionCount());
+        }
+    }
+}
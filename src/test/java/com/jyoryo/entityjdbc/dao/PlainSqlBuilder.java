@@ -0,0 +1,32 @@
+package com.jyoryo.entityjdbc.dao;
+
+import com.jyoryo.entityjdbc.builder.SqlBuilder;
+import com.jyoryo.entityjdbc.support.Condition;
+
+/**
+ * 测试用：直接执行传入的sql
+ * @author jyoryo
+ *
+ */
+final class PlainSqlBuilder implements SqlBuilder {
+    @Override
+    public String sql(String sqlOrId, Condition condition) {
+        return sqlOrId;
+    }
+
+    @Override
+    public void setIdPrefix(char idPrefix) {
+    }
+
+    @Override
+    public void setSqlFilePath(String sqlFilePath) {
+    }
+
+    @Override
+    public void setSqlFileExtension(String extension) {
+    }
+
+    @Override
+    public void setAutoReload(boolean autoReload) {
+    }
+}
@@ -0,0 +1,126 @@
+package com.jyoryo.entityjdbc.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.jyoryo.entityjdbc.domain.support.IdSupport;
+
+/**
+ * 查询结果缓存：缓存实体的副本，按表版本失效，事务结束后再次失效
+ * @author jyoryo
+ *
+ */
+public class QueryResultCacheTest {
+    private static final String SELECT = "SELECT * FROM cache_item WHERE id = ?";
+    private RecordingDataSource dataSource;
+    private JdbcDao jdbcDao;
+
+    @Entity
+    @Table(name = "cache_item")
+    public static class CacheItem extends IdSupport {
+        private static final long serialVersionUID = 1L;
+        @Column
+        private String name;
+    }
+
+    @Before
+    public void setUp() {
+        dataSource = new RecordingDataSource("queryResultCache");
+        jdbcDao = new JdbcDao(dataSource);
+        jdbcDao.setSqlBuilder(new PlainSqlBuilder());
+        jdbcDao.getClassicJdbcTemplate().execute("DROP TABLE IF EXISTS cache_item");
+        jdbcDao.getClassicJdbcTemplate().execute("CREATE TABLE cache_item(id INT PRIMARY KEY, name VARCHAR(20))");
+        jdbcDao.getClassicJdbcTemplate().execute("INSERT INTO cache_item VALUES (1, 'a')");
+        jdbcDao.setResultCache(100, 0);
+    }
+
+    @Test
+    public void cachedEntitiesAreCopies() {
+        List<CacheItem> first = jdbcDao.queryCached(SELECT, CacheItem.class, 1);
+        first.get(0).name = "changed";
+        List<CacheItem> second = jdbcDao.queryCached(SELECT, CacheItem.class, 1);
+        List<CacheItem> third = jdbcDao.queryCached(SELECT, CacheItem.class, 1);
+        assertEquals(2, jdbcDao.getResultCache().getHitCount());
+        assertEquals("a", second.get(0).name);
+        assertNotSame(second.get(0), third.get(0));
+
+        CacheItem item = jdbcDao.queryForObjectCached(SELECT, CacheItem.class, 1);
+        item.name = "changed";
+        assertEquals("a", jdbcDao.queryForObjectCached(SELECT, CacheItem.class, 1).name);
+    }
+
+    @Test
+    public void writeInvalidatesTable() {
+        assertEquals("a", jdbcDao.queryForObjectCached("SELECT name FROM cache_item WHERE id = ?", String.class, 1));
+        dataSource.reset();
+        assertEquals("a", jdbcDao.queryForObjectCached("SELECT name FROM cache_item WHERE id = ?", String.class, 1));
+        assertEquals(0, dataSource.getConnectionCount());
+
+        jdbcDao.update("UPDATE cache_item SET name = ? WHERE id = ?", "b", 1);
+        assertEquals("b", jdbcDao.queryForObjectCached("SELECT name FROM cache_item WHERE id = ?", String.class, 1));
+        assertEquals(2, jdbcDao.getResultCache().getMissCount());
+    }
+
+    @Test
+    public void notCachedInTransaction() {
+        new TransactionTemplate(new DataSourceTransactionManager(dataSource)).execute(status -> {
+            jdbcDao.queryForObjectCached("SELECT name FROM cache_item WHERE id = ?", String.class, 1);
+            jdbcDao.queryForObjectCached("SELECT name FROM cache_item WHERE id = ?", String.class, 1);
+            return null;
+        });
+        assertEquals(0, jdbcDao.getResultCache().size());
+        assertEquals(0, jdbcDao.getResultCache().getHitCount() + jdbcDao.getResultCache().getMissCount());
+    }
+
+    @Test
+    public void invalidatedAgainAfterCommit() throws Exception {
+        final String sql = "SELECT name FROM cache_item WHERE id = ?";
+        final AtomicReference<String> readDuringTransaction = new AtomicReference<>();
+        new TransactionTemplate(new DataSourceTransactionManager(dataSource)).execute(status -> {
+            jdbcDao.update("UPDATE cache_item SET name = ? WHERE id = ?", "b", 1);
+            // 提交前，其他线程读取到提交前的值并放入缓存
+            Thread reader = new Thread(() -> readDuringTransaction.set(jdbcDao.queryForObjectCached(sql, String.class, 1)));
+            reader.start();
+            try {
+                reader.join();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return null;
+        });
+        assertEquals("a", readDuringTransaction.get());
+        // 事务结束后再次失效，不会读取到提交前缓存的值
+        assertEquals("b", jdbcDao.queryForObjectCached(sql, String.class, 1));
+    }
+
+    @Test
+    public void putRejectedAfterConcurrentWrite() {
+        QueryCache queryCache = QueryCache.lru(10, 0);
+        Object key = QueryCache.key(SELECT, new Object[] {1});
+        String[] tableNames = queryCache.tableNames(SELECT);
+        long[] versions = queryCache.versions(tableNames);
+        // 查询期间表被写入
+        queryCache.invalidate("CACHE_ITEM");
+        queryCache.put(key, tableNames, versions, "stale");
+        assertNull(queryCache.lookup(key));
+
+        versions = queryCache.versions(tableNames);
+        queryCache.put(key, tableNames, versions, "current");
+        assertEquals("current", queryCache.lookup(key).getValue());
+        queryCache.invalidate("cache_item");
+        assertNull(queryCache.lookup(key));
+    }
+}
@@ -0,0 +1,144 @@
+package com.jyoryo.entityjdbc.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * 测试用：H2内存数据库，记录获取的连接数、预编译的sql
+ * <li>可限制getGeneratedKeys返回的主键个数，模拟驱动返回的主键少于插入的行数</li>
+ * <li>可使获取连接等待，模拟连接池繁忙；可模拟MySQL EXPLAIN估算的行数</li>
+ * @author jyoryo
+ *
+ */
+final class RecordingDataSource extends DelegatingDataSource {
+    private final List<String> statements = new CopyOnWriteArrayList<>();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final AtomicInteger openConnectionCount = new AtomicInteger();
+    /** 每条语句getGeneratedKeys最多返回的主键个数，小于0时不限制 */
+    private volatile int generatedKeyLimit = -1;
+    /** 不为null时，获取连接前等待 */
+    private volatile CountDownLatch connectionGate;
+    /** 不小于0时，EXPLAIN语句替换为返回该行数的查询 */
+    private volatile long explainRows = -1L;
+
+    RecordingDataSource(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        setTargetDataSource(dataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        final CountDownLatch gate = connectionGate;
+        if(null != gate) {
+            try {
+                gate.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        connectionCount.incrementAndGet();
+        openConnectionCount.incrementAndGet();
+        return proxy(Connection.class, super.getConnection());
+    }
+
+    /**
+     * 预编译的sql
+     * @return
+     */
+    List<String> getStatements() {
+        return statements;
+    }
+
+    int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * 已获取、未关闭的连接数
+     * @return
+     */
+    int getOpenConnectionCount() {
+        return openConnectionCount.get();
+    }
+
+    void reset() {
+        statements.clear();
+        connectionCount.set(0);
+    }
+
+    void setGeneratedKeyLimit(int generatedKeyLimit) {
+        this.generatedKeyLimit = generatedKeyLimit;
+    }
+
+    /**
+     * 获取连接前等待gate
+     * @param connectionGate   为null时不等待
+     */
+    void setConnectionGate(CountDownLatch connectionGate) {
+        this.connectionGate = connectionGate;
+    }
+
+    /**
+     * H2的EXPLAIN没有rows列，替换为返回rows列的查询
+     * @param explainRows   小于0时不替换
+     */
+    void setExplainRows(long explainRows) {
+        this.explainRows = explainRows;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T proxy(Class<T> type, T target) {
+        return (T)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {type}, new InvocationHandler() {
+            private int keys;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if(target instanceof Connection && method.getName().startsWith("prepare")) {
+                    final long rows = explainRows;
+                    if(rows >= 0 && ((String)args[0]).startsWith("EXPLAIN ")) {
+                        args[0] = "SELECT " + rows + " AS \"rows\"";
+                    }
+                    statements.add((String)args[0]);
+                }
+                if(target instanceof Connection && "close".equals(method.getName()) && !((Connection)target).isClosed()) {
+                    openConnectionCount.decrementAndGet();
+                }
+                if(target instanceof ResultSet && "next".equals(method.getName())) {
+                    final int limit = generatedKeyLimit;
+                    if(limit >= 0 && keys >= limit) {
+                        return false;
+                    }
+                    keys ++;
+                }
+                final Object result;
+                try {
+                    result = method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+                if(result instanceof PreparedStatement && method.getName().startsWith("prepare")) {
+                    return proxy(PreparedStatement.class, (PreparedStatement)result);
+                }
+                if(result instanceof ResultSet && "getGeneratedKeys".equals(method.getName())) {
+                    return proxy(ResultSet.class, (ResultSet)result);
+                }
+                return result;
+            }
+        });
+    }
+}
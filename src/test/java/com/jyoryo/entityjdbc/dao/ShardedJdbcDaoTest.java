@@ -0,0 +1,139 @@
+package com.jyoryo.entityjdbc.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jyoryo.entityjdbc.JpaEntity;
+import com.jyoryo.entityjdbc.annotation.ShardKey;
+import com.jyoryo.entityjdbc.domain.support.IdSupport;
+import com.jyoryo.entityjdbc.support.Condition;
+import com.jyoryo.entityjdbc.support.Page;
+
+/**
+ * ShardedJdbcDao：3个H2内存数据库作为分片，按userId取模路由
+ * @author jyoryo
+ *
+ */
+public class ShardedJdbcDaoTest {
+    private static final int SHARD_COUNT = 3, ORDER_COUNT = 20, USER_COUNT = 7;
+    private static final Comparator<ShardOrder> BY_AMOUNT = Comparator.<ShardOrder>comparingInt(order -> order.amount).thenComparingInt(ShardOrder::getId);
+
+    private final List<JdbcDao> shards = new ArrayList<>();
+    private final JpaEntity jpaEntity = new JpaEntity(ShardOrder.class);
+    private ShardedJdbcDao shardedJdbcDao;
+
+    @Entity
+    @Table(name = "shard_order")
+    public static class ShardOrder extends IdSupport {
+        private static final long serialVersionUID = 1L;
+        @ShardKey
+        @Column
+        private long userId;
+        @Column
+        private int amount;
+    }
+
+    @Before
+    public void setUp() {
+        for(int i = 0; i < SHARD_COUNT; i ++) {
+            JdbcDataSource dataSource = new JdbcDataSource();
+            dataSource.setURL("jdbc:h2:mem:shard" + i + ";DB_CLOSE_DELAY=-1");
+            JdbcDao jdbcDao = new JdbcDao(dataSource);
+            jdbcDao.setSqlBuilder(new PlainSqlBuilder());
+            jdbcDao.getClassicJdbcTemplate().execute("DROP TABLE IF EXISTS shard_order");
+            jdbcDao.getClassicJdbcTemplate().execute("CREATE TABLE shard_order(id INT PRIMARY KEY, userId BIGINT, amount INT)");
+            shards.add(jdbcDao);
+        }
+        shardedJdbcDao = ShardedJdbcDao.create(shards, ShardFunctions.MOD, SHARD_COUNT);
+        for(int id = 1; id <= ORDER_COUNT; id ++) {
+            ShardOrder order = new ShardOrder();
+            order.setId(id);
+            order.userId = id % USER_COUNT;
+            order.amount = id * 10 % 37;
+            assertEquals(id, shardedJdbcDao.save(jpaEntity, order));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        shardedJdbcDao.close();
+    }
+
+    @Test
+    public void saveRoutesByShardKey() {
+        int total = 0;
+        for(int i = 0; i < SHARD_COUNT; i ++) {
+            for(Long userId : shards.get(i).query("SELECT userId FROM shard_order", Long.class)) {
+                assertEquals(i, userId % SHARD_COUNT);
+            }
+            total += shards.get(i).queryForObject("SELECT COUNT(*) FROM shard_order", Integer.class);
+        }
+        assertEquals(ORDER_COUNT, total);
+    }
+
+    @Test
+    public void getRoutesOrScatters() {
+        ShardOrder routed = shardedJdbcDao.get(ShardOrder.class, 5L % USER_COUNT, 5);
+        assertNotNull(routed);
+        assertEquals(5, routed.getId());
+        // 分片键不对应时，在错误的分片中查不到
+        assertNull(shardedJdbcDao.get(ShardOrder.class, 6L, 5));
+        ShardOrder scattered = shardedJdbcDao.get(ShardOrder.class, 5);
+        assertNotNull(scattered);
+        assertEquals(5L, scattered.userId);
+        assertNull(shardedJdbcDao.get(ShardOrder.class, ORDER_COUNT + 1));
+    }
+
+    @Test
+    public void updateRoutesByShardKey() {
+        ShardOrder order = shardedJdbcDao.get(ShardOrder.class, 5);
+        order.amount = 999;
+        assertEquals(1, shardedJdbcDao.update(jpaEntity, order));
+        JdbcDao shard = shards.get((int)(order.userId % SHARD_COUNT));
+        assertEquals(Integer.valueOf(999), shard.queryForObject("SELECT amount FROM shard_order WHERE id = ?", Integer.class, 5));
+    }
+
+    @Test
+    public void queryMergesInOrder() {
+        List<ShardOrder> merged = shardedJdbcDao.query("SELECT * FROM shard_order ORDER BY amount, id", ShardOrder.class, BY_AMOUNT);
+        assertEquals(ORDER_COUNT, merged.size());
+        for(int i = 1; i < merged.size(); i ++) {
+            assertTrue(BY_AMOUNT.compare(merged.get(i - 1), merged.get(i)) < 0);
+        }
+    }
+
+    @Test
+    public void queryPageSlicesMergedResult() {
+        List<ShardOrder> sorted = shardedJdbcDao.query("SELECT * FROM shard_order ORDER BY amount, id", ShardOrder.class, BY_AMOUNT);
+        Page<ShardOrder> page = shardedJdbcDao.queryPage("SELECT * FROM shard_order ORDER BY amount, id", ShardOrder.class, BY_AMOUNT, false, 5, 5);
+        assertEquals(ids(sorted.subList(5, 10)), ids(page.getItems()));
+        assertEquals(ORDER_COUNT, page.getTotalCount());
+
+        Page<ShardOrder> lastPage = shardedJdbcDao.queryPage("SELECT * FROM shard_order WHERE amount >= :min ORDER BY amount, id", ShardOrder.class, BY_AMOUNT, false, 15, 10, new Condition().addValue("min", 0));
+        assertEquals(ids(sorted.subList(15, ORDER_COUNT)), ids(lastPage.getItems()));
+        assertEquals(ORDER_COUNT, lastPage.getTotalCount());
+    }
+
+    private static List<Integer> ids(List<ShardOrder> orders) {
+        List<Integer> ids = new ArrayList<>(orders.size());
+        for(ShardOrder order : orders) {
+            ids.add(order.getId());
+        }
+        return ids;
+    }
+}
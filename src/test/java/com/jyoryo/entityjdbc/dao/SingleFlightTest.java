@@ -0,0 +1,169 @@
+package com.jyoryo.entityjdbc.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.jyoryo.entityjdbc.domain.support.IdSupport;
+
+/**
+ * 合并相同的并发查询：等待方得到各自的副本，执行的调用方得到可修改的结果
+ * @author jyoryo
+ *
+ */
+public class SingleFlightTest {
+    private static final String SELECT = "SELECT * FROM flight_item ORDER BY id";
+    private RecordingDataSource dataSource;
+    private JdbcDao jdbcDao;
+    private ExecutorService executor;
+
+    @Entity
+    @Table(name = "flight_item")
+    public static class FlightItem extends IdSupport {
+        private static final long serialVersionUID = 1L;
+        @Column
+        private String name;
+    }
+
+    /**
+     * 第一次查询读取第一行时等待，直到release
+     */
+    private static final class BlockingRowMapper implements RowMapper<FlightItem> {
+        private final CountDownLatch blocked = new CountDownLatch(1), release = new CountDownLatch(1);
+        private final AtomicBoolean first = new AtomicBoolean(true);
+
+        @Override
+        public FlightItem mapRow(java.sql.ResultSet rs, int rowNum) throws java.sql.SQLException {
+            if(0 == rowNum && first.compareAndSet(true, false)) {
+                blocked.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            FlightItem item = new FlightItem();
+            item.setId(rs.getInt("id"));
+            item.name = rs.getString("name");
+            return item;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        dataSource = new RecordingDataSource("singleFlight");
+        jdbcDao = new JdbcDao(dataSource);
+        jdbcDao.setSqlBuilder(new PlainSqlBuilder());
+        jdbcDao.getClassicJdbcTemplate().execute("DROP TABLE IF EXISTS flight_item");
+        jdbcDao.getClassicJdbcTemplate().execute("CREATE TABLE flight_item(id INT PRIMARY KEY, name VARCHAR(20))");
+        jdbcDao.getClassicJdbcTemplate().execute("INSERT INTO flight_item VALUES (1, 'a'), (2, 'b')");
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void waitersGetOwnCopies() throws Exception {
+        jdbcDao.setSingleFlight(10000);
+        final BlockingRowMapper rowMapper = new BlockingRowMapper();
+        Future<List<FlightItem>> leader = executor.submit(() -> {
+            List<FlightItem> items = jdbcDao.query(SELECT, rowMapper);
+            // 执行的调用方返回后修改结果，不影响等待方
+            items.get(0).name = "changed";
+            items.add(new FlightItem());
+            return items;
+        });
+        assertTrue(rowMapper.blocked.await(10, TimeUnit.SECONDS));
+        Future<List<FlightItem>> waiter = executor.submit(() -> jdbcDao.query(SELECT, rowMapper));
+        // 等待方加入后再放行
+        Thread.sleep(200L);
+        rowMapper.release.countDown();
+
+        List<FlightItem> leaderItems = leader.get(10, TimeUnit.SECONDS), waiterItems = waiter.get(10, TimeUnit.SECONDS);
+        assertEquals(1, jdbcDao.getSingleFlight().getExecutionCount());
+        assertEquals(1, jdbcDao.getSingleFlight().getCollapsedCount());
+        assertEquals(3, leaderItems.size());
+        assertEquals(2, waiterItems.size());
+        assertNotSame(leaderItems.get(1), waiterItems.get(1));
+        assertEquals("a", waiterItems.get(0).name);
+        // 等待方得到的列表也可以修改
+        waiterItems.remove(1);
+        assertEquals(0, jdbcDao.getSingleFlight().getInFlight());
+    }
+
+    @Test
+    public void waiterRunsItselfAfterTimeout() throws Exception {
+        jdbcDao.setSingleFlight(50);
+        final BlockingRowMapper rowMapper = new BlockingRowMapper();
+        Future<List<FlightItem>> leader = executor.submit(() -> jdbcDao.query(SELECT, rowMapper));
+        assertTrue(rowMapper.blocked.await(10, TimeUnit.SECONDS));
+        List<FlightItem> items = jdbcDao.query(SELECT, rowMapper);
+        rowMapper.release.countDown();
+        assertEquals(2, items.size());
+        assertEquals(2, leader.get(10, TimeUnit.SECONDS).size());
+        assertEquals(1, jdbcDao.getSingleFlight().getWaitTimeoutCount());
+        assertEquals(2, jdbcDao.getSingleFlight().getExecutionCount());
+    }
+
+    @Test
+    public void resultsStayModifiable() {
+        jdbcDao.setSingleFlight(1000);
+        List<FlightItem> items = jdbcDao.query(SELECT, FlightItem.class);
+        items.sort((a, b) -> b.getId() - a.getId());
+        items.removeIf(item -> 1 == item.getId());
+        assertEquals(1, items.size());
+        // 事务中不合并，结果同样可以修改
+        List<FlightItem> inTransaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource)).execute(status -> jdbcDao.query(SELECT, FlightItem.class));
+        inTransaction.add(new FlightItem());
+        assertEquals(3, inTransaction.size());
+        assertEquals(1, jdbcDao.getSingleFlight().getExecutionCount());
+    }
+
+    @Test
+    public void errorsShared() throws Exception {
+        jdbcDao.setSingleFlight(10000);
+        final BlockingRowMapper rowMapper = new BlockingRowMapper();
+        RowMapper<FlightItem> failing = (rs, rowNum) -> {
+            rowMapper.mapRow(rs, rowNum);
+            throw new IllegalStateException("mapping failed");
+        };
+        Future<?> leader = executor.submit(() -> jdbcDao.query(SELECT, failing));
+        assertTrue(rowMapper.blocked.await(10, TimeUnit.SECONDS));
+        Future<?> waiter = executor.submit(() -> jdbcDao.query(SELECT, failing));
+        Thread.sleep(200L);
+        rowMapper.release.countDown();
+        for(Future<?> future : java.util.Arrays.asList(leader, waiter)) {
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                fail();
+            } catch (java.util.concurrent.ExecutionException e) {
+                assertEquals("mapping failed", e.getCause().getMessage());
+            }
+        }
+        assertEquals(1, jdbcDao.getSingleFlight().getExecutionCount());
+        assertEquals(1, jdbcDao.getSingleFlight().getCollapsedCount());
+    }
+}